@@ -0,0 +1,134 @@
+package com.example.maintenancereminder.db;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Completion throughput: ContentValues + insert/update versus the cached compiled statements
+ * used by HistoryDao and MaintenanceTaskDao. Each completion runs in its own transaction,
+ * as MaintenanceRepository.completeTask does. Results are written to logcat (tag CompletionBenchmark).
+ */
+@RunWith(AndroidJUnit4.class)
+public class CompletionWriteBenchmark {
+    private static final String TAG = "CompletionBenchmark";
+    private static final int TASKS = 200;
+    private static final int COMPLETIONS = 5_000;
+    private static final int WARMUP = 500;
+
+    private File dbFile;
+    private SQLiteDatabase db;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        dbFile = new File(context.getCacheDir(), "completion-benchmark.db");
+        SQLiteDatabase.deleteDatabase(dbFile);
+        db = SQLiteDatabase.openOrCreateDatabase(dbFile, null);
+        db.enableWriteAheadLogging();
+        db.execSQL("CREATE TABLE " + DbHelper.TABLE_TASKS + " (id INTEGER PRIMARY KEY AUTOINCREMENT, device_id INTEGER NOT NULL," +
+                " title TEXT NOT NULL, interval_value INTEGER NOT NULL, interval_unit TEXT NOT NULL, next_due_date INTEGER NOT NULL," +
+                " priority TEXT NOT NULL, comment TEXT, cost REAL, consumables TEXT, is_active INTEGER NOT NULL DEFAULT 1)");
+        db.execSQL("CREATE TABLE " + DbHelper.TABLE_HISTORY + " (id INTEGER PRIMARY KEY AUTOINCREMENT, task_id INTEGER NOT NULL," +
+                " device_id INTEGER NOT NULL, completion_date INTEGER NOT NULL, completion_comment TEXT, consumables TEXT, cost REAL," +
+                " previous_due_date INTEGER NOT NULL)");
+        for (int i = 1; i <= TASKS; i++) {
+            db.execSQL("INSERT INTO " + DbHelper.TABLE_TASKS + " (device_id, title, interval_value, interval_unit, next_due_date, priority)" +
+                    " VALUES (1, 'task " + i + "', 30, 'DAYS', 0, 'MEDIUM')");
+        }
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+        SQLiteDatabase.deleteDatabase(dbFile);
+    }
+
+    @Test
+    public void completionThroughput() {
+        runContentValues(WARMUP);
+        runCompiled(WARMUP);
+
+        long legacyNanos = runContentValues(COMPLETIONS);
+        long compiledNanos = runCompiled(COMPLETIONS);
+
+        double legacyPerSec = COMPLETIONS * 1e9 / legacyNanos;
+        double compiledPerSec = COMPLETIONS * 1e9 / compiledNanos;
+        Log.i(TAG, String.format(java.util.Locale.US,
+                "completions=%d contentValues=%.0f/s compiledStatements=%.0f/s speedup=%.2fx",
+                COMPLETIONS, legacyPerSec, compiledPerSec, compiledPerSec / legacyPerSec));
+        assertTrue(compiledPerSec > 0 && legacyPerSec > 0);
+    }
+
+    private long runContentValues(int count) {
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            long taskId = 1 + (i % TASKS);
+            db.beginTransaction();
+            try {
+                ContentValues history = new ContentValues();
+                history.put("task_id", taskId);
+                history.put("device_id", 1L);
+                history.put("completion_date", 1_700_000_000_000L + i);
+                history.put("completion_comment", "");
+                history.put("consumables", (String) null);
+                history.putNull("cost");
+                history.put("previous_due_date", 1_700_000_000_000L);
+                db.insert(DbHelper.TABLE_HISTORY, null, history);
+
+                ContentValues task = new ContentValues();
+                task.put("next_due_date", 1_700_000_000_000L + i);
+                db.update(DbHelper.TABLE_TASKS, task, "id=?", new String[]{String.valueOf(taskId)});
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private long runCompiled(int count) {
+        StatementCache cache = new StatementCache();
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            long taskId = 1 + (i % TASKS);
+            db.beginTransaction();
+            try {
+                SQLiteStatement insert = cache.acquire(db, HistoryDao.SQL_INSERT);
+                insert.bindLong(1, taskId);
+                insert.bindLong(2, 1L);
+                insert.bindLong(3, 1_700_000_000_000L + i);
+                insert.bindString(4, "");
+                insert.bindNull(5);
+                insert.bindNull(6);
+                insert.bindLong(7, 1_700_000_000_000L);
+                insert.executeInsert();
+
+                SQLiteStatement update = cache.acquire(db, MaintenanceTaskDao.SQL_UPDATE_NEXT_DUE);
+                update.bindLong(1, 1_700_000_000_000L + i);
+                update.bindLong(2, taskId);
+                update.executeUpdateDelete();
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        cache.clear();
+        return elapsed;
+    }
+}
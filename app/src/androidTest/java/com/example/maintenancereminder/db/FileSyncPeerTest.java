@@ -0,0 +1,157 @@
+package com.example.maintenancereminder.db;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.maintenancereminder.io.FileSyncPeer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Two databases syncing through one folder, the way two phones would through a shared directory.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FileSyncPeerTest {
+    private File dir;
+    private SQLiteDatabase dbA;
+    private SQLiteDatabase dbB;
+    private FileSyncPeer peerA;
+    private FileSyncPeer peerB;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        dir = new File(context.getCacheDir(), "sync-test");
+        deleteFolder();
+        dbA = open(new File(context.getCacheDir(), "sync-a.db"));
+        dbB = open(new File(context.getCacheDir(), "sync-b.db"));
+        File folder = new File(dir, "shared");
+        peerA = new FileSyncPeer(new SyncEngine(() -> dbA, new DataChangeBus()), folder);
+        peerB = new FileSyncPeer(new SyncEngine(() -> dbB, new DataChangeBus()), folder);
+    }
+
+    @After
+    public void tearDown() {
+        for (SQLiteDatabase db : new SQLiteDatabase[]{dbA, dbB}) {
+            File file = new File(db.getPath());
+            db.close();
+            SQLiteDatabase.deleteDatabase(file);
+        }
+        deleteFolder();
+    }
+
+    @Test
+    public void changesReachTheOtherPeer() throws Exception {
+        long deviceId = insertDevice(dbA, "Котёл", "Отопление");
+        long taskId = insertTask(dbA, deviceId, "Чистка горелки");
+        dbA.execSQL("INSERT INTO " + DbHelper.TABLE_HISTORY + " (task_id, device_id, completion_date, cost, previous_due_date)" +
+                " VALUES (?, ?, 1000, 1500.5, 900)", new Object[]{taskId, deviceId});
+
+        assertEquals(3, peerA.sync().changesSent);
+        FileSyncPeer.SyncResult pulled = peerB.sync();
+
+        assertEquals(3, pulled.applied);
+        assertEquals("Котёл", string(dbB, "SELECT name FROM " + DbHelper.TABLE_EQUIPMENT));
+        assertEquals("Чистка горелки", string(dbB, "SELECT title FROM " + DbHelper.TABLE_TASKS));
+        assertEquals("1500.5", string(dbB, "SELECT cost FROM " + DbHelper.TABLE_HISTORY));
+        // B has nothing of its own to send back, and A has nothing new for B
+        assertEquals(0, pulled.changesSent);
+        assertEquals(0, peerA.sync().applied);
+    }
+
+    @Test
+    public void onlyDeltasAreSent() throws Exception {
+        long deviceId = insertDevice(dbA, "Насос", null);
+        for (int i = 0; i < 20; i++) insertTask(dbA, deviceId, "Работа " + i);
+        peerA.sync();
+        peerB.sync();
+
+        dbA.execSQL("UPDATE " + DbHelper.TABLE_TASKS + " SET title = 'Замена фильтра' WHERE title = 'Работа 3'");
+        dbA.execSQL("UPDATE " + DbHelper.TABLE_TASKS + " SET title = 'Замена фильтра 2' WHERE title = 'Замена фильтра'");
+
+        assertEquals(1, peerA.sync().changesSent);
+        assertEquals(1, peerB.sync().applied);
+        assertEquals(1, DatabaseUtils.longForQuery(dbB,
+                "SELECT count(*) FROM " + DbHelper.TABLE_TASKS + " WHERE title = 'Замена фильтра 2'", null));
+    }
+
+    @Test
+    public void lastWriterWins() throws Exception {
+        insertDevice(dbA, "Кондиционер", null);
+        peerA.sync();
+        peerB.sync();
+
+        dbA.execSQL("UPDATE " + DbHelper.TABLE_EQUIPMENT + " SET name = 'Старое имя'");
+        Thread.sleep(5);
+        dbB.execSQL("UPDATE " + DbHelper.TABLE_EQUIPMENT + " SET name = 'Новое имя'");
+
+        peerA.sync();
+        FileSyncPeer.SyncResult b = peerB.sync();
+        peerA.sync();
+
+        assertEquals(1, b.skipped);
+        assertEquals("Новое имя", string(dbA, "SELECT name FROM " + DbHelper.TABLE_EQUIPMENT));
+        assertEquals("Новое имя", string(dbB, "SELECT name FROM " + DbHelper.TABLE_EQUIPMENT));
+    }
+
+    @Test
+    public void deletesPropagate() throws Exception {
+        long deviceId = insertDevice(dbA, "Генератор", null);
+        insertTask(dbA, deviceId, "Замена масла");
+        peerA.sync();
+        peerB.sync();
+
+        dbB.execSQL("DELETE FROM " + DbHelper.TABLE_EQUIPMENT);
+        peerB.sync();
+        peerA.sync();
+
+        assertNull(string(dbA, "SELECT name FROM " + DbHelper.TABLE_EQUIPMENT));
+        assertNull(string(dbA, "SELECT title FROM " + DbHelper.TABLE_TASKS));
+    }
+
+    private static SQLiteDatabase open(File file) {
+        SQLiteDatabase.deleteDatabase(file);
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(file, null);
+        db.setForeignKeyConstraintsEnabled(true);
+        for (String sql : DbSchema.createStatements()) db.execSQL(sql);
+        return db;
+    }
+
+    private static long insertDevice(SQLiteDatabase db, String name, String category) {
+        db.execSQL("INSERT INTO " + DbHelper.TABLE_EQUIPMENT + " (name, category) VALUES (?, ?)", new Object[]{name, category});
+        return DatabaseUtils.longForQuery(db, "SELECT last_insert_rowid()", null);
+    }
+
+    private static long insertTask(SQLiteDatabase db, long deviceId, String title) {
+        db.execSQL("INSERT INTO " + DbHelper.TABLE_TASKS + " (device_id, title, interval_value, interval_unit, next_due_date, priority)" +
+                " VALUES (?, ?, 30, 'DAYS', 0, 'MEDIUM')", new Object[]{deviceId, title});
+        return DatabaseUtils.longForQuery(db, "SELECT last_insert_rowid()", null);
+    }
+
+    private static String string(SQLiteDatabase db, String sql) {
+        try (Cursor c = db.rawQuery(sql, null)) {
+            return c.moveToFirst() ? c.getString(0) : null;
+        }
+    }
+
+    private void deleteFolder() {
+        File shared = new File(dir, "shared");
+        File[] files = shared.listFiles();
+        if (files != null) for (File f : files) f.delete();
+        shared.delete();
+        dir.delete();
+    }
+}
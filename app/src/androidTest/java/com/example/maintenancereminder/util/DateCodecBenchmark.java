@@ -0,0 +1,113 @@
+package com.example.maintenancereminder.util;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * List binding and trigger computation: the java.time code DateUtils and ReminderScheduler used
+ * before versus {@link DateCodec}. A "frame" binds one screen of rows whose dates repeat across
+ * frames, as a scrolled list does. Results are written to logcat (tag DateCodecBenchmark).
+ */
+@RunWith(AndroidJUnit4.class)
+public class DateCodecBenchmark {
+    private static final String TAG = "DateCodecBenchmark";
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final int ROWS = 500;
+    private static final int FRAMES = 2_000;
+    private static final int WARMUP_FRAMES = 200;
+    private static final long BASE = 1_700_000_000_000L;
+
+    private final long[] dates = new long[ROWS];
+    // keeps the measured work observable so it cannot be optimized away
+    private long sink;
+
+    public DateCodecBenchmark() {
+        for (int i = 0; i < ROWS; i++) dates[i] = BASE + (i * 37L % 400) * DateCodec.DAY_MS + i * 1_000L;
+    }
+
+    @Test
+    public void sameResultsAsJavaTime() {
+        ZoneId zone = ZoneId.systemDefault();
+        for (long day = LocalDate.of(2020, 1, 1).toEpochDay(); day < LocalDate.of(2030, 1, 1).toEpochDay(); day++) {
+            LocalDate date = LocalDate.ofEpochDay(day);
+            long noon = date.atTime(12, 0).atZone(zone).toInstant().toEpochMilli();
+            assertEquals(date.format(FORMATTER), DateCodec.format(noon));
+            assertEquals(day, DateCodec.epochDay(noon));
+            assertEquals(date.atStartOfDay(zone).toInstant().toEpochMilli(), DateCodec.startOfDay(day));
+            assertEquals(date.atTime(9, 0).atZone(zone).toInstant().toEpochMilli(), DateCodec.atHour(day, 9));
+        }
+    }
+
+    @Test
+    public void bindingAndTriggers() {
+        bindJavaTime(WARMUP_FRAMES);
+        bindCodec(WARMUP_FRAMES);
+        triggersJavaTime(WARMUP_FRAMES);
+        triggersCodec(WARMUP_FRAMES);
+
+        long bindLegacy = bindJavaTime(FRAMES);
+        long bindCodec = bindCodec(FRAMES);
+        long triggerLegacy = triggersJavaTime(FRAMES);
+        long triggerCodec = triggersCodec(FRAMES);
+
+        long calls = (long) ROWS * FRAMES;
+        Log.i(TAG, String.format(Locale.US,
+                "sink=%d calls=%d bind javaTime=%.0fns codec=%.0fns (%.1fx); trigger javaTime=%.0fns codec=%.0fns (%.1fx)",
+                sink, calls, (double) bindLegacy / calls, (double) bindCodec / calls, (double) bindLegacy / bindCodec,
+                (double) triggerLegacy / calls, (double) triggerCodec / calls, (double) triggerLegacy / triggerCodec));
+    }
+
+    private long bindJavaTime(int frames) {
+        long start = System.nanoTime();
+        for (int f = 0; f < frames; f++) {
+            for (long date : dates) {
+                String text = "Следующая дата: " + Instant.ofEpochMilli(date).atZone(ZoneId.systemDefault()).toLocalDate().format(FORMATTER);
+                sink += text.length();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        return elapsed;
+    }
+
+    private long bindCodec(int frames) {
+        long start = System.nanoTime();
+        for (int f = 0; f < frames; f++) {
+            for (long date : dates) sink += DateCodec.label("Следующая дата: ", date).length();
+        }
+        long elapsed = System.nanoTime() - start;
+        return elapsed;
+    }
+
+    private long triggersJavaTime(int frames) {
+        long start = System.nanoTime();
+        for (int f = 0; f < frames; f++) {
+            for (long date : dates) {
+                LocalDate day = Instant.ofEpochMilli(date).atZone(ZoneId.systemDefault()).toLocalDate();
+                sink += day.atTime(9, 0).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        return elapsed;
+    }
+
+    private long triggersCodec(int frames) {
+        long start = System.nanoTime();
+        for (int f = 0; f < frames; f++) {
+            for (long date : dates) sink += DateCodec.atHour(DateCodec.epochDay(date), 9);
+        }
+        long elapsed = System.nanoTime() - start;
+        return elapsed;
+    }
+}
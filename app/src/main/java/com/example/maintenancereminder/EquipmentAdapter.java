@@ -11,39 +11,69 @@ import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.maintenancereminder.model.Equipment;
-import com.example.maintenancereminder.util.DateUtils;
+import com.example.maintenancereminder.util.DateCodec;
 
 import java.util.ArrayList;
 import java.util.List;
 
-public class EquipmentAdapter extends ListAdapter<Equipment, EquipmentAdapter.ViewHolder> {
+public class EquipmentAdapter extends ListAdapter<EquipmentAdapter.Row, EquipmentAdapter.ViewHolder> {
 
     public interface OnItemClickListener { void onItemClick(Equipment item); }
 
-    private static final DiffUtil.ItemCallback<Equipment> DIFF_CALLBACK = new DiffUtil.ItemCallback<>() {
+    /** Display text of one device, built off the main thread by {@link #rows}. */
+    public static final class Row {
+        final long id;
+        final Equipment item;
+        final String name;
+        final String category;
+        final String nearest;
+
+        Row(Equipment item) {
+            this.id = item.id;
+            this.item = item;
+            this.name = item.name;
+            this.category = item.category == null || item.category.isEmpty() ? "Категория не указана" : item.category;
+            if (item.nearestTaskDueDate == null) {
+                nearest = "Нет регламентных работ";
+            } else if (item.overdueTaskCount > 0) {
+                nearest = DateCodec.label("Ближайшее обслуживание: ", item.nearestTaskDueDate)
+                        + " • просрочено: " + item.overdueTaskCount;
+            } else {
+                nearest = DateCodec.label("Ближайшее обслуживание: ", item.nearestTaskDueDate);
+            }
+        }
+    }
+
+    private static final DiffUtil.ItemCallback<Row> DIFF_CALLBACK = new DiffUtil.ItemCallback<>() {
         @Override
-        public boolean areItemsTheSame(@NonNull Equipment oldItem, @NonNull Equipment newItem) {
-            return oldItem.id.equals(newItem.id);
+        public boolean areItemsTheSame(@NonNull Row oldItem, @NonNull Row newItem) {
+            return oldItem.id == newItem.id;
         }
 
         @Override
-        public boolean areContentsTheSame(@NonNull Equipment oldItem, @NonNull Equipment newItem) {
+        public boolean areContentsTheSame(@NonNull Row oldItem, @NonNull Row newItem) {
             return oldItem.name.equals(newItem.name)
-                    && String.valueOf(oldItem.category).equals(String.valueOf(newItem.category))
-                    && String.valueOf(oldItem.nearestTaskDueDate).equals(String.valueOf(newItem.nearestTaskDueDate));
+                    && oldItem.category.equals(newItem.category)
+                    && oldItem.nearest.equals(newItem.nearest);
         }
     };
 
     private final OnItemClickListener clickListener;
 
-    public EquipmentAdapter(List<Equipment> items, OnItemClickListener clickListener) {
+    public EquipmentAdapter(OnItemClickListener clickListener) {
         super(DIFF_CALLBACK);
         this.clickListener = clickListener;
-        submitList(new ArrayList<>(items));
         setHasStableIds(true);
     }
 
-    public void setItems(List<Equipment> newItems) { submitList(new ArrayList<>(newItems)); }
+    public static List<Row> rows(List<Equipment> items) {
+        List<Row> rows = new ArrayList<>(items.size());
+        for (Equipment item : items) rows.add(new Row(item));
+        return rows;
+    }
+
+    /** Diffed on a background thread; only changed rows are rebound. */
+    public void setItems(List<Row> rows) { submitList(rows); }
 
     @Override
     public long getItemId(int position) { return getItem(position).id; }
@@ -61,21 +91,23 @@ public class EquipmentAdapter extends ListAdapter<Equipment, EquipmentAdapter.Vi
         private final TextView tvName;
         private final TextView tvCategory;
         private final TextView tvNearest;
+        private Row row;
 
         ViewHolder(@NonNull View itemView) {
             super(itemView);
             tvName = itemView.findViewById(R.id.tvName);
             tvCategory = itemView.findViewById(R.id.tvCategory);
             tvNearest = itemView.findViewById(R.id.tvNearestDue);
+            itemView.setOnClickListener(v -> {
+                if (row != null) clickListener.onItemClick(row.item);
+            });
         }
 
-        void bind(Equipment item) {
-            tvName.setText(item.name);
-            tvCategory.setText(item.category == null || item.category.isEmpty() ? "Категория не указана" : item.category);
-            tvNearest.setText(item.nearestTaskDueDate == null
-                    ? "Нет регламентных работ"
-                    : "Ближайшее обслуживание: " + DateUtils.formatDate(item.nearestTaskDueDate));
-            itemView.setOnClickListener(v -> clickListener.onItemClick(item));
+        void bind(Row row) {
+            this.row = row;
+            tvName.setText(row.name);
+            tvCategory.setText(row.category);
+            tvNearest.setText(row.nearest);
         }
     }
 }
@@ -1,43 +1,50 @@
 package com.example.maintenancereminder;
 
 import android.Manifest;
+import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.os.Build;
 import android.os.Bundle;
 import android.view.View;
+import android.widget.Toast;
 
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.ViewModelProvider;
 import androidx.core.content.ContextCompat;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
-import com.example.maintenancereminder.db.EquipmentDao;
-import com.example.maintenancereminder.model.Equipment;
+import com.example.maintenancereminder.db.DatabaseProvider;
+import com.example.maintenancereminder.db.DueDateRezoner;
+import com.example.maintenancereminder.notification.ReminderScheduler;
 import com.example.maintenancereminder.ui.AddEquipmentActivity;
 import com.example.maintenancereminder.ui.DeviceDetailActivity;
 import com.example.maintenancereminder.ui.HistoryActivity;
 import com.example.maintenancereminder.ui.SettingsActivity;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 
-import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.time.ZoneId;
 
 public class MainActivity extends AppCompatActivity {
-
-    private EquipmentDao dao;
+    private MainViewModel model;
     private EquipmentAdapter adapter;
-    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
     private final ActivityResultLauncher<String> notificationsPermissionLauncher =
             registerForActivityResult(new ActivityResultContracts.RequestPermission(), isGranted -> {});
     private final ActivityResultLauncher<Intent> addEquipmentLauncher =
             registerForActivityResult(new ActivityResultContracts.StartActivityForResult(), result -> {
                 if (result.getResultCode() == RESULT_OK) {
-                    loadData();
+                    model.refresh();
+                }
+            });
+    private final ActivityResultLauncher<String[]> importLauncher =
+            registerForActivityResult(new ActivityResultContracts.OpenDocument(), uri -> {
+                if (uri != null) {
+                    Toast.makeText(this, "Импорт запущен", Toast.LENGTH_SHORT).show();
+                    model.importFleet(uri);
                 }
             });
 
@@ -46,40 +53,52 @@ public class MainActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
-        dao = new EquipmentDao(this);
+        model = new ViewModelProvider(this).get(MainViewModel.class);
+        model.importResult().observe(this, message -> {
+            if (message == null) return;
+            Toast.makeText(this, message, Toast.LENGTH_LONG).show();
+            model.importResultShown();
+            model.refresh();
+        });
         RecyclerView recyclerView = findViewById(R.id.recyclerViewEquipment);
         recyclerView.setLayoutManager(new LinearLayoutManager(this));
-        adapter = new EquipmentAdapter(new java.util.ArrayList<>(), item -> {
+        adapter = new EquipmentAdapter(item -> {
             Intent intent = new Intent(MainActivity.this, DeviceDetailActivity.class);
             intent.putExtra("equipment_id", item.id);
             startActivity(intent);
         });
         recyclerView.setAdapter(adapter);
+        model.rows().observe(this, list -> {
+            adapter.setItems(list);
+            findViewById(R.id.tvEmptyState).setVisibility(list.isEmpty() ? View.VISIBLE : View.GONE);
+        });
 
         FloatingActionButton fab = findViewById(R.id.fabAdd);
         fab.setOnClickListener(view ->
                 addEquipmentLauncher.launch(new Intent(MainActivity.this, AddEquipmentActivity.class)));
         findViewById(R.id.btnSettings).setOnClickListener(v -> startActivity(new Intent(this, SettingsActivity.class)));
         findViewById(R.id.btnJournal).setOnClickListener(v -> startActivity(new Intent(this, HistoryActivity.class)));
+        findViewById(R.id.btnImport).setOnClickListener(v ->
+                importLauncher.launch(new String[]{"text/*", "application/json"}));
 
         requestNotificationPermissionIfNeeded();
+        catchUpTimeZone();
+    }
+
+    // Finishes a due-date migration that was interrupted, or one for a zone change made while the app was not running.
+    private void catchUpTimeZone() {
+        Context app = getApplicationContext();
+        DatabaseProvider.get(app).writeExecutor().execute(() -> {
+            if (new DueDateRezoner(app).run(ZoneId.systemDefault()).tasksShifted > 0) {
+                ReminderScheduler.rescheduleAll(app);
+            }
+        });
     }
 
     @Override
     protected void onResume() {
         super.onResume();
-        loadData();
-    }
-
-    private void loadData() {
-        ioExecutor.execute(() -> {
-            List<Equipment> list = dao.getAllWithNearestDue();
-            runOnUiThread(() -> {
-                adapter.setItems(list);
-                View empty = findViewById(R.id.tvEmptyState);
-                empty.setVisibility(list.isEmpty() ? View.VISIBLE : View.GONE);
-            });
-        });
+        model.refresh();
     }
 
     private void requestNotificationPermissionIfNeeded() {
@@ -0,0 +1,107 @@
+package com.example.maintenancereminder;
+
+import android.app.Application;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.example.maintenancereminder.db.ChangeTracker;
+import com.example.maintenancereminder.db.DataChangeBus;
+import com.example.maintenancereminder.db.DatabaseProvider;
+import com.example.maintenancereminder.db.DbHelper;
+import com.example.maintenancereminder.db.EquipmentDao;
+import com.example.maintenancereminder.io.FleetImporter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+
+/**
+ * Equipment list and fleet imports. The list, its change tracker and the day the overdue counts
+ * were taken for live here, so a rotation re-shows the loaded list instead of re-querying it. Imports
+ * run on the writer with the application context, so an import outlives a rotation and never holds on
+ * to a destroyed screen. The outcome waits here until the screen has shown it.
+ */
+public class MainViewModel extends AndroidViewModel {
+    private static final String TAG = "MainViewModel";
+
+    private final DatabaseProvider provider;
+    private final EquipmentDao dao;
+    private final ChangeTracker changes = new ChangeTracker(DataChangeBus.ALL_DEVICES,
+            DbHelper.TABLE_EQUIPMENT, DbHelper.TABLE_TASKS);
+    private final MutableLiveData<List<EquipmentAdapter.Row>> rows = new MutableLiveData<>();
+    private final MutableLiveData<String> importResult = new MutableLiveData<>();
+    // overdue counts are relative to the day the list was loaded
+    private LocalDate loadedDay;
+
+    public MainViewModel(@NonNull Application application) {
+        super(application);
+        provider = DatabaseProvider.get(application);
+        dao = new EquipmentDao(application);
+        provider.changeBus().register(changes);
+    }
+
+    public LiveData<List<EquipmentAdapter.Row>> rows() {
+        return rows;
+    }
+
+    /** Recounts overdue tasks on a new day, otherwise re-queries only if the list changed since the last load. */
+    public void refresh() {
+        LocalDate today = LocalDate.now();
+        if (!today.equals(loadedDay)) {
+            loadedDay = today;
+            changes.consume();
+            recountOverdueThenLoad(today);
+        } else if (changes.consume()) {
+            provider.readExecutor().execute(this::load);
+        }
+    }
+
+    // The recount is a write, so it runs on the writer; the list is read once it has committed.
+    private void recountOverdueThenLoad(LocalDate today) {
+        long cutoff = today.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        provider.writeExecutor().execute(() -> {
+            dao.refreshOverdueCounts(cutoff);
+            provider.readExecutor().execute(this::load);
+        });
+    }
+
+    private void load() {
+        rows.postValue(EquipmentAdapter.rows(dao.getAllWithNearestDue()));
+    }
+
+    public LiveData<String> importResult() {
+        return importResult;
+    }
+
+    public void importResultShown() {
+        importResult.setValue(null);
+    }
+
+    public void importFleet(Uri uri) {
+        Application app = getApplication();
+        DatabaseProvider.get(app).writeExecutor().execute(() -> {
+            try (InputStream in = app.getContentResolver().openInputStream(uri)) {
+                if (in == null) throw new IOException("Cannot open " + uri);
+                FleetImporter.ImportResult result = new FleetImporter(app).importStream(in);
+                importResult.postValue(result.failure == null
+                        ? "Импортировано строк: " + result.rowsRead + " (" + Math.round(result.rowsPerSecond()) + "/с)"
+                        : "Импорт прерван после строки " + result.rowsRead + ": " + result.failure);
+            } catch (Exception e) {
+                Log.e(TAG, "Fleet import failed for uri=" + uri, e);
+                importResult.postValue("Не удалось импортировать файл");
+            }
+        });
+    }
+
+    @Override
+    protected void onCleared() {
+        provider.changeBus().unregister(changes);
+    }
+}
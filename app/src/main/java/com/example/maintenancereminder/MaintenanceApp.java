@@ -0,0 +1,30 @@
+package com.example.maintenancereminder;
+
+import android.app.Application;
+import android.content.pm.ApplicationInfo;
+import android.os.StrictMode;
+
+import com.example.maintenancereminder.db.DatabaseProvider;
+import com.example.maintenancereminder.db.HistoryArchiver;
+import com.example.maintenancereminder.db.SnapshotManager;
+
+public class MaintenanceApp extends Application {
+    private static final int DB_READ_POOL_SIZE = 3;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        if ((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0) {
+            // debug builds crash on disk access from the main thread, so UI and instrumentation tests catch it
+            StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                    .detectDiskReads()
+                    .detectDiskWrites()
+                    .penaltyLog()
+                    .penaltyDeath()
+                    .build());
+        }
+        DatabaseProvider.configure(DB_READ_POOL_SIZE);
+        new HistoryArchiver(this).runRetention(null);
+        new SnapshotManager(this).takeSnapshotIfDue();
+    }
+}
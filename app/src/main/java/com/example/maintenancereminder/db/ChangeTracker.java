@@ -0,0 +1,42 @@
+package com.example.maintenancereminder.db;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Dirty flag for one screen: set when a change to one of {@code tables} is published for the
+ * screen's device (or for all devices). Starts dirty so the first {@link #consume()} loads the screen.
+ */
+public class ChangeTracker implements DataChangeBus.Listener {
+    private final Set<String> tables;
+    private final long deviceId;
+    private final AtomicBoolean dirty = new AtomicBoolean(true);
+
+    public ChangeTracker(long deviceId, String... tables) {
+        this.deviceId = deviceId;
+        this.tables = new HashSet<>(Arrays.asList(tables));
+    }
+
+    @Override
+    public void onTablesChanged(Set<String> changed, long changedDeviceId) {
+        if (deviceId != DataChangeBus.ALL_DEVICES && changedDeviceId != DataChangeBus.ALL_DEVICES
+                && deviceId != changedDeviceId) return;
+        for (String table : changed) {
+            if (tables.contains(table)) {
+                dirty.set(true);
+                return;
+            }
+        }
+    }
+
+    public void invalidate() {
+        dirty.set(true);
+    }
+
+    /** Returns whether the screen has to re-query, and clears the flag. */
+    public boolean consume() {
+        return dirty.getAndSet(false);
+    }
+}
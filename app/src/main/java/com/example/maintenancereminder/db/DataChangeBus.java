@@ -0,0 +1,84 @@
+package com.example.maintenancereminder.db;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Tells interested screens which tables a write touched. DAOs publish after every write; listeners
+ * are called on the writing thread and are expected to do no more than mark themselves dirty
+ * (see {@link ChangeTracker}).
+ * <p>
+ * Writers bracket their transactions with {@link #beginTransaction()} and {@link #endTransaction()},
+ * the latter called after {@code db.endTransaction()}. Publishes made in between are held back and
+ * delivered once the outermost transaction has ended, so a listener never re-queries a snapshot that
+ * does not contain the change yet. A rolled back transaction still delivers; that only causes a
+ * spurious re-query, never a missed one.
+ */
+public final class DataChangeBus {
+    /** Device scope for writes that are not tied to a single device, or whose device is not known. */
+    public static final long ALL_DEVICES = -1L;
+
+    public interface Listener {
+        void onTablesChanged(Set<String> tables, long deviceId);
+    }
+
+    private static final class Pending {
+        int depth;
+        boolean published;
+        long deviceId;
+        final Set<String> tables = new HashSet<>();
+    }
+
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<Pending> pending = new ThreadLocal<>();
+
+    DataChangeBus() {}
+
+    public void register(Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void unregister(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /** Holds back this thread's publishes until the matching {@link #endTransaction()}. Nests. */
+    public void beginTransaction() {
+        Pending p = pending.get();
+        if (p == null) {
+            p = new Pending();
+            pending.set(p);
+        }
+        p.depth++;
+    }
+
+    /** Call after {@code db.endTransaction()}; the outermost call delivers what was held back. */
+    public void endTransaction() {
+        Pending p = pending.get();
+        if (p == null) throw new IllegalStateException("endTransaction without beginTransaction");
+        if (--p.depth > 0) return;
+        pending.remove();
+        if (p.published) deliver(p.deviceId, Collections.unmodifiableSet(p.tables));
+    }
+
+    public void publish(long deviceId, String... tables) {
+        Pending p = pending.get();
+        if (p != null) {
+            // one device keeps its scope; a mix of devices widens to all of them
+            p.deviceId = !p.published || p.deviceId == deviceId ? deviceId : ALL_DEVICES;
+            p.published = true;
+            Collections.addAll(p.tables, tables);
+            return;
+        }
+        deliver(deviceId, Collections.unmodifiableSet(new HashSet<>(Arrays.asList(tables))));
+    }
+
+    private void deliver(long deviceId, Set<String> changed) {
+        for (Listener listener : listeners) {
+            listener.onTablesChanged(changed, deviceId);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.maintenancereminder.db;
+
+import android.content.Context;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process-wide owner of the single {@link DbHelper} and of the executors used for database work.
+ * The database runs in WAL mode, so reads on {@link #readExecutor()} never wait for a write transaction.
+ */
+public final class DatabaseProvider {
+    public static final int DEFAULT_READ_POOL_SIZE = 2;
+
+    private static final Object LOCK = new Object();
+    private static volatile DatabaseProvider instance;
+    private static int readPoolSize = DEFAULT_READ_POOL_SIZE;
+
+    private final DbHelper dbHelper;
+    private final ExecutorService readExecutor;
+    private final ExecutorService writeExecutor;
+    private final DataChangeBus changeBus = new DataChangeBus();
+
+    private DatabaseProvider(Context appContext, int readPoolSize) {
+        this.dbHelper = new DbHelper(appContext);
+        this.readExecutor = Executors.newFixedThreadPool(readPoolSize, threadFactory("db-read"));
+        this.writeExecutor = Executors.newSingleThreadExecutor(threadFactory("db-write"));
+    }
+
+    /**
+     * Sets the number of reader threads. Must be called before the first {@link #get(Context)},
+     * normally from {@code Application.onCreate}.
+     */
+    public static void configure(int readerThreads) {
+        if (readerThreads <= 0) throw new IllegalArgumentException("readerThreads must be positive");
+        synchronized (LOCK) {
+            if (instance != null) throw new IllegalStateException("DatabaseProvider is already initialized");
+            readPoolSize = readerThreads;
+        }
+    }
+
+    public static DatabaseProvider get(Context context) {
+        DatabaseProvider local = instance;
+        if (local == null) {
+            synchronized (LOCK) {
+                local = instance;
+                if (local == null) {
+                    local = new DatabaseProvider(context.getApplicationContext(), readPoolSize);
+                    instance = local;
+                }
+            }
+        }
+        return local;
+    }
+
+    public DbHelper helper() {
+        return dbHelper;
+    }
+
+    public ExecutorService readExecutor() {
+        return readExecutor;
+    }
+
+    /** The only thread that writes; see {@link StatementCache}. */
+    public ExecutorService writeExecutor() {
+        return writeExecutor;
+    }
+
+    public DataChangeBus changeBus() {
+        return changeBus;
+    }
+
+    private static ThreadFactory threadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + "-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
@@ -4,25 +4,90 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 
 public class DbHelper extends SQLiteOpenHelper {
+    private static final String TAG = "DbHelper";
+    private static final long CLOSE_WAIT_MS = 2_000L;
 
     public static final String DB_NAME = "maintenance.db";
-    public static final int DB_VERSION = 4;
+    public static final int DB_VERSION = 18;
 
     public static final String TABLE_EQUIPMENT = "equipment";
     public static final String TABLE_TASKS = "maintenance_tasks";
     public static final String TABLE_HISTORY = "service_history";
     public static final String TABLE_SETTINGS = "app_settings";
 
-    public DbHelper(Context context){
+    private final SchemaCache schemaCache = new SchemaCache();
+    private final StatementCache statementCache = new StatementCache();
+    // Opening a connection takes the shared side; a restore holds the exclusive side from close to rename,
+    // so nothing can reopen the old file in between.
+    private final ReentrantReadWriteLock swapLock = new ReentrantReadWriteLock();
+
+    DbHelper(Context context){
         super(context, DB_NAME, null, DB_VERSION);
+        setWriteAheadLoggingEnabled(true);
     }
 
     @Override
     public void onConfigure(SQLiteDatabase db) {
         super.onConfigure(db);
         db.setForeignKeyConstraintsEnabled(true);
+        schemaCache.invalidate();
+        statementCache.clear();
+    }
+
+    @Override
+    public SQLiteDatabase getWritableDatabase() {
+        swapLock.readLock().lock();
+        try {
+            return super.getWritableDatabase();
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public SQLiteDatabase getReadableDatabase() {
+        swapLock.readLock().lock();
+        try {
+            return super.getReadableDatabase();
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Runs {@code work} on a connection of its own to the database file, e.g. for VACUUM INTO. The file
+     * cannot be swapped while it runs. The connection is opened in WAL mode so it never tries to change
+     * the journal mode.
+     */
+    void withSideConnection(File file, Consumer<SQLiteDatabase> work) {
+        swapLock.readLock().lock();
+        try {
+            SQLiteDatabase side = SQLiteDatabase.openDatabase(file.getPath(), null,
+                    SQLiteDatabase.OPEN_READWRITE | SQLiteDatabase.ENABLE_WRITE_AHEAD_LOGGING);
+            try {
+                work.accept(side);
+            } finally {
+                side.close();
+            }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        statementCache.clear();
+        super.close();
     }
 
     @Override
@@ -33,60 +98,14 @@ public class DbHelper extends SQLiteOpenHelper {
 
     @Override
     public void onCreate(SQLiteDatabase db) {
-        db.execSQL("CREATE TABLE " + TABLE_EQUIPMENT + " (" +
-                "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                "name TEXT NOT NULL," +
-                "category TEXT," +
-                "notes TEXT," +
-                "photo_uri TEXT," +
-                "barcode TEXT," +
-                "last_service_date INTEGER," +
-                "service_interval_days INTEGER," +
-                "next_service_date INTEGER" +
-                ")");
-
-        db.execSQL("CREATE TABLE " + TABLE_TASKS + " (" +
-                "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                "device_id INTEGER NOT NULL," +
-                "title TEXT NOT NULL," +
-                "interval_value INTEGER NOT NULL," +
-                "interval_unit TEXT NOT NULL," +
-                "next_due_date INTEGER NOT NULL," +
-                "priority TEXT NOT NULL," +
-                "comment TEXT," +
-                "cost REAL," +
-                "consumables TEXT," +
-                "is_active INTEGER NOT NULL DEFAULT 1," +
-                "FOREIGN KEY(device_id) REFERENCES " + TABLE_EQUIPMENT + "(id) ON DELETE CASCADE" +
-                ")");
-
-        db.execSQL("CREATE TABLE " + TABLE_HISTORY + " (" +
-                "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                "task_id INTEGER NOT NULL," +
-                "device_id INTEGER NOT NULL," +
-                "completion_date INTEGER NOT NULL," +
-                "completion_comment TEXT," +
-                "consumables TEXT," +
-                "cost REAL," +
-                "previous_due_date INTEGER NOT NULL," +
-                "FOREIGN KEY(task_id) REFERENCES " + TABLE_TASKS + "(id) ON DELETE CASCADE," +
-                "FOREIGN KEY(device_id) REFERENCES " + TABLE_EQUIPMENT + "(id) ON DELETE CASCADE" +
-                ")");
-
-        db.execSQL("CREATE TABLE " + TABLE_SETTINGS + " (" +
-                "id INTEGER PRIMARY KEY CHECK (id = 1)," +
-                "notification_preset TEXT NOT NULL," +
-                "notification_hour INTEGER NOT NULL" +
-                ")");
-
-        db.execSQL("CREATE INDEX IF NOT EXISTS idx_equipment_name ON " + TABLE_EQUIPMENT + "(name)");
-        db.execSQL("CREATE INDEX IF NOT EXISTS idx_tasks_device_due ON " + TABLE_TASKS + "(device_id, next_due_date)");
-        db.execSQL("CREATE INDEX IF NOT EXISTS idx_history_device_date ON " + TABLE_HISTORY + "(device_id, completion_date DESC)");
-        db.execSQL("INSERT INTO " + TABLE_SETTINGS + "(id, notification_preset, notification_hour) VALUES(1, 'MORNING', 9)");
+        for (String sql : DbSchema.createStatements()) {
+            db.execSQL(sql);
+        }
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        schemaCache.invalidate();
         if (oldVersion < 3) {
             db.execSQL("ALTER TABLE " + TABLE_EQUIPMENT + " ADD COLUMN category TEXT");
             db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_TASKS + " (" +
@@ -128,31 +147,66 @@ public class DbHelper extends SQLiteOpenHelper {
         if (oldVersion < 4) {
             ensureEquipmentColumns(db);
         }
-    }
 
-    private void ensureEquipmentColumns(SQLiteDatabase db) {
-        ensureColumnExists(db, TABLE_EQUIPMENT, "category", "TEXT");
-        ensureColumnExists(db, TABLE_EQUIPMENT, "notes", "TEXT");
-        ensureColumnExists(db, TABLE_EQUIPMENT, "photo_uri", "TEXT");
-        ensureColumnExists(db, TABLE_EQUIPMENT, "barcode", "TEXT");
-        ensureColumnExists(db, TABLE_EQUIPMENT, "last_service_date", "INTEGER");
-        ensureColumnExists(db, TABLE_EQUIPMENT, "service_interval_days", "INTEGER");
-        ensureColumnExists(db, TABLE_EQUIPMENT, "next_service_date", "INTEGER");
+        for (int version = Math.max(oldVersion + 1, 5); version <= newVersion; version++) {
+            for (String sql : DbSchema.upgradeStatements(version)) {
+                db.execSQL(sql);
+            }
+        }
+        schemaCache.invalidate();
     }
 
-    private void ensureColumnExists(SQLiteDatabase db, String table, String column, String type) {
-        Cursor cursor = db.rawQuery("PRAGMA table_info(" + table + ")", null);
-        boolean exists = false;
-        while (cursor.moveToNext()) {
-            int nameIndex = cursor.getColumnIndex("name");
-            if (nameIndex >= 0 && column.equals(cursor.getString(nameIndex))) {
-                exists = true;
-                break;
+    /**
+     * Closes every connection and renames {@code replacement} over {@code target}, dropping the old
+     * WAL and shared-memory files. The next access reopens (and, if needed, upgrades) the new file.
+     * Opens wait for the whole swap; reads already running keep their connection until they finish,
+     * and the old WAL is emptied and only deleted once they have (or after {@link #CLOSE_WAIT_MS}).
+     */
+    void replaceDatabase(File replacement, File target) throws IOException {
+        swapLock.writeLock().lock();
+        try {
+            SQLiteDatabase old = super.getWritableDatabase();
+            try (Cursor c = old.rawQuery("PRAGMA wal_checkpoint(TRUNCATE)", null)) {
+                c.moveToFirst();
             }
+            close();
+            long until = SystemClock.elapsedRealtime() + CLOSE_WAIT_MS;
+            while (old.isOpen() && SystemClock.elapsedRealtime() < until) SystemClock.sleep(10);
+            if (old.isOpen()) Log.w(TAG, "Replacing the database while a read is still running");
+            new File(target.getPath() + "-wal").delete();
+            new File(target.getPath() + "-shm").delete();
+            if (!replacement.renameTo(target)) {
+                throw new IOException("Cannot rename " + replacement + " to " + target);
+            }
+        } finally {
+            swapLock.writeLock().unlock();
         }
-        cursor.close();
-        if (!exists) {
-            db.execSQL("ALTER TABLE " + table + " ADD COLUMN " + column + " " + type);
-        }
+    }
+
+    SchemaCache schema() {
+        return schemaCache;
+    }
+
+    StatementCache statements() {
+        return statementCache;
+    }
+
+    private void ensureEquipmentColumns(SQLiteDatabase db) {
+        Set<String> existing = schemaCache.columns(db, TABLE_EQUIPMENT);
+        boolean altered = false;
+        altered |= ensureColumnExists(db, existing, TABLE_EQUIPMENT, "category", "TEXT");
+        altered |= ensureColumnExists(db, existing, TABLE_EQUIPMENT, "notes", "TEXT");
+        altered |= ensureColumnExists(db, existing, TABLE_EQUIPMENT, "photo_uri", "TEXT");
+        altered |= ensureColumnExists(db, existing, TABLE_EQUIPMENT, "barcode", "TEXT");
+        altered |= ensureColumnExists(db, existing, TABLE_EQUIPMENT, "last_service_date", "INTEGER");
+        altered |= ensureColumnExists(db, existing, TABLE_EQUIPMENT, "service_interval_days", "INTEGER");
+        altered |= ensureColumnExists(db, existing, TABLE_EQUIPMENT, "next_service_date", "INTEGER");
+        if (altered) schemaCache.invalidate();
+    }
+
+    private boolean ensureColumnExists(SQLiteDatabase db, Set<String> existing, String table, String column, String type) {
+        if (existing.contains(column)) return false;
+        db.execSQL("ALTER TABLE " + table + " ADD COLUMN " + column + " " + type);
+        return true;
     }
 }
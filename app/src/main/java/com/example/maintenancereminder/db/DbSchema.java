@@ -0,0 +1,710 @@
+package com.example.maintenancereminder.db;
+
+import com.example.maintenancereminder.model.ChangeRecord;
+import com.example.maintenancereminder.model.SearchHit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * DDL of a freshly created database at {@link DbHelper#DB_VERSION}, and of each upgrade step
+ * ({@link #upgradeStatements}). Kept free of Android types so the JVM tests can build and upgrade
+ * the same schema.
+ */
+final class DbSchema {
+    private DbSchema() {}
+
+    static final String CREATE_EQUIPMENT = "CREATE TABLE " + DbHelper.TABLE_EQUIPMENT + " (" +
+            "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+            "name TEXT NOT NULL," +
+            "category TEXT," +
+            "notes TEXT," +
+            "photo_uri TEXT," +
+            "barcode TEXT," +
+            "last_service_date INTEGER," +
+            "service_interval_days INTEGER," +
+            "next_service_date INTEGER," +
+            "nearest_due_date INTEGER," +
+            "overdue_task_count INTEGER NOT NULL DEFAULT 0," +
+            "sync_id TEXT" +
+            ")";
+
+    static final String CREATE_TASKS = "CREATE TABLE " + DbHelper.TABLE_TASKS + " (" +
+            "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+            "device_id INTEGER NOT NULL," +
+            "title TEXT NOT NULL," +
+            "interval_value INTEGER NOT NULL," +
+            "interval_unit TEXT NOT NULL," +
+            "next_due_date INTEGER NOT NULL," +
+            "priority TEXT NOT NULL," +
+            "comment TEXT," +
+            "cost REAL," +
+            "consumables TEXT," +
+            "is_active INTEGER NOT NULL DEFAULT 1," +
+            "sync_id TEXT," +
+            "FOREIGN KEY(device_id) REFERENCES " + DbHelper.TABLE_EQUIPMENT + "(id) ON DELETE CASCADE" +
+            ")";
+
+    static final String CREATE_HISTORY = "CREATE TABLE " + DbHelper.TABLE_HISTORY + " (" +
+            "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+            "task_id INTEGER NOT NULL," +
+            "device_id INTEGER NOT NULL," +
+            "completion_date INTEGER NOT NULL," +
+            "completion_comment TEXT," +
+            "consumables TEXT," +
+            "cost REAL," +
+            "previous_due_date INTEGER NOT NULL," +
+            "sync_id TEXT," +
+            "FOREIGN KEY(task_id) REFERENCES " + DbHelper.TABLE_TASKS + "(id) ON DELETE CASCADE," +
+            "FOREIGN KEY(device_id) REFERENCES " + DbHelper.TABLE_EQUIPMENT + "(id) ON DELETE CASCADE" +
+            ")";
+
+    static final String CREATE_SETTINGS = "CREATE TABLE " + DbHelper.TABLE_SETTINGS + " (" +
+            "id INTEGER PRIMARY KEY CHECK (id = 1)," +
+            "notification_preset TEXT NOT NULL," +
+            "notification_hour INTEGER NOT NULL," +
+            "overdue_cutoff INTEGER NOT NULL DEFAULT 0," +
+            "archive_after_days INTEGER NOT NULL DEFAULT 0," +
+            "reminder_mode TEXT NOT NULL DEFAULT 'PER_TASK'," +
+            "reminder_watermark INTEGER NOT NULL DEFAULT 0," +
+            "alarm_ledger_boot INTEGER NOT NULL DEFAULT -1," +
+            "digest_enabled INTEGER NOT NULL DEFAULT 0," +
+            "digest_cap INTEGER NOT NULL DEFAULT 10," +
+            "digest_interval_minutes INTEGER NOT NULL DEFAULT 30," +
+            "last_digest_at INTEGER NOT NULL DEFAULT 0," +
+            "date_zone TEXT," +
+            "rezone_to TEXT," +
+            "rezone_after_id INTEGER NOT NULL DEFAULT 0," +
+            "rezone_max_id INTEGER NOT NULL DEFAULT 0" +
+            ")";
+
+    static final String INSERT_DEFAULT_SETTINGS = "INSERT OR IGNORE INTO " + DbHelper.TABLE_SETTINGS +
+            "(id, notification_preset, notification_hour) VALUES(1, 'MORNING', 9)";
+
+    static final String IDX_EQUIPMENT_NAME =
+            "CREATE INDEX IF NOT EXISTS idx_equipment_name ON " + DbHelper.TABLE_EQUIPMENT + "(name)";
+    static final String IDX_TASKS_DEVICE_DUE =
+            "CREATE INDEX IF NOT EXISTS idx_tasks_device_due ON " + DbHelper.TABLE_TASKS + "(device_id, next_due_date)";
+    // Nearest active due date per device; also keeps the device join from falling back to idx_tasks_active_due.
+    static final String IDX_TASKS_DEVICE_ACTIVE_DUE =
+            "CREATE INDEX IF NOT EXISTS idx_tasks_device_active_due ON " + DbHelper.TABLE_TASKS + "(device_id, is_active, next_due_date)";
+    static final String IDX_TASKS_ACTIVE_DUE =
+            "CREATE INDEX IF NOT EXISTS idx_tasks_active_due ON " + DbHelper.TABLE_TASKS + "(is_active, next_due_date)";
+    // Ascending indexes: the implicit trailing rowid lets a reverse scan yield (completion_date, id) DESC
+    // without a temp sort, which keyset paging relies on.
+    static final String IDX_HISTORY_DATE =
+            "CREATE INDEX IF NOT EXISTS idx_history_date ON " + DbHelper.TABLE_HISTORY + "(completion_date)";
+    static final String IDX_HISTORY_DEVICE_COMPLETION =
+            "CREATE INDEX IF NOT EXISTS idx_history_device_completion ON " + DbHelper.TABLE_HISTORY + "(device_id, completion_date)";
+    // Serves getLastByTask and the ON DELETE CASCADE from maintenance_tasks.
+    static final String IDX_HISTORY_TASK_COMPLETION =
+            "CREATE INDEX IF NOT EXISTS idx_history_task_completion ON " + DbHelper.TABLE_HISTORY + "(task_id, completion_date)";
+
+    static final String IDX_EQUIPMENT_NEAREST = "CREATE INDEX IF NOT EXISTS idx_equipment_nearest ON " +
+            DbHelper.TABLE_EQUIPMENT + "(nearest_due_date IS NULL, nearest_due_date, name)";
+
+    // equipment.nearest_due_date / overdue_task_count are maintained from maintenance_tasks by the triggers
+    // below. "Overdue" is relative to app_settings.overdue_cutoff, which EquipmentDao moves once a day.
+    static String recomputeNearestDue(String deviceIdRef) {
+        return "UPDATE " + DbHelper.TABLE_EQUIPMENT + " SET " +
+                "nearest_due_date = (SELECT MIN(next_due_date) FROM " + DbHelper.TABLE_TASKS +
+                " WHERE device_id = " + deviceIdRef + " AND is_active = 1), " +
+                "overdue_task_count = (SELECT COUNT(*) FROM " + DbHelper.TABLE_TASKS +
+                " WHERE device_id = " + deviceIdRef + " AND is_active = 1 AND next_due_date < " +
+                "(SELECT overdue_cutoff FROM " + DbHelper.TABLE_SETTINGS + " WHERE id = 1)) " +
+                "WHERE id = " + deviceIdRef;
+    }
+
+    static final String TRG_TASKS_NEAREST_INSERT = "CREATE TRIGGER IF NOT EXISTS trg_tasks_nearest_ai AFTER INSERT ON " +
+            DbHelper.TABLE_TASKS + " BEGIN " + recomputeNearestDue("NEW.device_id") + "; END";
+    static final String TRG_TASKS_NEAREST_DELETE = "CREATE TRIGGER IF NOT EXISTS trg_tasks_nearest_ad AFTER DELETE ON " +
+            DbHelper.TABLE_TASKS + " BEGIN " + recomputeNearestDue("OLD.device_id") + "; END";
+    static final String TRG_TASKS_NEAREST_UPDATE = "CREATE TRIGGER IF NOT EXISTS trg_tasks_nearest_au " +
+            "AFTER UPDATE OF device_id, next_due_date, is_active ON " + DbHelper.TABLE_TASKS + " BEGIN " +
+            recomputeNearestDue("NEW.device_id") + "; " +
+            recomputeNearestDue("OLD.device_id") + " AND OLD.device_id <> NEW.device_id; END";
+
+    static final String BACKFILL_NEAREST_DUE = "UPDATE " + DbHelper.TABLE_EQUIPMENT + " SET " +
+            "nearest_due_date = (SELECT MIN(t.next_due_date) FROM " + DbHelper.TABLE_TASKS + " t" +
+            " WHERE t.device_id = " + DbHelper.TABLE_EQUIPMENT + ".id AND t.is_active = 1)";
+
+    // Cold tier of service_history. HistoryArchiver copies old rows here (same ids) before deleting them
+    // from the hot table; the history delete triggers skip rows that already have an archive copy, so
+    // rollups and the search index keep counting archived completions until the archive row goes too.
+    static final String TABLE_HISTORY_ARCHIVE = "service_history_archive";
+    static final String TABLE_TASK_SUMMARY = "history_task_summary";
+
+    static final String NOT_ARCHIVED = "NOT EXISTS (SELECT 1 FROM " + TABLE_HISTORY_ARCHIVE + " WHERE id = OLD.id)";
+
+    // Full-text index over equipment, tasks and completions. docid = source id * 4 + kind, so each source
+    // row maps to exactly one document; label is the display title and is not tokenized.
+    static final String TABLE_SEARCH = "search_index";
+
+    static final String CREATE_SEARCH = "CREATE VIRTUAL TABLE IF NOT EXISTS " + TABLE_SEARCH + " USING fts4(" +
+            "kind, device_id, label, title, body, " +
+            "notindexed=kind, notindexed=device_id, notindexed=label, prefix=\"2,3\", tokenize=unicode61)";
+
+    private static String searchDocId(String row, int kind) {
+        return row + ".id * 4 + " + kind;
+    }
+
+    private static String equipmentDocument(String row) {
+        return "SELECT " + searchDocId(row, SearchHit.KIND_EQUIPMENT) + ", " + SearchHit.KIND_EQUIPMENT + ", " + row + ".id, " +
+                row + ".name, " + row + ".name, " +
+                "COALESCE(" + row + ".category, '') || ' ' || COALESCE(" + row + ".notes, '')";
+    }
+
+    private static String taskDocument(String row) {
+        return "SELECT " + searchDocId(row, SearchHit.KIND_TASK) + ", " + SearchHit.KIND_TASK + ", " + row + ".device_id, " +
+                row + ".title, " + row + ".title, " +
+                "COALESCE(" + row + ".comment, '') || ' ' || COALESCE(" + row + ".consumables, '')";
+    }
+
+    private static String historyDocument(String row) {
+        return "SELECT " + searchDocId(row, SearchHit.KIND_HISTORY) + ", " + SearchHit.KIND_HISTORY + ", " + row + ".device_id, " +
+                "(SELECT title FROM " + DbHelper.TABLE_TASKS + " WHERE id = " + row + ".task_id), '', " +
+                "COALESCE(" + row + ".completion_comment, '') || ' ' || COALESCE(" + row + ".consumables, '')";
+    }
+
+    private static final String SEARCH_INSERT = "INSERT INTO " + TABLE_SEARCH + "(docid, kind, device_id, label, title, body) ";
+
+    private static void addSearchTriggers(List<String> out, String table, String name, int kind,
+                                          String indexedColumns, String document, String deleteWhen) {
+        String insert = SEARCH_INSERT + document.replace("$", "NEW") + "; ";
+        String delete = "DELETE FROM " + TABLE_SEARCH + " WHERE docid = " + searchDocId("OLD", kind) + "; ";
+        out.add("CREATE TRIGGER IF NOT EXISTS trg_" + name + "_search_ai AFTER INSERT ON " + table +
+                " BEGIN " + insert + "END");
+        out.add("CREATE TRIGGER IF NOT EXISTS trg_" + name + "_search_au AFTER UPDATE OF " + indexedColumns +
+                " ON " + table + " BEGIN " + delete + insert + "END");
+        out.add("CREATE TRIGGER IF NOT EXISTS trg_" + name + "_search_ad AFTER DELETE ON " + table +
+                (deleteWhen == null ? "" : " WHEN " + deleteWhen) + " BEGIN " + delete + "END");
+    }
+
+    static List<String> searchStatements() {
+        return searchStatements(NOT_ARCHIVED);
+    }
+
+    // historyDeleteWhen is null before v10: the archive table does not exist yet
+    private static List<String> searchStatements(String historyDeleteWhen) {
+        List<String> statements = new ArrayList<>();
+        statements.add(CREATE_SEARCH);
+        addSearchTriggers(statements, DbHelper.TABLE_EQUIPMENT, "equipment", SearchHit.KIND_EQUIPMENT,
+                "name, category, notes", equipmentDocument("$"), null);
+        addSearchTriggers(statements, DbHelper.TABLE_TASKS, "tasks", SearchHit.KIND_TASK,
+                "device_id, title, comment, consumables", taskDocument("$"), null);
+        addSearchTriggers(statements, DbHelper.TABLE_HISTORY, "history", SearchHit.KIND_HISTORY,
+                "completion_comment, consumables", historyDocument("$"), historyDeleteWhen);
+        return statements;
+    }
+
+    // History documents are labelled with their task's title; a rename relabels them, archived ones included.
+    // Created from v16 on, when the archive table is known to exist.
+    static final String TRG_TASKS_SEARCH_RELABEL = "CREATE TRIGGER IF NOT EXISTS trg_tasks_search_relabel " +
+            "AFTER UPDATE OF title ON " + DbHelper.TABLE_TASKS + " WHEN NEW.title IS NOT OLD.title BEGIN " +
+            "UPDATE " + TABLE_SEARCH + " SET label = NEW.title WHERE docid IN (" +
+            "SELECT " + searchDocId("h", SearchHit.KIND_HISTORY) + " FROM " + DbHelper.TABLE_HISTORY + " h WHERE h.task_id = NEW.id " +
+            "UNION ALL SELECT " + searchDocId("a", SearchHit.KIND_HISTORY) + " FROM " + TABLE_HISTORY_ARCHIVE + " a WHERE a.task_id = NEW.id); END";
+
+    // Labels written before the relabel trigger existed may carry a task's old title.
+    static final String RELABEL_HISTORY_DOCUMENTS = "UPDATE " + TABLE_SEARCH + " SET label = (" +
+            "SELECT t.title FROM " + DbHelper.TABLE_TASKS + " t WHERE t.id = COALESCE(" +
+            "(SELECT task_id FROM " + DbHelper.TABLE_HISTORY + " WHERE id = " + TABLE_SEARCH + ".docid / 4), " +
+            "(SELECT task_id FROM " + TABLE_HISTORY_ARCHIVE + " WHERE id = " + TABLE_SEARCH + ".docid / 4))) " +
+            "WHERE docid % 4 = " + SearchHit.KIND_HISTORY;
+
+    static List<String> searchBackfillStatements() {
+        return Arrays.asList(
+                SEARCH_INSERT + equipmentDocument("e") + " FROM " + DbHelper.TABLE_EQUIPMENT + " e",
+                SEARCH_INSERT + taskDocument("t") + " FROM " + DbHelper.TABLE_TASKS + " t",
+                SEARCH_INSERT + historyDocument("h") + " FROM " + DbHelper.TABLE_HISTORY + " h"
+        );
+    }
+
+    // Monthly rollups of service_history. Keyed by UTC calendar month (yyyymm), so the triggers that
+    // remove a completion find the bucket its insert used whatever zone the device is in by then; the
+    // category rollup follows the device's current category, the same grouping a join over history would give.
+    static final String TABLE_ROLLUP_DEVICE = "rollup_device_month";
+    static final String TABLE_ROLLUP_CATEGORY = "rollup_category_month";
+
+    static final String CREATE_ROLLUP_DEVICE = "CREATE TABLE IF NOT EXISTS " + TABLE_ROLLUP_DEVICE + " (" +
+            "device_id INTEGER NOT NULL," +
+            "month INTEGER NOT NULL," +
+            "total_cost REAL NOT NULL DEFAULT 0," +
+            "completion_count INTEGER NOT NULL DEFAULT 0," +
+            "on_time_count INTEGER NOT NULL DEFAULT 0," +
+            "PRIMARY KEY(device_id, month)," +
+            "FOREIGN KEY(device_id) REFERENCES " + DbHelper.TABLE_EQUIPMENT + "(id) ON DELETE CASCADE" +
+            ") WITHOUT ROWID";
+
+    static final String CREATE_ROLLUP_CATEGORY = "CREATE TABLE IF NOT EXISTS " + TABLE_ROLLUP_CATEGORY + " (" +
+            "category TEXT NOT NULL," +
+            "month INTEGER NOT NULL," +
+            "total_cost REAL NOT NULL DEFAULT 0," +
+            "completion_count INTEGER NOT NULL DEFAULT 0," +
+            "on_time_count INTEGER NOT NULL DEFAULT 0," +
+            "PRIMARY KEY(category, month)" +
+            ") WITHOUT ROWID";
+
+    static final String IDX_ROLLUP_CATEGORY_MONTH = "CREATE INDEX IF NOT EXISTS idx_rollup_category_month ON " +
+            TABLE_ROLLUP_CATEGORY + "(month)";
+    // Fleet-wide ranges over the device rollup; added in v17.
+    static final String IDX_ROLLUP_DEVICE_MONTH = "CREATE INDEX IF NOT EXISTS idx_rollup_device_month ON " +
+            TABLE_ROLLUP_DEVICE + "(month)";
+
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    private static String rollupMonth(String row) {
+        return "CAST(strftime('%Y%m', " + row + ".completion_date / 1000, 'unixepoch') AS INTEGER)";
+    }
+
+    // Due dates are stored as the start of the local day, so anything completed during that day is on time.
+    private static String onTime(String row) {
+        return "(" + row + ".completion_date < " + row + ".previous_due_date + " + DAY_MILLIS + ")";
+    }
+
+    private static String deviceCategory(String row) {
+        return "(SELECT COALESCE(category, '') FROM " + DbHelper.TABLE_EQUIPMENT + " WHERE id = " + row + ".device_id)";
+    }
+
+    private static String applyToRollups(String row, String sign) {
+        String month = rollupMonth(row);
+        String delta = " SET total_cost = total_cost " + sign + " COALESCE(" + row + ".cost, 0), " +
+                "completion_count = completion_count " + sign + " 1, " +
+                "on_time_count = on_time_count " + sign + " " + onTime(row);
+        String deviceKey = " WHERE device_id = " + row + ".device_id AND month = " + month;
+        String categoryKey = " WHERE category = " + deviceCategory(row) + " AND month = " + month;
+        if ("+".equals(sign)) {
+            return "INSERT OR IGNORE INTO " + TABLE_ROLLUP_DEVICE + "(device_id, month) VALUES (" + row + ".device_id, " + month + "); " +
+                    "UPDATE " + TABLE_ROLLUP_DEVICE + delta + deviceKey + "; " +
+                    "INSERT OR IGNORE INTO " + TABLE_ROLLUP_CATEGORY + "(category, month) SELECT COALESCE(category, ''), " + month +
+                    " FROM " + DbHelper.TABLE_EQUIPMENT + " WHERE id = " + row + ".device_id; " +
+                    "UPDATE " + TABLE_ROLLUP_CATEGORY + delta + categoryKey + "; ";
+        }
+        return "UPDATE " + TABLE_ROLLUP_DEVICE + delta + deviceKey + "; " +
+                "DELETE FROM " + TABLE_ROLLUP_DEVICE + deviceKey + " AND completion_count <= 0; " +
+                "UPDATE " + TABLE_ROLLUP_CATEGORY + delta + categoryKey + "; " +
+                "DELETE FROM " + TABLE_ROLLUP_CATEGORY + categoryKey + " AND completion_count <= 0; ";
+    }
+
+    static final String TRG_HISTORY_ROLLUP_INSERT = "CREATE TRIGGER IF NOT EXISTS trg_history_rollup_ai AFTER INSERT ON " +
+            DbHelper.TABLE_HISTORY + " BEGIN " + applyToRollups("NEW", "+") + "END";
+
+    // When a device is deleted the cascaded history deletes no longer see its category,
+    // so its share of the category rollup is removed up front by TRG_EQUIPMENT_ROLLUP_DELETE.
+    static final String TRG_HISTORY_ROLLUP_DELETE = historyRollupDelete(NOT_ARCHIVED);
+
+    private static String historyRollupDelete(String when) {
+        return "CREATE TRIGGER IF NOT EXISTS trg_history_rollup_ad AFTER DELETE ON " + DbHelper.TABLE_HISTORY +
+                (when == null ? "" : " WHEN " + when) + " BEGIN " + applyToRollups("OLD", "-") + "END";
+    }
+
+    static final String TRG_HISTORY_ROLLUP_UPDATE = "CREATE TRIGGER IF NOT EXISTS trg_history_rollup_au AFTER UPDATE OF " +
+            "device_id, completion_date, cost, previous_due_date ON " + DbHelper.TABLE_HISTORY +
+            " BEGIN " + applyToRollups("OLD", "-") + applyToRollups("NEW", "+") + "END";
+
+    private static String moveDeviceRollups(String device, String category, String sign) {
+        String share = "(SELECT %s FROM " + TABLE_ROLLUP_DEVICE + " d WHERE d.device_id = " + device + ".id" +
+                " AND d.month = " + TABLE_ROLLUP_CATEGORY + ".month)";
+        return "UPDATE " + TABLE_ROLLUP_CATEGORY + " SET " +
+                "total_cost = total_cost " + sign + " " + String.format(share, "total_cost") + ", " +
+                "completion_count = completion_count " + sign + " " + String.format(share, "completion_count") + ", " +
+                "on_time_count = on_time_count " + sign + " " + String.format(share, "on_time_count") +
+                " WHERE category = COALESCE(" + category + ", '') AND month IN " +
+                "(SELECT month FROM " + TABLE_ROLLUP_DEVICE + " WHERE device_id = " + device + ".id); ";
+    }
+
+    private static String deleteEmptyCategoryRollups(String category) {
+        return "DELETE FROM " + TABLE_ROLLUP_CATEGORY + " WHERE category = COALESCE(" + category + ", '')" +
+                " AND completion_count <= 0; ";
+    }
+
+    static final String TRG_EQUIPMENT_ROLLUP_DELETE = "CREATE TRIGGER IF NOT EXISTS trg_equipment_rollup_bd BEFORE DELETE ON " +
+            DbHelper.TABLE_EQUIPMENT + " BEGIN " + moveDeviceRollups("OLD", "OLD.category", "-") +
+            deleteEmptyCategoryRollups("OLD.category") + "END";
+
+    static final String TRG_EQUIPMENT_ROLLUP_RECATEGORIZE = "CREATE TRIGGER IF NOT EXISTS trg_equipment_rollup_au " +
+            "AFTER UPDATE OF category ON " + DbHelper.TABLE_EQUIPMENT +
+            " WHEN COALESCE(OLD.category, '') <> COALESCE(NEW.category, '') BEGIN " +
+            moveDeviceRollups("OLD", "OLD.category", "-") +
+            "INSERT OR IGNORE INTO " + TABLE_ROLLUP_CATEGORY + "(category, month) SELECT COALESCE(NEW.category, ''), month" +
+            " FROM " + TABLE_ROLLUP_DEVICE + " WHERE device_id = NEW.id; " +
+            moveDeviceRollups("NEW", "NEW.category", "+") +
+            deleteEmptyCategoryRollups("OLD.category") + "END";
+
+    static List<String> rollupStatements() {
+        return rollupStatements(TRG_HISTORY_ROLLUP_DELETE);
+    }
+
+    private static List<String> rollupStatements(String historyDeleteTrigger) {
+        return Arrays.asList(
+                CREATE_ROLLUP_DEVICE,
+                CREATE_ROLLUP_CATEGORY,
+                IDX_ROLLUP_CATEGORY_MONTH,
+                TRG_HISTORY_ROLLUP_INSERT,
+                historyDeleteTrigger,
+                TRG_HISTORY_ROLLUP_UPDATE,
+                TRG_EQUIPMENT_ROLLUP_DELETE,
+                TRG_EQUIPMENT_ROLLUP_RECATEGORIZE
+        );
+    }
+
+    static List<String> rollupBackfillStatements() {
+        return rollupBackfillStatements(DbHelper.TABLE_HISTORY);
+    }
+
+    // history is a table or subquery with device_id, completion_date, cost and previous_due_date
+    private static List<String> rollupBackfillStatements(String history) {
+        return Arrays.asList(
+                "INSERT INTO " + TABLE_ROLLUP_DEVICE + "(device_id, month, total_cost, completion_count, on_time_count) " +
+                        "SELECT h.device_id, " + rollupMonth("h") + " AS month, SUM(COALESCE(h.cost, 0)), COUNT(*), " +
+                        "SUM(" + onTime("h") + ") FROM " + history + " h GROUP BY h.device_id, month",
+                "INSERT INTO " + TABLE_ROLLUP_CATEGORY + "(category, month, total_cost, completion_count, on_time_count) " +
+                        "SELECT COALESCE(e.category, '') AS category, d.month, SUM(d.total_cost), SUM(d.completion_count), " +
+                        "SUM(d.on_time_count) FROM " + TABLE_ROLLUP_DEVICE + " d " +
+                        "JOIN " + DbHelper.TABLE_EQUIPMENT + " e ON e.id = d.device_id GROUP BY category, d.month"
+        );
+    }
+
+    static final String CREATE_HISTORY_ARCHIVE = historyArchiveTable("sync_id TEXT,");
+    // as created by the v10 upgrade; v11 adds sync_id
+    private static final String CREATE_HISTORY_ARCHIVE_V10 = historyArchiveTable("");
+
+    private static String historyArchiveTable(String extraColumns) {
+        return "CREATE TABLE IF NOT EXISTS " + TABLE_HISTORY_ARCHIVE + " (" +
+                "id INTEGER PRIMARY KEY," +
+                "task_id INTEGER NOT NULL," +
+                "device_id INTEGER NOT NULL," +
+                "completion_date INTEGER NOT NULL," +
+                "completion_comment TEXT," +
+                "consumables TEXT," +
+                "cost REAL," +
+                "previous_due_date INTEGER NOT NULL," +
+                extraColumns +
+                "FOREIGN KEY(task_id) REFERENCES " + DbHelper.TABLE_TASKS + "(id) ON DELETE CASCADE," +
+                "FOREIGN KEY(device_id) REFERENCES " + DbHelper.TABLE_EQUIPMENT + "(id) ON DELETE CASCADE" +
+                ")";
+    }
+
+    // Per-task totals of what has been archived, so "last serviced" survives without touching the archive.
+    static final String CREATE_TASK_SUMMARY = "CREATE TABLE IF NOT EXISTS " + TABLE_TASK_SUMMARY + " (" +
+            "task_id INTEGER PRIMARY KEY," +
+            "archived_count INTEGER NOT NULL DEFAULT 0," +
+            "archived_cost REAL NOT NULL DEFAULT 0," +
+            "first_completion INTEGER," +
+            "last_completion INTEGER," +
+            "FOREIGN KEY(task_id) REFERENCES " + DbHelper.TABLE_TASKS + "(id) ON DELETE CASCADE" +
+            ")";
+
+    static final String IDX_ARCHIVE_DATE =
+            "CREATE INDEX IF NOT EXISTS idx_archive_date ON " + TABLE_HISTORY_ARCHIVE + "(completion_date)";
+    static final String IDX_ARCHIVE_DEVICE_COMPLETION =
+            "CREATE INDEX IF NOT EXISTS idx_archive_device_completion ON " + TABLE_HISTORY_ARCHIVE + "(device_id, completion_date)";
+    static final String IDX_ARCHIVE_TASK_COMPLETION =
+            "CREATE INDEX IF NOT EXISTS idx_archive_task_completion ON " + TABLE_HISTORY_ARCHIVE + "(task_id, completion_date)";
+
+    static final String TRG_ARCHIVE_INSERT = "CREATE TRIGGER IF NOT EXISTS trg_archive_ai AFTER INSERT ON " +
+            TABLE_HISTORY_ARCHIVE + " BEGIN " +
+            "INSERT OR IGNORE INTO " + TABLE_TASK_SUMMARY + "(task_id) VALUES (NEW.task_id); " +
+            "UPDATE " + TABLE_TASK_SUMMARY + " SET archived_count = archived_count + 1, " +
+            "archived_cost = archived_cost + COALESCE(NEW.cost, 0), " +
+            "first_completion = MIN(COALESCE(first_completion, NEW.completion_date), NEW.completion_date), " +
+            "last_completion = MAX(COALESCE(last_completion, NEW.completion_date), NEW.completion_date) " +
+            "WHERE task_id = NEW.task_id; END";
+
+    static final String TRG_ARCHIVE_DELETE = "CREATE TRIGGER IF NOT EXISTS trg_archive_ad AFTER DELETE ON " +
+            TABLE_HISTORY_ARCHIVE + " BEGIN " +
+            "UPDATE " + TABLE_TASK_SUMMARY + " SET archived_count = archived_count - 1, " +
+            "archived_cost = archived_cost - COALESCE(OLD.cost, 0), " +
+            "first_completion = (SELECT MIN(completion_date) FROM " + TABLE_HISTORY_ARCHIVE + " WHERE task_id = OLD.task_id), " +
+            "last_completion = (SELECT MAX(completion_date) FROM " + TABLE_HISTORY_ARCHIVE + " WHERE task_id = OLD.task_id) " +
+            "WHERE task_id = OLD.task_id; " +
+            "DELETE FROM " + TABLE_TASK_SUMMARY + " WHERE task_id = OLD.task_id AND archived_count <= 0; " +
+            "DELETE FROM " + TABLE_SEARCH + " WHERE docid = " + searchDocId("OLD", SearchHit.KIND_HISTORY) + "; " +
+            applyToRollups("OLD", "-") + "END";
+
+    static List<String> archiveStatements() {
+        return archiveStatements(CREATE_HISTORY_ARCHIVE);
+    }
+
+    private static List<String> archiveStatements(String createArchive) {
+        return Arrays.asList(
+                createArchive,
+                CREATE_TASK_SUMMARY,
+                IDX_ARCHIVE_DATE,
+                IDX_ARCHIVE_DEVICE_COMPLETION,
+                IDX_ARCHIVE_TASK_COMPLETION,
+                TRG_ARCHIVE_INSERT,
+                TRG_ARCHIVE_DELETE
+        );
+    }
+
+    // Change log for sync. Synced rows carry a random sync_id shared by every replica, and the triggers
+    // below append (entity, sync_id, op) whenever a synced column changes. seq is AUTOINCREMENT, so it
+    // only ever grows. changed_at/origin form the last-writer-wins clock: normally "now, this peer", but
+    // while SyncEngine applies a remote batch sync_state holds the remote clock and the triggers record that.
+    static final String TABLE_CHANGE_LOG = "change_log";
+    static final String TABLE_SYNC_STATE = "sync_state";
+    static final String TABLE_SYNC_PEERS = "sync_peers";
+
+    static final String NEW_SYNC_ID = "lower(hex(randomblob(16)))";
+    private static final String NOW_MILLIS = "CAST((julianday('now') - 2440587.5) * 86400000 AS INTEGER)";
+
+    static final String CREATE_CHANGE_LOG = "CREATE TABLE IF NOT EXISTS " + TABLE_CHANGE_LOG + " (" +
+            "seq INTEGER PRIMARY KEY AUTOINCREMENT," +
+            "entity TEXT NOT NULL," +
+            "sync_id TEXT NOT NULL," +
+            "op TEXT NOT NULL," +
+            "changed_at INTEGER NOT NULL," +
+            "origin TEXT NOT NULL" +
+            ")";
+
+    // Latest change per row: the trailing rowid (seq) orders each (entity, sync_id) group.
+    static final String IDX_CHANGE_LOG_ENTITY = "CREATE INDEX IF NOT EXISTS idx_change_log_entity ON " +
+            TABLE_CHANGE_LOG + "(entity, sync_id)";
+
+    static final String CREATE_SYNC_STATE = "CREATE TABLE IF NOT EXISTS " + TABLE_SYNC_STATE + " (" +
+            "id INTEGER PRIMARY KEY CHECK (id = 1)," +
+            "peer_id TEXT NOT NULL," +
+            "applying_changed_at INTEGER," +
+            "applying_origin TEXT" +
+            ")";
+
+    static final String INSERT_SYNC_STATE = "INSERT OR IGNORE INTO " + TABLE_SYNC_STATE +
+            "(id, peer_id) VALUES (1, " + NEW_SYNC_ID + ")";
+
+    // Delivery cursors per peer (or shared folder): our seq last sent there, their seq last applied here.
+    static final String CREATE_SYNC_PEERS = "CREATE TABLE IF NOT EXISTS " + TABLE_SYNC_PEERS + " (" +
+            "peer_key TEXT PRIMARY KEY," +
+            "last_sent_seq INTEGER NOT NULL DEFAULT 0," +
+            "last_received_seq INTEGER NOT NULL DEFAULT 0" +
+            ") WITHOUT ROWID";
+
+    private static String syncIdIndex(String table) {
+        return "CREATE UNIQUE INDEX IF NOT EXISTS idx_" + table + "_sync ON " + table + "(sync_id)";
+    }
+
+    private static String logChange(String entity, String syncId, String op) {
+        return "INSERT INTO " + TABLE_CHANGE_LOG + "(entity, sync_id, op, changed_at, origin) SELECT '" + entity + "', " +
+                syncId + ", '" + op + "', COALESCE(applying_changed_at, " + NOW_MILLIS + "), COALESCE(applying_origin, peer_id)" +
+                " FROM " + TABLE_SYNC_STATE + " WHERE id = 1; ";
+    }
+
+    private static void addChangeTriggers(List<String> out, String table, String name, String entity,
+                                          String syncedColumns, String deleteWhen) {
+        out.add("CREATE TRIGGER IF NOT EXISTS trg_" + name + "_change_ai AFTER INSERT ON " + table + " BEGIN " +
+                "UPDATE " + table + " SET sync_id = " + NEW_SYNC_ID + " WHERE id = NEW.id AND sync_id IS NULL; " +
+                logChange(entity, "(SELECT sync_id FROM " + table + " WHERE id = NEW.id)", ChangeRecord.OP_UPSERT) + "END");
+        out.add("CREATE TRIGGER IF NOT EXISTS trg_" + name + "_change_au AFTER UPDATE OF " + syncedColumns + " ON " + table +
+                " BEGIN " + logChange(entity, "NEW.sync_id", ChangeRecord.OP_UPSERT) + "END");
+        out.add("CREATE TRIGGER IF NOT EXISTS trg_" + name + "_change_ad AFTER DELETE ON " + table +
+                (deleteWhen == null ? "" : " WHEN " + deleteWhen) +
+                " BEGIN " + logChange(entity, "OLD.sync_id", ChangeRecord.OP_DELETE) + "END");
+    }
+
+    static final String EQUIPMENT_SYNCED_COLUMNS = "name, category, notes, photo_uri";
+    static final String TASK_SYNCED_COLUMNS = "device_id, title, interval_value, interval_unit, next_due_date, " +
+            "priority, comment, cost, consumables, is_active";
+    static final String HISTORY_SYNCED_COLUMNS = "task_id, device_id, completion_date, completion_comment, " +
+            "consumables, cost, previous_due_date";
+
+    static List<String> changeLogStatements() {
+        List<String> statements = new ArrayList<>(Arrays.asList(
+                CREATE_CHANGE_LOG,
+                IDX_CHANGE_LOG_ENTITY,
+                CREATE_SYNC_STATE,
+                INSERT_SYNC_STATE,
+                CREATE_SYNC_PEERS,
+                syncIdIndex(DbHelper.TABLE_EQUIPMENT),
+                syncIdIndex(DbHelper.TABLE_TASKS),
+                syncIdIndex(DbHelper.TABLE_HISTORY),
+                syncIdIndex(TABLE_HISTORY_ARCHIVE)
+        ));
+        addChangeTriggers(statements, DbHelper.TABLE_EQUIPMENT, "equipment", ChangeRecord.ENTITY_EQUIPMENT,
+                EQUIPMENT_SYNCED_COLUMNS, null);
+        addChangeTriggers(statements, DbHelper.TABLE_TASKS, "tasks", ChangeRecord.ENTITY_TASK,
+                TASK_SYNCED_COLUMNS, null);
+        // moving a row to the archive is not a delete for sync purposes
+        addChangeTriggers(statements, DbHelper.TABLE_HISTORY, "history", ChangeRecord.ENTITY_HISTORY,
+                HISTORY_SYNCED_COLUMNS, NOT_ARCHIVED);
+        statements.add("CREATE TRIGGER IF NOT EXISTS trg_archive_change_ad AFTER DELETE ON " + TABLE_HISTORY_ARCHIVE +
+                " BEGIN " + logChange(ChangeRecord.ENTITY_HISTORY, "OLD.sync_id", ChangeRecord.OP_DELETE) + "END");
+        return statements;
+    }
+
+    // Existing rows get sync ids and one upsert each, so the first sync after the upgrade sends everything.
+    static List<String> changeLogBackfillStatements() {
+        List<String> statements = new ArrayList<>();
+        String[][] sources = {
+                {DbHelper.TABLE_EQUIPMENT, ChangeRecord.ENTITY_EQUIPMENT},
+                {DbHelper.TABLE_TASKS, ChangeRecord.ENTITY_TASK},
+                {DbHelper.TABLE_HISTORY, ChangeRecord.ENTITY_HISTORY},
+                {TABLE_HISTORY_ARCHIVE, ChangeRecord.ENTITY_HISTORY}
+        };
+        for (String[] source : sources) {
+            statements.add("UPDATE " + source[0] + " SET sync_id = " + NEW_SYNC_ID + " WHERE sync_id IS NULL");
+        }
+        for (String[] source : sources) {
+            statements.add("INSERT INTO " + TABLE_CHANGE_LOG + "(entity, sync_id, op, changed_at, origin) " +
+                    "SELECT '" + source[1] + "', x.sync_id, '" + ChangeRecord.OP_UPSERT + "', " + NOW_MILLIS + ", s.peer_id " +
+                    "FROM " + source[0] + " x, " + TABLE_SYNC_STATE + " s WHERE s.id = 1 ORDER BY x.id");
+        }
+        return statements;
+    }
+
+    // Trigger time currently registered with AlarmManager per task (the nominal due-day + hour, not the
+    // "now + grace" used for overdue tasks), so rescheduling only touches alarms whose time changed.
+    static final String TABLE_SCHEDULED_ALARMS = "scheduled_alarms";
+
+    static final String CREATE_SCHEDULED_ALARMS = "CREATE TABLE IF NOT EXISTS " + TABLE_SCHEDULED_ALARMS + " (" +
+            "task_id INTEGER PRIMARY KEY," +
+            "trigger_at INTEGER NOT NULL," +
+            "FOREIGN KEY(task_id) REFERENCES " + DbHelper.TABLE_TASKS + "(id) ON DELETE CASCADE" +
+            ")";
+
+    // Reminders that fired in digest mode and wait for the next digest.
+    static final String TABLE_REMINDER_QUEUE = "reminder_queue";
+
+    static final String CREATE_REMINDER_QUEUE = "CREATE TABLE IF NOT EXISTS " + TABLE_REMINDER_QUEUE + " (" +
+            "task_id INTEGER PRIMARY KEY," +
+            "queued_at INTEGER NOT NULL," +
+            "FOREIGN KEY(task_id) REFERENCES " + DbHelper.TABLE_TASKS + "(id) ON DELETE CASCADE" +
+            ")";
+
+    /**
+     * Statements that bring a database at {@code version - 1} to {@code version}, for versions 5 and up.
+     * Each step only uses DDL as it was at that version: later steps alter what earlier ones created.
+     */
+    static List<String> upgradeStatements(int version) {
+        List<String> statements = new ArrayList<>();
+        switch (version) {
+            case 5:
+                statements.add("DROP INDEX IF EXISTS idx_history_device_date");
+                statements.add(IDX_HISTORY_DATE);
+                statements.add(IDX_HISTORY_DEVICE_COMPLETION);
+                break;
+            case 6:
+                statements.add(IDX_TASKS_DEVICE_ACTIVE_DUE);
+                statements.add(IDX_TASKS_ACTIVE_DUE);
+                statements.add(IDX_HISTORY_TASK_COMPLETION);
+                break;
+            case 7:
+                statements.add("ALTER TABLE " + DbHelper.TABLE_EQUIPMENT + " ADD COLUMN nearest_due_date INTEGER");
+                statements.add("ALTER TABLE " + DbHelper.TABLE_EQUIPMENT + " ADD COLUMN overdue_task_count INTEGER NOT NULL DEFAULT 0");
+                statements.add("ALTER TABLE " + DbHelper.TABLE_SETTINGS + " ADD COLUMN overdue_cutoff INTEGER NOT NULL DEFAULT 0");
+                statements.add(BACKFILL_NEAREST_DUE);
+                statements.add(IDX_EQUIPMENT_NEAREST);
+                statements.add(TRG_TASKS_NEAREST_INSERT);
+                statements.add(TRG_TASKS_NEAREST_DELETE);
+                statements.add(TRG_TASKS_NEAREST_UPDATE);
+                break;
+            case 8:
+                statements.addAll(searchStatements(null));
+                statements.addAll(searchBackfillStatements());
+                break;
+            case 9:
+                statements.addAll(rollupStatements(historyRollupDelete(null)));
+                statements.addAll(rollupBackfillStatements());
+                break;
+            case 10:
+                statements.add("ALTER TABLE " + DbHelper.TABLE_SETTINGS + " ADD COLUMN archive_after_days INTEGER NOT NULL DEFAULT 0");
+                statements.addAll(archiveStatements(CREATE_HISTORY_ARCHIVE_V10));
+                // history delete triggers gain the "already archived" guard; the rest of each list already exists
+                statements.add("DROP TRIGGER IF EXISTS trg_history_search_ad");
+                statements.add("DROP TRIGGER IF EXISTS trg_history_rollup_ad");
+                statements.addAll(searchStatements(NOT_ARCHIVED));
+                statements.addAll(rollupStatements(historyRollupDelete(NOT_ARCHIVED)));
+                break;
+            case 11:
+                statements.add("ALTER TABLE " + DbHelper.TABLE_EQUIPMENT + " ADD COLUMN sync_id TEXT");
+                statements.add("ALTER TABLE " + DbHelper.TABLE_TASKS + " ADD COLUMN sync_id TEXT");
+                statements.add("ALTER TABLE " + DbHelper.TABLE_HISTORY + " ADD COLUMN sync_id TEXT");
+                statements.add("ALTER TABLE " + TABLE_HISTORY_ARCHIVE + " ADD COLUMN sync_id TEXT");
+                statements.addAll(changeLogStatements());
+                statements.addAll(changeLogBackfillStatements());
+                break;
+            case 12:
+                statements.add("ALTER TABLE " + DbHelper.TABLE_SETTINGS + " ADD COLUMN reminder_mode TEXT NOT NULL DEFAULT 'PER_TASK'");
+                statements.add("ALTER TABLE " + DbHelper.TABLE_SETTINGS + " ADD COLUMN reminder_watermark INTEGER NOT NULL DEFAULT 0");
+                break;
+            case 13:
+                // starts empty: the first reschedule registers every alarm once
+                statements.add("ALTER TABLE " + DbHelper.TABLE_SETTINGS + " ADD COLUMN alarm_ledger_boot INTEGER NOT NULL DEFAULT -1");
+                statements.add(CREATE_SCHEDULED_ALARMS);
+                break;
+            case 14:
+                statements.add("ALTER TABLE " + DbHelper.TABLE_SETTINGS + " ADD COLUMN digest_enabled INTEGER NOT NULL DEFAULT 0");
+                statements.add("ALTER TABLE " + DbHelper.TABLE_SETTINGS + " ADD COLUMN digest_cap INTEGER NOT NULL DEFAULT 10");
+                statements.add("ALTER TABLE " + DbHelper.TABLE_SETTINGS + " ADD COLUMN digest_interval_minutes INTEGER NOT NULL DEFAULT 30");
+                statements.add("ALTER TABLE " + DbHelper.TABLE_SETTINGS + " ADD COLUMN last_digest_at INTEGER NOT NULL DEFAULT 0");
+                statements.add(CREATE_REMINDER_QUEUE);
+                break;
+            case 15:
+                // date_zone stays NULL until DueDateRezoner adopts the zone the app runs in
+                statements.add("ALTER TABLE " + DbHelper.TABLE_SETTINGS + " ADD COLUMN date_zone TEXT");
+                statements.add("ALTER TABLE " + DbHelper.TABLE_SETTINGS + " ADD COLUMN rezone_to TEXT");
+                statements.add("ALTER TABLE " + DbHelper.TABLE_SETTINGS + " ADD COLUMN rezone_after_id INTEGER NOT NULL DEFAULT 0");
+                break;
+            case 16:
+                statements.add(TRG_TASKS_SEARCH_RELABEL);
+                statements.add(RELABEL_HISTORY_DOCUMENTS);
+                break;
+            case 17:
+                // rollups move from local to UTC months: new triggers, then a rebuild counting archived completions too
+                statements.add("DROP TRIGGER IF EXISTS trg_history_rollup_ai");
+                statements.add("DROP TRIGGER IF EXISTS trg_history_rollup_ad");
+                statements.add("DROP TRIGGER IF EXISTS trg_history_rollup_au");
+                statements.add("DROP TRIGGER IF EXISTS trg_archive_ad");
+                statements.add(TRG_HISTORY_ROLLUP_INSERT);
+                statements.add(TRG_HISTORY_ROLLUP_DELETE);
+                statements.add(TRG_HISTORY_ROLLUP_UPDATE);
+                statements.add(TRG_ARCHIVE_DELETE);
+                statements.add(IDX_ROLLUP_DEVICE_MONTH);
+                statements.add("DELETE FROM " + TABLE_ROLLUP_DEVICE);
+                statements.add("DELETE FROM " + TABLE_ROLLUP_CATEGORY);
+                statements.addAll(rollupBackfillStatements("(SELECT device_id, completion_date, cost, previous_due_date FROM " +
+                        DbHelper.TABLE_HISTORY + " UNION ALL SELECT a.device_id, a.completion_date, a.cost, a.previous_due_date FROM " +
+                        TABLE_HISTORY_ARCHIVE + " a WHERE NOT EXISTS (SELECT 1 FROM " + DbHelper.TABLE_HISTORY + " h WHERE h.id = a.id))"));
+                break;
+            case 18:
+                // a migration interrupted before this version ends at the tasks that exist now
+                statements.add("ALTER TABLE " + DbHelper.TABLE_SETTINGS + " ADD COLUMN rezone_max_id INTEGER NOT NULL DEFAULT 0");
+                statements.add("UPDATE " + DbHelper.TABLE_SETTINGS + " SET rezone_max_id = " +
+                        "(SELECT IFNULL(MAX(id), 0) FROM " + DbHelper.TABLE_TASKS + ") WHERE rezone_to IS NOT NULL");
+                break;
+            default:
+                throw new IllegalArgumentException("No upgrade step to version " + version);
+        }
+        return statements;
+    }
+
+    static List<String> createStatements() {
+        List<String> statements = new ArrayList<>(Arrays.asList(
+                CREATE_EQUIPMENT,
+                CREATE_TASKS,
+                CREATE_HISTORY,
+                CREATE_SETTINGS,
+                IDX_EQUIPMENT_NAME,
+                IDX_TASKS_DEVICE_DUE,
+                IDX_TASKS_DEVICE_ACTIVE_DUE,
+                IDX_TASKS_ACTIVE_DUE,
+                IDX_HISTORY_DATE,
+                IDX_HISTORY_DEVICE_COMPLETION,
+                IDX_HISTORY_TASK_COMPLETION,
+                IDX_EQUIPMENT_NEAREST,
+                TRG_TASKS_NEAREST_INSERT,
+                TRG_TASKS_NEAREST_DELETE,
+                TRG_TASKS_NEAREST_UPDATE,
+                INSERT_DEFAULT_SETTINGS
+        ));
+        statements.addAll(archiveStatements());
+        statements.addAll(searchStatements());
+        statements.addAll(rollupStatements());
+        statements.add(IDX_ROLLUP_DEVICE_MONTH);
+        statements.add(TRG_TASKS_SEARCH_RELABEL);
+        statements.addAll(changeLogStatements());
+        statements.add(CREATE_SCHEDULED_ALARMS);
+        statements.add(CREATE_REMINDER_QUEUE);
+        return statements;
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.maintenancereminder.db;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * next_due_date holds the start of a day in the zone it was computed in (app_settings.date_zone).
+ * When the device zone changes, every stored date is moved to the same wall-clock time in the new
+ * zone. Tasks are migrated in id-range chunks, each in its own transaction together with the
+ * progress cursor (rezone_to, rezone_after_id), so an interrupted run resumes exactly where it
+ * stopped; date_zone switches in the transaction of the last chunk. The id range is fixed when the
+ * migration begins (rezone_max_id): tasks created after that already hold dates in the new zone. The shift re-encodes the same due day
+ * for this device's zone and is not an edit, so it leaves nothing in the change log for peers.
+ * Runs synchronously; call it from the writer executor.
+ */
+public class DueDateRezoner {
+    private static final String TAG = "DueDateRezoner";
+    public static final int CHUNK_SIZE = 2000;
+
+    static final String SQL_STATE = "SELECT date_zone, rezone_to, rezone_after_id, rezone_max_id, reminder_watermark FROM " +
+            DbHelper.TABLE_SETTINGS + " WHERE id=1";
+    static final String SQL_ADOPT_ZONE = "UPDATE " + DbHelper.TABLE_SETTINGS + " SET date_zone=? WHERE id=1";
+    static final String SQL_BEGIN = "UPDATE " + DbHelper.TABLE_SETTINGS + " SET rezone_to=?, rezone_after_id=0, " +
+            "rezone_max_id=(SELECT IFNULL(MAX(id), 0) FROM " + DbHelper.TABLE_TASKS + ") WHERE id=1";
+    static final String SQL_PROGRESS = "UPDATE " + DbHelper.TABLE_SETTINGS + " SET rezone_after_id=? WHERE id=1";
+    static final String SQL_FINISH = "UPDATE " + DbHelper.TABLE_SETTINGS +
+            " SET date_zone=rezone_to, rezone_to=NULL, rezone_after_id=0, rezone_max_id=0, reminder_watermark=? WHERE id=1";
+    static final String SQL_CHUNK_DUES = "SELECT next_due_date FROM " + DbHelper.TABLE_TASKS + " WHERE id > ? AND id <= ?";
+
+    // old -> new for the dates of one chunk; only dates that actually move are listed
+    static final String SQL_CREATE_MAP = "CREATE TEMP TABLE IF NOT EXISTS rezone_map " +
+            "(old_due INTEGER PRIMARY KEY, new_due INTEGER NOT NULL)";
+    static final String SQL_ADD_MAPPING = "INSERT OR IGNORE INTO temp.rezone_map (old_due, new_due) VALUES (?, ?)";
+    static final String SQL_SHIFT_CHUNK = "UPDATE " + DbHelper.TABLE_TASKS +
+            " SET next_due_date = (SELECT new_due FROM temp.rezone_map WHERE old_due = next_due_date)" +
+            " WHERE id > ? AND id <= ? AND next_due_date IN (SELECT old_due FROM temp.rezone_map)";
+    static final String SQL_CLEAR_MAP = "DELETE FROM temp.rezone_map";
+    // The task triggers log every shifted row; those entries are dropped in the chunk's own transaction.
+    static final String SQL_LAST_CHANGE_SEQ = "SELECT IFNULL(MAX(seq), 0) FROM " + DbSchema.TABLE_CHANGE_LOG;
+    static final String SQL_DROP_CHANGES_AFTER = "DELETE FROM " + DbSchema.TABLE_CHANGE_LOG + " WHERE seq > ?";
+
+    public static class Result {
+        public int tasksShifted;
+        public int chunks;
+        public long elapsedMs;
+    }
+
+    private final DbHelper dbHelper;
+    private final DataChangeBus changeBus;
+
+    public DueDateRezoner(Context context) {
+        DatabaseProvider provider = DatabaseProvider.get(context);
+        this.dbHelper = provider.helper();
+        this.changeBus = provider.changeBus();
+    }
+
+    /** Brings every stored due date to {@code current}, finishing an interrupted migration first. */
+    public Result run(ZoneId current) {
+        long start = System.currentTimeMillis();
+        Result result = new Result();
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        while (true) {
+            String dateZone;
+            String rezoneTo;
+            long afterId;
+            long maxId;
+            long watermark;
+            try (Cursor c = db.rawQuery(SQL_STATE, null)) {
+                if (!c.moveToFirst()) return result;
+                dateZone = c.getString(0);
+                rezoneTo = c.getString(1);
+                afterId = c.getLong(2);
+                maxId = c.getLong(3);
+                watermark = c.getLong(4);
+            }
+            if (dateZone == null) {
+                // dates written before the zone was recorded are taken to be in the current one
+                db.execSQL(SQL_ADOPT_ZONE, new Object[]{current.getId()});
+                break;
+            }
+            if (rezoneTo == null) {
+                if (dateZone.equals(current.getId())) break;
+                // the loop reads the fixed range back from the state row
+                db.execSQL(SQL_BEGIN, new Object[]{current.getId()});
+                continue;
+            }
+            migrate(db, ZoneId.of(dateZone), ZoneId.of(rezoneTo), afterId, maxId, watermark, result);
+            Log.i(TAG, "Due dates moved from " + dateZone + " to " + rezoneTo);
+        }
+        result.elapsedMs = System.currentTimeMillis() - start;
+        if (result.tasksShifted > 0) {
+            changeBus.publish(DataChangeBus.ALL_DEVICES, DbHelper.TABLE_TASKS);
+            Log.i(TAG, "Shifted " + result.tasksShifted + " due dates in " + result.chunks + " chunks, "
+                    + result.elapsedMs + " ms");
+        }
+        return result;
+    }
+
+    private void migrate(SQLiteDatabase db, ZoneId from, ZoneId to, long afterId, long maxId, long watermark,
+                         Result result) {
+        long movedWatermark = watermark == 0 ? 0 : shift(watermark, from, to);
+        if (afterId >= maxId) {
+            db.execSQL(SQL_FINISH, new Object[]{movedWatermark});
+            return;
+        }
+        while (afterId < maxId) {
+            long upTo = Math.min(afterId + CHUNK_SIZE, maxId);
+            result.tasksShifted += shiftChunk(db, from, to, afterId, upTo, upTo == maxId ? movedWatermark : null);
+            result.chunks++;
+            afterId = upTo;
+        }
+    }
+
+    // finishWatermark is non-null for the last chunk, which also completes the migration
+    private int shiftChunk(SQLiteDatabase db, ZoneId from, ZoneId to, long afterId, long upTo, Long finishWatermark) {
+        String[] range = {String.valueOf(afterId), String.valueOf(upTo)};
+        db.beginTransaction();
+        try {
+            Set<Long> dues = new HashSet<>();
+            try (Cursor c = db.rawQuery(SQL_CHUNK_DUES, range)) {
+                while (c.moveToNext()) dues.add(c.getLong(0));
+            }
+            db.execSQL(SQL_CREATE_MAP);
+            db.execSQL(SQL_CLEAR_MAP);
+            SQLiteStatement add = dbHelper.statements().acquire(db, SQL_ADD_MAPPING);
+            for (long due : dues) {
+                long moved = shift(due, from, to);
+                if (moved == due) continue;
+                add.bindLong(1, due);
+                add.bindLong(2, moved);
+                add.executeInsert();
+            }
+            int shifted;
+            long lastChange = DatabaseUtils.longForQuery(db, SQL_LAST_CHANGE_SEQ, null);
+            SQLiteStatement update = dbHelper.statements().acquire(db, SQL_SHIFT_CHUNK);
+            update.bindLong(1, afterId);
+            update.bindLong(2, upTo);
+            shifted = update.executeUpdateDelete();
+            if (shifted > 0) {
+                SQLiteStatement drop = dbHelper.statements().acquire(db, SQL_DROP_CHANGES_AFTER);
+                drop.bindLong(1, lastChange);
+                drop.executeUpdateDelete();
+            }
+            if (finishWatermark == null) {
+                SQLiteStatement progress = dbHelper.statements().acquire(db, SQL_PROGRESS);
+                progress.bindLong(1, upTo);
+                progress.executeUpdateDelete();
+            } else {
+                db.execSQL(SQL_FINISH, new Object[]{finishWatermark});
+            }
+            db.setTransactionSuccessful();
+            return shifted;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /** Same wall-clock time, other zone. */
+    static long shift(long millis, ZoneId from, ZoneId to) {
+        return Instant.ofEpochMilli(millis).atZone(from).toLocalDateTime().atZone(to).toInstant().toEpochMilli();
+    }
+}
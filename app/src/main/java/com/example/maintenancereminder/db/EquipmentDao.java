@@ -3,31 +3,48 @@ package com.example.maintenancereminder.db;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
-import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 
 import com.example.maintenancereminder.model.Equipment;
 
-import java.util.ArrayList;
 import java.util.List;
 
 public class EquipmentDao {
+    // Must match idx_equipment_nearest term for term so the list is a plain index scan.
+    static final String SQL_ALL_WITH_NEAREST_DUE = "SELECT * FROM " + DbHelper.TABLE_EQUIPMENT +
+            " ORDER BY nearest_due_date IS NULL, nearest_due_date, name";
+    static final String SQL_BY_ID = "SELECT * FROM " + DbHelper.TABLE_EQUIPMENT + " WHERE id = ?";
+    static final String SQL_ID_BY_NAME = "SELECT id FROM " + DbHelper.TABLE_EQUIPMENT + " WHERE name = ? LIMIT 1";
+    static final String SQL_MOVE_OVERDUE_CUTOFF = "UPDATE " + DbHelper.TABLE_SETTINGS +
+            " SET overdue_cutoff=? WHERE id=1 AND overdue_cutoff<>?";
+    static final String SQL_RECOUNT_OVERDUE = "UPDATE " + DbHelper.TABLE_EQUIPMENT + " SET overdue_task_count = " +
+            "(SELECT COUNT(*) FROM " + DbHelper.TABLE_TASKS + " t WHERE t.device_id = " + DbHelper.TABLE_EQUIPMENT + ".id" +
+            " AND t.is_active = 1 AND t.next_due_date < ?)";
+
     private final DbHelper dbHelper;
+    private final DataChangeBus changeBus;
 
     public EquipmentDao(Context context) {
-        this.dbHelper = new DbHelper(context);
+        DatabaseProvider provider = DatabaseProvider.get(context);
+        this.dbHelper = provider.helper();
+        this.changeBus = provider.changeBus();
     }
 
     public long insert(Equipment e) {
         SQLiteDatabase db = dbHelper.getWritableDatabase();
         ContentValues cv = buildEquipmentValues(db, e);
-        return db.insert(DbHelper.TABLE_EQUIPMENT, null, cv);
+        long id = db.insert(DbHelper.TABLE_EQUIPMENT, null, cv);
+        if (id > 0) changeBus.publish(id, DbHelper.TABLE_EQUIPMENT);
+        return id;
     }
 
     public int update(Equipment e) {
         SQLiteDatabase db = dbHelper.getWritableDatabase();
         ContentValues cv = buildEquipmentValues(db, e);
-        return db.update(DbHelper.TABLE_EQUIPMENT, cv, "id = ?", new String[]{String.valueOf(e.id)});
+        int updated = db.update(DbHelper.TABLE_EQUIPMENT, cv, "id = ?", new String[]{String.valueOf(e.id)});
+        if (updated > 0) changeBus.publish(e.id, DbHelper.TABLE_EQUIPMENT);
+        return updated;
     }
 
     private ContentValues buildEquipmentValues(SQLiteDatabase db, Equipment e) {
@@ -40,71 +57,88 @@ public class EquipmentDao {
     }
 
     private void putIfColumnExists(SQLiteDatabase db, ContentValues cv, String columnName, String value) {
-        if (columnExists(db, DbHelper.TABLE_EQUIPMENT, columnName)) {
+        if (dbHelper.schema().hasColumn(db, DbHelper.TABLE_EQUIPMENT, columnName)) {
             cv.put(columnName, value);
         }
     }
 
-    private boolean columnExists(SQLiteDatabase db, String tableName, String columnName) {
-        try (Cursor cursor = db.rawQuery("PRAGMA table_info(" + tableName + ")", null)) {
-            int nameIndex = cursor.getColumnIndex("name");
-            while (cursor.moveToNext()) {
-                if (nameIndex >= 0 && columnName.equals(cursor.getString(nameIndex))) {
-                    return true;
-                }
-            }
-            return false;
-        } catch (SQLException ignored) {
-            return false;
+    public List<Equipment> getAllWithNearestDue() {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        try (Cursor c = db.rawQuery(SQL_ALL_WITH_NEAREST_DUE, null)) {
+            return RowMapper.mapAll(c, new EquipmentRowMapper(c));
         }
     }
 
-    public List<Equipment> getAllWithNearestDue() {
-        SQLiteDatabase db = dbHelper.getReadableDatabase();
-        String sql = "SELECT e.*, MIN(t.next_due_date) AS nearest_due " +
-                "FROM " + DbHelper.TABLE_EQUIPMENT + " e " +
-                "LEFT JOIN " + DbHelper.TABLE_TASKS + " t ON t.device_id = e.id AND t.is_active = 1 " +
-                "GROUP BY e.id " +
-                "ORDER BY CASE WHEN nearest_due IS NULL THEN 1 ELSE 0 END, nearest_due ASC, e.name ASC";
-
-        Cursor c = db.rawQuery(sql, null);
-        List<Equipment> list = new ArrayList<>();
-        while (c.moveToNext()) {
-            Equipment e = fromCursor(c);
-            int nearestIdx = c.getColumnIndex("nearest_due");
-            if (nearestIdx >= 0 && !c.isNull(nearestIdx)) {
-                e.nearestTaskDueDate = c.getLong(nearestIdx);
+    /**
+     * Moves the overdue cutoff (start of the current day) and recounts overdue tasks per device.
+     * A no-op when the cutoff has not changed since the last call. Publishes nothing: the counts only
+     * move with the day, and the list that shows them reloads itself when the day changes.
+     */
+    public void refreshOverdueCounts(long cutoff) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            SQLiteStatement move = dbHelper.statements().acquire(db, SQL_MOVE_OVERDUE_CUTOFF);
+            int moved;
+            move.bindLong(1, cutoff);
+            move.bindLong(2, cutoff);
+            moved = move.executeUpdateDelete();
+            if (moved > 0) {
+                db.execSQL(SQL_RECOUNT_OVERDUE, new Object[]{cutoff});
             }
-            list.add(e);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
         }
-        c.close();
-        return list;
     }
 
     public Equipment getById(long id) {
         SQLiteDatabase db = dbHelper.getReadableDatabase();
-        Cursor c = db.query(DbHelper.TABLE_EQUIPMENT, null, "id = ?", new String[]{String.valueOf(id)}, null, null, null);
-        Equipment e = null;
-        if (c.moveToFirst()) e = fromCursor(c);
-        c.close();
-        return e;
+        try (Cursor c = db.rawQuery(SQL_BY_ID, new String[]{String.valueOf(id)})) {
+            return RowMapper.mapFirst(c, new EquipmentRowMapper(c));
+        }
+    }
+
+    public Long findIdByName(String name) {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        try (Cursor c = db.rawQuery(SQL_ID_BY_NAME, new String[]{name})) {
+            return c.moveToFirst() ? c.getLong(0) : null;
+        }
     }
 
     public int delete(Long id) {
         SQLiteDatabase db = dbHelper.getWritableDatabase();
-        return db.delete(DbHelper.TABLE_EQUIPMENT, "id = ?", new String[]{String.valueOf(id)});
+        int deleted = db.delete(DbHelper.TABLE_EQUIPMENT, "id = ?", new String[]{String.valueOf(id)});
+        if (deleted > 0) {
+            changeBus.publish(id, DbHelper.TABLE_EQUIPMENT, DbHelper.TABLE_TASKS, DbHelper.TABLE_HISTORY);
+        }
+        return deleted;
     }
 
-    private Equipment fromCursor(Cursor c) {
-        Equipment e = new Equipment();
-        e.id = c.getLong(c.getColumnIndexOrThrow("id"));
-        e.name = c.getString(c.getColumnIndexOrThrow("name"));
-        int categoryIdx = c.getColumnIndex("category");
-        e.category = categoryIdx >= 0 ? c.getString(categoryIdx) : null;
-        int notesIdx = c.getColumnIndex("notes");
-        e.notes = notesIdx >= 0 ? c.getString(notesIdx) : null;
-        int photoIdx = c.getColumnIndex("photo_uri");
-        e.photoUri = photoIdx >= 0 ? c.getString(photoIdx) : null;
-        return e;
+    static final class EquipmentRowMapper implements RowMapper<Equipment> {
+        private final int id, name, category, notes, photoUri, nearestDue, overdueCount;
+
+        EquipmentRowMapper(Cursor c) {
+            id = c.getColumnIndexOrThrow("id");
+            name = c.getColumnIndexOrThrow("name");
+            category = c.getColumnIndex("category");
+            notes = c.getColumnIndex("notes");
+            photoUri = c.getColumnIndex("photo_uri");
+            nearestDue = c.getColumnIndex("nearest_due_date");
+            overdueCount = c.getColumnIndex("overdue_task_count");
+        }
+
+        @Override
+        public Equipment map(Cursor c) {
+            Equipment e = new Equipment();
+            e.id = c.getLong(id);
+            e.name = c.getString(name);
+            e.category = RowMapper.getStringOrNull(c, category);
+            e.notes = RowMapper.getStringOrNull(c, notes);
+            e.photoUri = RowMapper.getStringOrNull(c, photoUri);
+            e.nearestTaskDueDate = RowMapper.getLongOrNull(c, nearestDue);
+            e.overdueTaskCount = overdueCount < 0 ? 0 : c.getInt(overdueCount);
+            return e;
+        }
     }
 }
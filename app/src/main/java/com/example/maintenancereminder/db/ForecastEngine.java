@@ -0,0 +1,289 @@
+package com.example.maintenancereminder.db;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.maintenancereminder.model.Forecast;
+import com.example.maintenancereminder.util.DateCodec;
+import com.example.maintenancereminder.util.DateUtils;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Expands every active task's recurrence over a horizon into per-day counts, cost and priority
+ * mix. Each occurrence follows {@link DateUtils#calculateNextDueDate} from the previous one, i.e. as
+ * if every task is done on the day it is due; an overdue task counts once today and recurs from there.
+ *
+ * Tasks are held per device as primitive epoch-day arrays and results are cached per horizon. Task
+ * writes only mark their device dirty; the next {@link #forecast} call removes that device's old
+ * occurrences from every cached horizon and adds the new ones, instead of expanding the whole fleet.
+ */
+public final class ForecastEngine {
+    private static final String TAG = "ForecastEngine";
+    private static final int MAX_CACHED_HORIZONS = 4;
+
+    static final String SQL_ACTIVE = "SELECT id, device_id, next_due_date, interval_value, interval_unit, priority, cost FROM " +
+            DbHelper.TABLE_TASKS + " WHERE is_active = 1";
+    static final String SQL_ACTIVE_BY_DEVICE = "SELECT id, device_id, next_due_date, interval_value, interval_unit, priority, cost FROM " +
+            DbHelper.TABLE_TASKS + " WHERE device_id = ? AND is_active = 1";
+
+    private static final byte UNIT_DAYS = 0;
+    private static final byte UNIT_WEEKS = 1;
+    private static final byte UNIT_MONTHS = 2;
+    private static final byte UNIT_YEARS = 3;
+    private static final byte PRIORITY_LOW = 0;
+    private static final byte PRIORITY_MEDIUM = 1;
+    private static final byte PRIORITY_HIGH = 2;
+
+    private static final Object LOCK = new Object();
+    private static volatile ForecastEngine instance;
+
+    /** Active tasks as rows of {taskId, deviceId, dueEpochDay, interval, unit code, priority code, cost in cents}. */
+    interface TaskSource {
+        List<long[]> active();
+
+        List<long[]> activeByDevice(long deviceId);
+    }
+
+    /** Active tasks of one device. */
+    private static class DeviceTasks {
+        final long[] taskIds;
+        final long[] dueDay;
+        final int[] interval;
+        final byte[] unit;
+        final byte[] priority;
+        final long[] costCents;
+        int size;
+
+        DeviceTasks(int capacity) {
+            taskIds = new long[capacity];
+            dueDay = new long[capacity];
+            interval = new int[capacity];
+            unit = new byte[capacity];
+            priority = new byte[capacity];
+            costCents = new long[capacity];
+        }
+    }
+
+    private final TaskSource source;
+    private final LongSupplier today;
+    private final Map<Long, DeviceTasks> byDevice = new HashMap<>();
+    private final Map<Long, Long> deviceOfTask = new HashMap<>();
+    private final LinkedHashMap<Long, Forecast> cache = new LinkedHashMap<>(8, 0.75f, true);
+    private final Set<Long> dirtyDevices = ConcurrentHashMap.newKeySet();
+    private volatile boolean allDirty = true;
+    private long loadedToday;
+    private int expansions;
+
+    private ForecastEngine(DatabaseProvider provider) {
+        this(new DbTaskSource(provider.helper()), provider.changeBus(),
+                () -> DateCodec.epochDay(System.currentTimeMillis()));
+    }
+
+    ForecastEngine(TaskSource source, DataChangeBus changeBus, LongSupplier today) {
+        this.source = source;
+        this.today = today;
+        changeBus.register((tables, deviceId) -> {
+            if (!tables.contains(DbHelper.TABLE_TASKS)) return;
+            if (deviceId == DataChangeBus.ALL_DEVICES) allDirty = true;
+            else dirtyDevices.add(deviceId);
+        });
+    }
+
+    public static ForecastEngine get(Context context) {
+        ForecastEngine local = instance;
+        if (local == null) {
+            synchronized (LOCK) {
+                local = instance;
+                if (local == null) {
+                    local = new ForecastEngine(DatabaseProvider.get(context));
+                    instance = local;
+                }
+            }
+        }
+        return local;
+    }
+
+    /** Per-day forecast for {@code days} days from {@code startEpochDay}. Call off the main thread. */
+    public synchronized Forecast forecast(long startEpochDay, int days) {
+        long start = SystemClock.elapsedRealtime();
+        int expandedBefore = expansions;
+        Forecast forecast = compute(startEpochDay, days);
+        if (expansions != expandedBefore) {
+            Log.d(TAG, "Forecast " + days + " days over " + deviceOfTask.size() + " tasks in "
+                    + (SystemClock.elapsedRealtime() - start) + "ms");
+        }
+        return forecast;
+    }
+
+    synchronized Forecast compute(long startEpochDay, int days) {
+        if (days <= 0 || days >= 1 << 20) throw new IllegalArgumentException("days out of range: " + days);
+        long today = this.today.getAsLong();
+        if (allDirty || today != loadedToday) {
+            // overdue tasks are pinned to today, so a new day invalidates every horizon
+            allDirty = false;
+            dirtyDevices.clear();
+            loadAll();
+            loadedToday = today;
+            cache.clear();
+        } else if (!dirtyDevices.isEmpty()) {
+            refreshDirtyDevices();
+        }
+        // horizons are at most a few years long, so 20 bits hold the day count
+        long key = startEpochDay << 20 | days;
+        Forecast forecast = cache.get(key);
+        if (forecast == null) {
+            forecast = new Forecast(startEpochDay, 1, days);
+            for (DeviceTasks tasks : byDevice.values()) expand(forecast, tasks, 1);
+            expansions++;
+            cache.put(key, forecast);
+            if (cache.size() > MAX_CACHED_HORIZONS) {
+                Iterator<Long> eldest = cache.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        }
+        return forecast.copy();
+    }
+
+    private void loadAll() {
+        byDevice.clear();
+        deviceOfTask.clear();
+        readTasks(source.active());
+    }
+
+    private void refreshDirtyDevices() {
+        List<Long> queue = new ArrayList<>(dirtyDevices);
+        dirtyDevices.removeAll(queue);
+        for (int i = 0; i < queue.size(); i++) {
+            long deviceId = queue.get(i);
+            DeviceTasks old = byDevice.remove(deviceId);
+            if (old != null) {
+                for (int t = 0; t < old.size; t++) deviceOfTask.remove(old.taskIds[t], deviceId);
+                for (Forecast f : cache.values()) expand(f, old, -1);
+            }
+            // a task moved here from another device still sits in that device's snapshot
+            for (long previous : readTasks(source.activeByDevice(deviceId))) {
+                if (previous != deviceId && !queue.contains(previous)) queue.add(previous);
+            }
+            DeviceTasks fresh = byDevice.get(deviceId);
+            if (fresh != null) {
+                for (Forecast f : cache.values()) expand(f, fresh, 1);
+            }
+        }
+    }
+
+    /** Adds the rows to the snapshot; returns the devices the tasks belonged to before. */
+    private List<Long> readTasks(List<long[]> rows) {
+        List<Long> previousDevices = new ArrayList<>();
+        Map<Long, Integer> sizes = new HashMap<>();
+        for (long[] row : rows) {
+            Integer size = sizes.get(row[1]);
+            sizes.put(row[1], size == null ? 1 : size + 1);
+        }
+        for (Map.Entry<Long, Integer> e : sizes.entrySet()) byDevice.put(e.getKey(), new DeviceTasks(e.getValue()));
+        for (long[] row : rows) {
+            DeviceTasks tasks = byDevice.get(row[1]);
+            int i = tasks.size++;
+            tasks.taskIds[i] = row[0];
+            tasks.dueDay[i] = row[2];
+            tasks.interval[i] = (int) Math.min(Integer.MAX_VALUE, row[3]);
+            tasks.unit[i] = (byte) row[4];
+            tasks.priority[i] = (byte) row[5];
+            tasks.costCents[i] = row[6];
+            Long previous = deviceOfTask.put(row[0], row[1]);
+            if (previous != null) previousDevices.add(previous);
+        }
+        return previousDevices;
+    }
+
+    /** Adds ({@code sign} 1) or removes ({@code sign} -1) the occurrences of {@code tasks} in the horizon. */
+    private void expand(Forecast f, DeviceTasks tasks, int sign) {
+        long start = f.startEpochDay;
+        long end = start + f.count.length;
+        for (int t = 0; t < tasks.size; t++) {
+            long day = Math.max(tasks.dueDay[t], loadedToday);
+            int interval = tasks.interval[t];
+            byte unit = tasks.unit[t];
+            if (unit == UNIT_DAYS || unit == UNIT_WEEKS) {
+                long step = unit == UNIT_WEEKS ? 7L * interval : interval;
+                if (day < start) day += (start - day + step - 1) / step * step;
+                for (; day < end; day += step) add(f, (int) (day - start), tasks, t, sign);
+            } else {
+                String unitName = unit == UNIT_MONTHS ? "MONTHS" : "YEARS";
+                LocalDate date = LocalDate.ofEpochDay(day);
+                while (day < end) {
+                    if (day >= start) add(f, (int) (day - start), tasks, t, sign);
+                    date = DateUtils.calculateNextDueDate(date, interval, unitName);
+                    day = date.toEpochDay();
+                }
+            }
+        }
+    }
+
+    private static void add(Forecast f, int slot, DeviceTasks tasks, int t, int sign) {
+        f.count[slot] += sign;
+        f.costCents[slot] += sign * tasks.costCents[t];
+        switch (tasks.priority[t]) {
+            case PRIORITY_HIGH: f.high[slot] += sign; break;
+            case PRIORITY_LOW: f.low[slot] += sign; break;
+            default: f.medium[slot] += sign; break;
+        }
+    }
+
+    private static final class DbTaskSource implements TaskSource {
+        private final DbHelper dbHelper;
+
+        DbTaskSource(DbHelper dbHelper) {
+            this.dbHelper = dbHelper;
+        }
+
+        @Override
+        public List<long[]> active() {
+            return read(SQL_ACTIVE, null);
+        }
+
+        @Override
+        public List<long[]> activeByDevice(long deviceId) {
+            return read(SQL_ACTIVE_BY_DEVICE, new String[]{String.valueOf(deviceId)});
+        }
+
+        private List<long[]> read(String sql, String[] args) {
+            SQLiteDatabase db = dbHelper.getReadableDatabase();
+            try (Cursor c = db.rawQuery(sql, args)) {
+                List<long[]> rows = new ArrayList<>(c.getCount());
+                while (c.moveToNext()) {
+                    long cost = c.isNull(6) ? 0 : Math.round(c.getDouble(6) * 100);
+                    rows.add(new long[]{c.getLong(0), c.getLong(1), DateCodec.epochDay(c.getLong(2)),
+                            Math.max(1, c.getLong(3)), unitCode(c.getString(4)), priorityCode(c.getString(5)), cost});
+                }
+                return rows;
+            }
+        }
+    }
+
+    static byte unitCode(String unit) {
+        if ("WEEKS".equals(unit)) return UNIT_WEEKS;
+        if ("MONTHS".equals(unit)) return UNIT_MONTHS;
+        if ("YEARS".equals(unit)) return UNIT_YEARS;
+        return UNIT_DAYS;
+    }
+
+    static byte priorityCode(String priority) {
+        if ("HIGH".equals(priority)) return PRIORITY_HIGH;
+        if ("LOW".equals(priority)) return PRIORITY_LOW;
+        return PRIORITY_MEDIUM;
+    }
+}
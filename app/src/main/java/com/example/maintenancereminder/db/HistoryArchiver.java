@@ -0,0 +1,123 @@
+package com.example.maintenancereminder.db;
+
+import android.content.Context;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.example.maintenancereminder.model.AppSettings;
+import com.example.maintenancereminder.util.DateCodec;
+
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Moves completions older than {@link AppSettings#archiveAfterDays} from service_history into
+ * service_history_archive. Every chunk is its own transaction and its own task on the writer
+ * executor, so user writes queue behind at most one chunk. Space is reclaimed once at the end.
+ */
+public class HistoryArchiver {
+    private static final String TAG = "HistoryArchiver";
+    public static final int CHUNK_SIZE = 500;
+    // VACUUM rewrites the whole file, so only bother when at least a quarter of it is free pages
+    private static final int VACUUM_FREE_PAGE_DIVISOR = 4;
+
+    private static final String HISTORY_COLUMNS =
+            "id, task_id, device_id, completion_date, completion_comment, consumables, cost, previous_due_date, sync_id";
+    private static final String OLDEST_CHUNK = " FROM " + DbHelper.TABLE_HISTORY +
+            " WHERE completion_date < ? ORDER BY completion_date, id LIMIT ?";
+
+    static final String SQL_COPY_CHUNK = "INSERT INTO " + DbSchema.TABLE_HISTORY_ARCHIVE + " (" + HISTORY_COLUMNS + ")" +
+            " SELECT " + HISTORY_COLUMNS + OLDEST_CHUNK;
+    static final String SQL_DELETE_CHUNK = "DELETE FROM " + DbHelper.TABLE_HISTORY +
+            " WHERE id IN (SELECT id" + OLDEST_CHUNK + ")";
+
+    public static class Result {
+        public int rowsArchived;
+        public int chunks;
+        public boolean vacuumed;
+        public long elapsedMs;
+    }
+
+    private final DbHelper dbHelper;
+    private final Executor writer;
+    private final DataChangeBus changeBus;
+    private final SettingsDao settingsDao;
+
+    public HistoryArchiver(Context context) {
+        DatabaseProvider provider = DatabaseProvider.get(context);
+        this.dbHelper = provider.helper();
+        this.writer = provider.writeExecutor();
+        this.changeBus = provider.changeBus();
+        this.settingsDao = new SettingsDao(context);
+    }
+
+    /** Archives according to the retention setting; {@code onDone} (may be null) runs on the writer thread. */
+    public void runRetention(Consumer<Result> onDone) {
+        writer.execute(() -> {
+            int days = settingsDao.getSettings().archiveAfterDays;
+            if (days <= 0) {
+                if (onDone != null) onDone.accept(new Result());
+                return;
+            }
+            long cutoff = DateCodec.startOfDay(DateCodec.epochDay(System.currentTimeMillis()) - days);
+            step(cutoff, new Result(), System.currentTimeMillis(), onDone);
+        });
+    }
+
+    private void step(long cutoff, Result result, long start, Consumer<Result> onDone) {
+        int moved = archiveChunk(cutoff);
+        result.rowsArchived += moved;
+        if (moved > 0) result.chunks++;
+        if (moved == CHUNK_SIZE) {
+            writer.execute(() -> step(cutoff, result, start, onDone));
+            return;
+        }
+        if (result.rowsArchived > 0) {
+            changeBus.publish(DataChangeBus.ALL_DEVICES, DbHelper.TABLE_HISTORY);
+            result.vacuumed = reclaimSpace();
+        }
+        result.elapsedMs = System.currentTimeMillis() - start;
+        Log.i(TAG, "Archived " + result.rowsArchived + " rows in " + result.chunks + " chunks, vacuumed="
+                + result.vacuumed + ", " + result.elapsedMs + " ms");
+        if (onDone != null) onDone.accept(result);
+    }
+
+    private int archiveChunk(long cutoff) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            SQLiteStatement copy = dbHelper.statements().acquire(db, SQL_COPY_CHUNK);
+            copy.bindLong(1, cutoff);
+            copy.bindLong(2, CHUNK_SIZE);
+            copy.executeInsert();
+            int deleted;
+            SQLiteStatement delete = dbHelper.statements().acquire(db, SQL_DELETE_CHUNK);
+            delete.bindLong(1, cutoff);
+            delete.bindLong(2, CHUNK_SIZE);
+            deleted = delete.executeUpdateDelete();
+            db.setTransactionSuccessful();
+            return deleted;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // Optional: the rows are archived either way, so a failure (a reader holding the WAL, a full disk) is only logged.
+    private boolean reclaimSpace() {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        try {
+            long pages = DatabaseUtils.longForQuery(db, "PRAGMA page_count", null);
+            long free = DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null);
+            if (free * VACUUM_FREE_PAGE_DIVISOR < pages) return false;
+            db.execSQL("VACUUM");
+            DatabaseUtils.longForQuery(db, "PRAGMA wal_checkpoint(TRUNCATE)", null);
+            return true;
+        } catch (SQLiteException e) {
+            Log.w(TAG, "Space not reclaimed after archiving", e);
+            return false;
+        }
+    }
+}
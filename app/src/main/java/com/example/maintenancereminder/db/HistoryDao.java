@@ -1,88 +1,226 @@
 package com.example.maintenancereminder.db;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
 
 import com.example.maintenancereminder.model.ServiceHistoryEntry;
 
-import java.util.ArrayList;
 import java.util.List;
 
 public class HistoryDao {
+    private static final String TAG = "HistoryDao";
+
+    static final String SQL_INSERT = "INSERT INTO " + DbHelper.TABLE_HISTORY +
+            " (task_id, device_id, completion_date, completion_comment, consumables, cost, previous_due_date)" +
+            " VALUES (?, ?, ?, ?, ?, ?, ?)";
+    static final String SQL_LAST_BY_TASK = "SELECT * FROM " + DbHelper.TABLE_HISTORY +
+            " WHERE task_id=? ORDER BY completion_date DESC, id DESC LIMIT 1";
+
+    static final String SQL_ARCHIVE_LAST_BY_TASK = "SELECT *, 1 AS archived FROM " + DbSchema.TABLE_HISTORY_ARCHIVE +
+            " WHERE task_id=? ORDER BY completion_date DESC, id DESC LIMIT 1";
+
+    private static final String JOURNAL_SELECT = journalSelect(DbHelper.TABLE_HISTORY, 0);
+    private static final String ARCHIVE_SELECT = journalSelect(DbSchema.TABLE_HISTORY_ARCHIVE, 1);
+    private static final String JOURNAL_ORDER = " ORDER BY h.completion_date DESC, h.id DESC";
+    private static final String KEYSET_AFTER = "h.completion_date<=? AND (h.completion_date<? OR h.id<?)";
+
+    static final String SQL_JOURNAL = JOURNAL_SELECT + JOURNAL_ORDER;
+    static final String SQL_JOURNAL_BY_DEVICE = JOURNAL_SELECT + "WHERE h.device_id=?" + JOURNAL_ORDER;
+    static final String SQL_PAGE_FIRST = SQL_JOURNAL + " LIMIT ?";
+    static final String SQL_PAGE_AFTER = JOURNAL_SELECT + "WHERE " + KEYSET_AFTER + JOURNAL_ORDER + " LIMIT ?";
+    static final String SQL_DEVICE_PAGE_FIRST = SQL_JOURNAL_BY_DEVICE + " LIMIT ?";
+    static final String SQL_DEVICE_PAGE_AFTER = JOURNAL_SELECT + "WHERE h.device_id=? AND " + KEYSET_AFTER + JOURNAL_ORDER + " LIMIT ?";
+
+    // Same pages merged with the archive; each arm is an ordered index walk, so the merge stops after LIMIT rows.
+    static final String SQL_ALL_PAGE_FIRST = withArchive("");
+    static final String SQL_ALL_PAGE_AFTER = withArchive("WHERE " + KEYSET_AFTER);
+    static final String SQL_ALL_DEVICE_PAGE_FIRST = withArchive("WHERE h.device_id=?");
+    static final String SQL_ALL_DEVICE_PAGE_AFTER = withArchive("WHERE h.device_id=? AND " + KEYSET_AFTER);
+
+    static final String SQL_COUNT = "SELECT COUNT(*) FROM " + DbHelper.TABLE_HISTORY;
+    static final String SQL_COUNT_BY_DEVICE = SQL_COUNT + " WHERE device_id=?";
+    static final String SQL_ARCHIVE_COUNT = "SELECT COUNT(*) FROM " + DbSchema.TABLE_HISTORY_ARCHIVE;
+    static final String SQL_ARCHIVE_COUNT_BY_DEVICE = SQL_ARCHIVE_COUNT + " WHERE device_id=?";
+
+    private static String journalSelect(String table, int archived) {
+        return "SELECT h.*, " + archived + " AS archived, t.title AS task_title, e.name AS device_name " +
+                "FROM " + table + " h " +
+                "JOIN " + DbHelper.TABLE_TASKS + " t ON t.id = h.task_id " +
+                "JOIN " + DbHelper.TABLE_EQUIPMENT + " e ON e.id = h.device_id ";
+    }
+
+    private static String withArchive(String where) {
+        return JOURNAL_SELECT + where + " UNION ALL " + ARCHIVE_SELECT + where +
+                " ORDER BY completion_date DESC, id DESC LIMIT ?";
+    }
+
     private final DbHelper dbHelper;
+    private final DataChangeBus changeBus;
 
     public HistoryDao(Context context) {
-        this.dbHelper = new DbHelper(context);
+        DatabaseProvider provider = DatabaseProvider.get(context);
+        this.dbHelper = provider.helper();
+        this.changeBus = provider.changeBus();
     }
 
     public long insert(ServiceHistoryEntry entry) {
         SQLiteDatabase db = dbHelper.getWritableDatabase();
-        ContentValues cv = new ContentValues();
-        cv.put("task_id", entry.taskId);
-        cv.put("device_id", entry.deviceId);
-        cv.put("completion_date", entry.completionDate);
-        cv.put("completion_comment", entry.completionComment);
-        cv.put("consumables", entry.consumables);
-        if (entry.cost == null) cv.putNull("cost"); else cv.put("cost", entry.cost);
-        cv.put("previous_due_date", entry.previousDueDate);
-        return db.insert(DbHelper.TABLE_HISTORY, null, cv);
+        SQLiteStatement st = dbHelper.statements().acquire(db, SQL_INSERT);
+        StatementCache.bindLong(st, 1, entry.taskId);
+        StatementCache.bindLong(st, 2, entry.deviceId);
+        StatementCache.bindLong(st, 3, entry.completionDate);
+        StatementCache.bindString(st, 4, entry.completionComment);
+        StatementCache.bindString(st, 5, entry.consumables);
+        StatementCache.bindDouble(st, 6, entry.cost);
+        StatementCache.bindLong(st, 7, entry.previousDueDate);
+        try {
+            long id = st.executeInsert();
+            changeBus.publish(entry.deviceId == null ? DataChangeBus.ALL_DEVICES : entry.deviceId, DbHelper.TABLE_HISTORY);
+            return id;
+        } catch (SQLException e) {
+            Log.e(TAG, "Error inserting history for task=" + entry.taskId, e);
+            return -1;
+        }
     }
 
     public List<ServiceHistoryEntry> getByDevice(long deviceId) {
-        return queryWithJoin("h.device_id=?", new String[]{String.valueOf(deviceId)});
+        return queryJournal(SQL_JOURNAL_BY_DEVICE, new String[]{String.valueOf(deviceId)});
     }
 
     public List<ServiceHistoryEntry> getAll() {
-        return queryWithJoin(null, null);
+        return queryJournal(SQL_JOURNAL, null);
+    }
+
+    /**
+     * Keyset page of the journal ordered by (completion_date, id) descending.
+     * Pass {@code after = null} for the first page and the last entry of the previous page afterwards;
+     * {@code deviceId <= 0} means all devices.
+     */
+    public List<ServiceHistoryEntry> getPage(long deviceId, ServiceHistoryEntry after, int limit) {
+        return getPage(deviceId, after, limit, false);
+    }
+
+    /** As {@link #getPage(long, ServiceHistoryEntry, int)}, optionally continuing into archived completions. */
+    public List<ServiceHistoryEntry> getPage(long deviceId, ServiceHistoryEntry after, int limit, boolean includeArchived) {
+        if (includeArchived) return getPageWithArchive(deviceId, after, limit);
+        String limitArg = String.valueOf(limit);
+        if (after == null) {
+            return deviceId > 0
+                    ? queryJournal(SQL_DEVICE_PAGE_FIRST, new String[]{String.valueOf(deviceId), limitArg})
+                    : queryJournal(SQL_PAGE_FIRST, new String[]{limitArg});
+        }
+        String date = String.valueOf(after.completionDate);
+        String id = String.valueOf(after.id);
+        return deviceId > 0
+                ? queryJournal(SQL_DEVICE_PAGE_AFTER, new String[]{String.valueOf(deviceId), date, date, id, limitArg})
+                : queryJournal(SQL_PAGE_AFTER, new String[]{date, date, id, limitArg});
+    }
+
+    private List<ServiceHistoryEntry> getPageWithArchive(long deviceId, ServiceHistoryEntry after, int limit) {
+        String limitArg = String.valueOf(limit);
+        if (after == null) {
+            if (deviceId <= 0) return queryJournal(SQL_ALL_PAGE_FIRST, new String[]{limitArg});
+            String device = String.valueOf(deviceId);
+            return queryJournal(SQL_ALL_DEVICE_PAGE_FIRST, new String[]{device, device, limitArg});
+        }
+        String date = String.valueOf(after.completionDate);
+        String id = String.valueOf(after.id);
+        if (deviceId <= 0) {
+            return queryJournal(SQL_ALL_PAGE_AFTER, new String[]{date, date, id, date, date, id, limitArg});
+        }
+        String device = String.valueOf(deviceId);
+        return queryJournal(SQL_ALL_DEVICE_PAGE_AFTER,
+                new String[]{device, date, date, id, device, date, date, id, limitArg});
+    }
+
+    /** Number of journal rows {@link #getPage} would walk through; {@code deviceId <= 0} means all devices. */
+    public long count(long deviceId, boolean includeArchived) {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        String[] args = deviceId > 0 ? new String[]{String.valueOf(deviceId)} : null;
+        long count = DatabaseUtils.longForQuery(db, deviceId > 0 ? SQL_COUNT_BY_DEVICE : SQL_COUNT, args);
+        if (includeArchived) {
+            count += DatabaseUtils.longForQuery(db, deviceId > 0 ? SQL_ARCHIVE_COUNT_BY_DEVICE : SQL_ARCHIVE_COUNT, args);
+        }
+        return count;
     }
 
     public ServiceHistoryEntry getLastByTask(long taskId) {
+        return getLastByTask(taskId, false);
+    }
+
+    /** Latest completion of the task; with {@code includeArchived} falls back to the archive when the hot table has none. */
+    public ServiceHistoryEntry getLastByTask(long taskId, boolean includeArchived) {
         SQLiteDatabase db = dbHelper.getReadableDatabase();
-        Cursor c = db.query(DbHelper.TABLE_HISTORY, null, "task_id=?", new String[]{String.valueOf(taskId)}, null, null, "completion_date DESC", "1");
-        ServiceHistoryEntry entry = null;
-        if (c.moveToFirst()) entry = fromCursor(c);
-        c.close();
-        return entry;
+        String[] args = {String.valueOf(taskId)};
+        try (Cursor c = db.rawQuery(SQL_LAST_BY_TASK, args)) {
+            ServiceHistoryEntry last = RowMapper.mapFirst(c, new HistoryRowMapper(c));
+            if (last != null || !includeArchived) return last;
+        }
+        try (Cursor c = db.rawQuery(SQL_ARCHIVE_LAST_BY_TASK, args)) {
+            return RowMapper.mapFirst(c, new HistoryRowMapper(c));
+        }
     }
 
     public int deleteById(long id) {
         SQLiteDatabase db = dbHelper.getWritableDatabase();
-        return db.delete(DbHelper.TABLE_HISTORY, "id=?", new String[]{String.valueOf(id)});
+        int deleted = db.delete(DbHelper.TABLE_HISTORY, "id=?", new String[]{String.valueOf(id)});
+        if (deleted > 0) changeBus.publish(DataChangeBus.ALL_DEVICES, DbHelper.TABLE_HISTORY);
+        return deleted;
+    }
+
+    /** Deletes the entry from whichever tier it was read from. */
+    public int delete(ServiceHistoryEntry entry) {
+        if (!entry.archived) return deleteById(entry.id);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        int deleted = db.delete(DbSchema.TABLE_HISTORY_ARCHIVE, "id=?", new String[]{String.valueOf(entry.id)});
+        if (deleted > 0) changeBus.publish(DataChangeBus.ALL_DEVICES, DbHelper.TABLE_HISTORY);
+        return deleted;
     }
 
-    private List<ServiceHistoryEntry> queryWithJoin(String selection, String[] args) {
+    private List<ServiceHistoryEntry> queryJournal(String sql, String[] args) {
         SQLiteDatabase db = dbHelper.getReadableDatabase();
-        String sql = "SELECT h.*, t.title AS task_title, e.name AS device_name " +
-                "FROM " + DbHelper.TABLE_HISTORY + " h " +
-                "JOIN " + DbHelper.TABLE_TASKS + " t ON t.id = h.task_id " +
-                "JOIN " + DbHelper.TABLE_EQUIPMENT + " e ON e.id = h.device_id ";
-        if (selection != null) sql += " WHERE " + selection;
-        sql += " ORDER BY h.completion_date DESC";
-
-        Cursor c = db.rawQuery(sql, args);
-        List<ServiceHistoryEntry> result = new ArrayList<>();
-        while (c.moveToNext()) result.add(fromCursor(c));
-        c.close();
-        return result;
-    }
-
-    private ServiceHistoryEntry fromCursor(Cursor c) {
-        ServiceHistoryEntry entry = new ServiceHistoryEntry();
-        entry.id = c.getLong(c.getColumnIndexOrThrow("id"));
-        entry.taskId = c.getLong(c.getColumnIndexOrThrow("task_id"));
-        entry.deviceId = c.getLong(c.getColumnIndexOrThrow("device_id"));
-        entry.completionDate = c.getLong(c.getColumnIndexOrThrow("completion_date"));
-        entry.completionComment = c.getString(c.getColumnIndexOrThrow("completion_comment"));
-        entry.consumables = c.getString(c.getColumnIndexOrThrow("consumables"));
-        int costIdx = c.getColumnIndexOrThrow("cost");
-        entry.cost = c.isNull(costIdx) ? null : c.getDouble(costIdx);
-        entry.previousDueDate = c.getLong(c.getColumnIndexOrThrow("previous_due_date"));
-        int titleIdx = c.getColumnIndex("task_title");
-        int devIdx = c.getColumnIndex("device_name");
-        entry.taskTitle = titleIdx >= 0 ? c.getString(titleIdx) : null;
-        entry.deviceName = devIdx >= 0 ? c.getString(devIdx) : null;
-        return entry;
+        try (Cursor c = db.rawQuery(sql, args)) {
+            return RowMapper.mapAll(c, new HistoryRowMapper(c));
+        }
+    }
+
+    static final class HistoryRowMapper implements RowMapper<ServiceHistoryEntry> {
+        private final int id, taskId, deviceId, completionDate, completionComment, consumables, cost, previousDueDate, archived, taskTitle, deviceName;
+
+        HistoryRowMapper(Cursor c) {
+            id = c.getColumnIndexOrThrow("id");
+            taskId = c.getColumnIndexOrThrow("task_id");
+            deviceId = c.getColumnIndexOrThrow("device_id");
+            completionDate = c.getColumnIndexOrThrow("completion_date");
+            completionComment = c.getColumnIndexOrThrow("completion_comment");
+            consumables = c.getColumnIndexOrThrow("consumables");
+            cost = c.getColumnIndexOrThrow("cost");
+            previousDueDate = c.getColumnIndexOrThrow("previous_due_date");
+            archived = c.getColumnIndex("archived");
+            taskTitle = c.getColumnIndex("task_title");
+            deviceName = c.getColumnIndex("device_name");
+        }
+
+        @Override
+        public ServiceHistoryEntry map(Cursor c) {
+            ServiceHistoryEntry entry = new ServiceHistoryEntry();
+            entry.id = c.getLong(id);
+            entry.taskId = c.getLong(taskId);
+            entry.deviceId = c.getLong(deviceId);
+            entry.completionDate = c.getLong(completionDate);
+            entry.completionComment = c.getString(completionComment);
+            entry.consumables = c.getString(consumables);
+            entry.cost = RowMapper.getDoubleOrNull(c, cost);
+            entry.previousDueDate = c.getLong(previousDueDate);
+            entry.archived = archived >= 0 && c.getInt(archived) != 0;
+            entry.taskTitle = RowMapper.getStringOrNull(c, taskTitle);
+            entry.deviceName = RowMapper.getStringOrNull(c, deviceName);
+            return entry;
+        }
     }
 }
@@ -1,8 +1,10 @@
 package com.example.maintenancereminder.db;
 
-import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
 import android.util.Log;
 
 import com.example.maintenancereminder.model.MaintenanceTask;
@@ -10,15 +12,41 @@ import com.example.maintenancereminder.model.ServiceHistoryEntry;
 import com.example.maintenancereminder.notification.ReminderScheduler;
 import com.example.maintenancereminder.util.DateUtils;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 public class MaintenanceRepository {
     private static final String TAG = "MaintenanceRepository";
+
+    // Ids of devices being deleted, so the affected tasks and the delete itself are one statement each
+    // however many devices there are. Temp tables live on the connection that owns the transaction.
+    static final String SQL_CREATE_DELETE_IDS = "CREATE TEMP TABLE IF NOT EXISTS device_delete_ids (id INTEGER PRIMARY KEY)";
+    static final String SQL_ADD_DELETE_ID = "INSERT OR IGNORE INTO temp.device_delete_ids (id) VALUES (?)";
+    static final String SQL_TASKS_OF_DELETED = "SELECT id FROM " + DbHelper.TABLE_TASKS +
+            " WHERE device_id IN (SELECT id FROM temp.device_delete_ids)";
+    static final String SQL_DELETE_DEVICES = "DELETE FROM " + DbHelper.TABLE_EQUIPMENT +
+            " WHERE id IN (SELECT id FROM temp.device_delete_ids)";
+    static final String SQL_CLEAR_DELETE_IDS = "DELETE FROM temp.device_delete_ids";
+
+    public static class BulkDeleteResult {
+        public int devicesDeleted;
+        public int tasksDeleted;
+        public int remindersCancelled;
+        public long databaseMs;
+        public long alarmsMs;
+    }
+
     private final DbHelper dbHelper;
+    private final DataChangeBus changeBus;
     private final MaintenanceTaskDao taskDao;
     private final HistoryDao historyDao;
 
     public MaintenanceRepository(Context context) {
-        this.dbHelper = new DbHelper(context);
+        DatabaseProvider provider = DatabaseProvider.get(context);
+        this.dbHelper = provider.helper();
+        this.changeBus = provider.changeBus();
         this.taskDao = new MaintenanceTaskDao(context);
         this.historyDao = new HistoryDao(context);
     }
@@ -30,6 +58,7 @@ public class MaintenanceRepository {
 
         SQLiteDatabase db = dbHelper.getWritableDatabase();
         db.beginTransaction();
+        changeBus.beginTransaction();
         try {
             ServiceHistoryEntry entry = new ServiceHistoryEntry();
             entry.taskId = task.id;
@@ -40,50 +69,49 @@ public class MaintenanceRepository {
             entry.cost = cost;
             entry.previousDueDate = task.nextDueDate;
 
-            ContentValues historyValues = new ContentValues();
-            historyValues.put("task_id", entry.taskId);
-            historyValues.put("device_id", entry.deviceId);
-            historyValues.put("completion_date", entry.completionDate);
-            historyValues.put("completion_comment", entry.completionComment);
-            historyValues.put("consumables", entry.consumables);
-            if (entry.cost == null) historyValues.putNull("cost"); else historyValues.put("cost", entry.cost);
-            historyValues.put("previous_due_date", entry.previousDueDate);
-            long historyId = db.insert(DbHelper.TABLE_HISTORY, null, historyValues);
+            long historyId = historyDao.insert(entry);
             if (historyId <= 0) throw new IllegalStateException("Failed to save history for task=" + task.id);
 
             long newDueDate = DateUtils.calculateNextDueDate(completionDate, task.intervalValue, task.intervalUnit);
-            ContentValues taskValues = new ContentValues();
-            taskValues.put("next_due_date", newDueDate);
-            int updatedRows = db.update(DbHelper.TABLE_TASKS, taskValues, "id=?", new String[]{String.valueOf(task.id)});
+            int updatedRows = taskDao.updateNextDueDate(task.id, newDueDate);
             if (updatedRows <= 0) throw new IllegalStateException("Failed to update next_due_date for task=" + task.id);
 
             db.setTransactionSuccessful();
+            changeBus.publish(task.deviceId, DbHelper.TABLE_HISTORY, DbHelper.TABLE_TASKS, DbHelper.TABLE_EQUIPMENT);
             task.nextDueDate = newDueDate;
             ReminderScheduler.scheduleTaskReminder(context, task);
         } finally {
-            db.endTransaction();
+            try {
+                db.endTransaction();
+            } finally {
+                changeBus.endTransaction();
+            }
         }
     }
 
     public boolean rollbackLastCompletion(Context context, long taskId) {
         SQLiteDatabase db = dbHelper.getWritableDatabase();
         db.beginTransaction();
+        changeBus.beginTransaction();
         try {
             MaintenanceTask task = taskDao.getById(taskId);
             ServiceHistoryEntry last = historyDao.getLastByTask(taskId);
             if (task == null || last == null) return false;
 
-            db.delete(DbHelper.TABLE_HISTORY, "id=?", new String[]{String.valueOf(last.id)});
-            ContentValues cv = new ContentValues();
-            cv.put("next_due_date", last.previousDueDate);
-            db.update(DbHelper.TABLE_TASKS, cv, "id=?", new String[]{String.valueOf(taskId)});
+            historyDao.deleteById(last.id);
+            taskDao.updateNextDueDate(taskId, last.previousDueDate);
             db.setTransactionSuccessful();
+            changeBus.publish(task.deviceId, DbHelper.TABLE_HISTORY, DbHelper.TABLE_TASKS, DbHelper.TABLE_EQUIPMENT);
 
             task.nextDueDate = last.previousDueDate;
             ReminderScheduler.scheduleTaskReminder(context, task);
             return true;
         } finally {
-            db.endTransaction();
+            try {
+                db.endTransaction();
+            } finally {
+                changeBus.endTransaction();
+            }
         }
     }
 
@@ -95,10 +123,52 @@ public class MaintenanceRepository {
     }
 
     public int deleteDevice(Context context, long deviceId) {
-        for (MaintenanceTask task : taskDao.getByDevice(deviceId)) {
-            ReminderScheduler.cancelTaskReminder(context, task.id);
-        }
+        return deleteDevices(context, Collections.singletonList(deviceId)).devicesDeleted;
+    }
+
+    /**
+     * Deletes devices with their tasks and history in one transaction, then cancels the reminders
+     * of every removed task in one pass. Alarms are only touched once the delete has committed.
+     */
+    public BulkDeleteResult deleteDevices(Context context, Collection<Long> deviceIds) {
+        BulkDeleteResult result = new BulkDeleteResult();
+        if (deviceIds.isEmpty()) return result;
+        long start = SystemClock.elapsedRealtime();
+        List<Long> taskIds = new ArrayList<>();
         SQLiteDatabase db = dbHelper.getWritableDatabase();
-        return db.delete(DbHelper.TABLE_EQUIPMENT, "id=?", new String[]{String.valueOf(deviceId)});
+        db.beginTransaction();
+        try {
+            db.execSQL(SQL_CREATE_DELETE_IDS);
+            try (SQLiteStatement add = db.compileStatement(SQL_ADD_DELETE_ID)) {
+                for (long id : deviceIds) {
+                    add.bindLong(1, id);
+                    add.executeInsert();
+                }
+            }
+            try (Cursor c = db.rawQuery(SQL_TASKS_OF_DELETED, null)) {
+                while (c.moveToNext()) taskIds.add(c.getLong(0));
+            }
+            try (SQLiteStatement delete = db.compileStatement(SQL_DELETE_DEVICES)) {
+                result.devicesDeleted = delete.executeUpdateDelete();
+            }
+            db.execSQL(SQL_CLEAR_DELETE_IDS);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        result.tasksDeleted = taskIds.size();
+        result.databaseMs = SystemClock.elapsedRealtime() - start;
+        if (result.devicesDeleted > 0) {
+            long deviceScope = deviceIds.size() == 1 ? deviceIds.iterator().next() : DataChangeBus.ALL_DEVICES;
+            changeBus.publish(deviceScope, DbHelper.TABLE_EQUIPMENT, DbHelper.TABLE_TASKS, DbHelper.TABLE_HISTORY);
+        }
+
+        long alarmsStart = SystemClock.elapsedRealtime();
+        result.remindersCancelled = ReminderScheduler.cancelTaskReminders(context, taskIds);
+        result.alarmsMs = SystemClock.elapsedRealtime() - alarmsStart;
+        Log.d(TAG, "deleteDevices requested=" + deviceIds.size() + " deleted=" + result.devicesDeleted
+                + " tasks=" + result.tasksDeleted + " remindersCancelled=" + result.remindersCancelled
+                + " db=" + result.databaseMs + "ms alarms=" + result.alarmsMs + "ms");
+        return result;
     }
 }
@@ -1,110 +1,195 @@
 package com.example.maintenancereminder.db;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
 
 import com.example.maintenancereminder.model.MaintenanceTask;
 
-import java.util.ArrayList;
 import java.util.List;
 
 public class MaintenanceTaskDao {
+    private static final String TAG = "MaintenanceTaskDao";
+
+    static final String SQL_INSERT = "INSERT INTO " + DbHelper.TABLE_TASKS +
+            " (device_id, title, interval_value, interval_unit, next_due_date, priority, comment, cost, consumables, is_active)" +
+            " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    static final String SQL_UPDATE = "UPDATE " + DbHelper.TABLE_TASKS +
+            " SET device_id=?, title=?, interval_value=?, interval_unit=?, next_due_date=?, priority=?, comment=?, cost=?, consumables=?, is_active=?" +
+            " WHERE id=?";
+    static final String SQL_BY_DEVICE = "SELECT * FROM " + DbHelper.TABLE_TASKS + " WHERE device_id=? ORDER BY next_due_date ASC";
+    static final String SQL_ALL_ACTIVE = "SELECT * FROM " + DbHelper.TABLE_TASKS + " WHERE is_active=1";
+    static final String SQL_BY_ID = "SELECT * FROM " + DbHelper.TABLE_TASKS + " WHERE id=?";
+    static final String SQL_REMINDER_STATE = "SELECT device_id, title, next_due_date, is_active FROM " + DbHelper.TABLE_TASKS + " WHERE id=?";
+    static final String SQL_FIRST_DUE_AFTER = "SELECT next_due_date FROM " + DbHelper.TABLE_TASKS +
+            " WHERE is_active=1 AND next_due_date > ? ORDER BY next_due_date LIMIT 1";
+    static final String SQL_ACTIVE_DUE_BETWEEN = "SELECT * FROM " + DbHelper.TABLE_TASKS +
+            " WHERE is_active=1 AND next_due_date > ? AND next_due_date < ? ORDER BY next_due_date";
+    static final String SQL_UPDATE_NEXT_DUE = "UPDATE " + DbHelper.TABLE_TASKS + " SET next_due_date=? WHERE id=?";
+
     private final DbHelper dbHelper;
+    private final DataChangeBus changeBus;
 
     public MaintenanceTaskDao(Context context) {
-        this.dbHelper = new DbHelper(context);
+        DatabaseProvider provider = DatabaseProvider.get(context);
+        this.dbHelper = provider.helper();
+        this.changeBus = provider.changeBus();
     }
 
     public long insert(MaintenanceTask task) {
-        SQLiteDatabase db = dbHelper.getWritableDatabase();
-        ContentValues cv = toValues(task);
-        return db.insert(DbHelper.TABLE_TASKS, null, cv);
+        try {
+            return insertOrThrow(task);
+        } catch (SQLException e) {
+            Log.e(TAG, "Error inserting task " + task.title, e);
+            return -1;
+        }
     }
 
     public long insertOrThrow(MaintenanceTask task) {
         SQLiteDatabase db = dbHelper.getWritableDatabase();
-        ContentValues cv = toValues(task);
-        return db.insertOrThrow(DbHelper.TABLE_TASKS, null, cv);
+        SQLiteStatement st = dbHelper.statements().acquire(db, SQL_INSERT);
+        bindTask(st, task);
+        long id = st.executeInsert();
+        publishTaskChange(task.deviceId);
+        return id;
     }
 
     public int update(MaintenanceTask task) {
         SQLiteDatabase db = dbHelper.getWritableDatabase();
-        ContentValues cv = toValues(task);
-        return db.update(DbHelper.TABLE_TASKS, cv, "id=?", new String[]{String.valueOf(task.id)});
+        SQLiteStatement st = dbHelper.statements().acquire(db, SQL_UPDATE);
+        bindTask(st, task);
+        st.bindLong(11, task.id);
+        int updated = st.executeUpdateDelete();
+        if (updated > 0) publishTaskChange(task.deviceId);
+        return updated;
     }
 
     public int updateNextDueDate(long taskId, long nextDueDate) {
         SQLiteDatabase db = dbHelper.getWritableDatabase();
-        ContentValues cv = new ContentValues();
-        cv.put("next_due_date", nextDueDate);
-        return db.update(DbHelper.TABLE_TASKS, cv, "id=?", new String[]{String.valueOf(taskId)});
+        SQLiteStatement st = dbHelper.statements().acquire(db, SQL_UPDATE_NEXT_DUE);
+        st.bindLong(1, nextDueDate);
+        st.bindLong(2, taskId);
+        int updated = st.executeUpdateDelete();
+        if (updated > 0) publishTaskChange(null);
+        return updated;
     }
 
     public List<MaintenanceTask> getByDevice(long deviceId) {
         SQLiteDatabase db = dbHelper.getReadableDatabase();
-        Cursor c = db.query(DbHelper.TABLE_TASKS, null, "device_id=?", new String[]{String.valueOf(deviceId)}, null, null, "next_due_date ASC");
-        List<MaintenanceTask> list = new ArrayList<>();
-        while (c.moveToNext()) {
-            list.add(fromCursor(c));
+        try (Cursor c = db.rawQuery(SQL_BY_DEVICE, new String[]{String.valueOf(deviceId)})) {
+            return RowMapper.mapAll(c, new TaskRowMapper(c));
         }
-        c.close();
-        return list;
     }
 
 
     public List<MaintenanceTask> getAllActive() {
         SQLiteDatabase db = dbHelper.getReadableDatabase();
-        Cursor c = db.query(DbHelper.TABLE_TASKS, null, "is_active=1", null, null, null, null);
-        List<MaintenanceTask> list = new ArrayList<>();
-        while (c.moveToNext()) list.add(fromCursor(c));
-        c.close();
-        return list;
+        try (Cursor c = db.rawQuery(SQL_ALL_ACTIVE, null)) {
+            return RowMapper.mapAll(c, new TaskRowMapper(c));
+        }
+    }
+
+    /** Just what a firing reminder needs to check itself against, or null when the task is gone. */
+    public MaintenanceTask getReminderState(long id) {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        try (Cursor c = db.rawQuery(SQL_REMINDER_STATE, new String[]{String.valueOf(id)})) {
+            if (!c.moveToFirst()) return null;
+            MaintenanceTask task = new MaintenanceTask();
+            task.id = id;
+            task.deviceId = c.getLong(0);
+            task.title = c.getString(1);
+            task.nextDueDate = c.getLong(2);
+            task.isActive = c.getInt(3);
+            return task;
+        }
+    }
+
+    /** Earliest active due date strictly after {@code after}, or null when nothing is pending. */
+    public Long getFirstDueAfter(long after) {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        try (Cursor c = db.rawQuery(SQL_FIRST_DUE_AFTER, new String[]{String.valueOf(after)})) {
+            return c.moveToFirst() ? c.getLong(0) : null;
+        }
+    }
+
+    /** Active tasks with {@code after < next_due_date < before}, earliest first. */
+    public List<MaintenanceTask> getActiveDueBetween(long after, long before) {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        try (Cursor c = db.rawQuery(SQL_ACTIVE_DUE_BETWEEN, new String[]{String.valueOf(after), String.valueOf(before)})) {
+            return RowMapper.mapAll(c, new TaskRowMapper(c));
+        }
     }
+
     public MaintenanceTask getById(long id) {
         SQLiteDatabase db = dbHelper.getReadableDatabase();
-        Cursor c = db.query(DbHelper.TABLE_TASKS, null, "id=?", new String[]{String.valueOf(id)}, null, null, null);
-        MaintenanceTask task = null;
-        if (c.moveToFirst()) task = fromCursor(c);
-        c.close();
-        return task;
+        try (Cursor c = db.rawQuery(SQL_BY_ID, new String[]{String.valueOf(id)})) {
+            return RowMapper.mapFirst(c, new TaskRowMapper(c));
+        }
     }
 
     public int delete(long id) {
         SQLiteDatabase db = dbHelper.getWritableDatabase();
-        return db.delete(DbHelper.TABLE_TASKS, "id=?", new String[]{String.valueOf(id)});
+        int deleted = db.delete(DbHelper.TABLE_TASKS, "id=?", new String[]{String.valueOf(id)});
+        if (deleted > 0) {
+            changeBus.publish(DataChangeBus.ALL_DEVICES, DbHelper.TABLE_TASKS, DbHelper.TABLE_EQUIPMENT, DbHelper.TABLE_HISTORY);
+        }
+        return deleted;
     }
 
-    private ContentValues toValues(MaintenanceTask task) {
-        ContentValues cv = new ContentValues();
-        cv.put("device_id", task.deviceId);
-        cv.put("title", task.title);
-        cv.put("interval_value", task.intervalValue);
-        cv.put("interval_unit", task.intervalUnit);
-        cv.put("next_due_date", task.nextDueDate);
-        cv.put("priority", task.priority);
-        cv.put("comment", task.comment);
-        if (task.cost == null) cv.putNull("cost"); else cv.put("cost", task.cost);
-        cv.put("consumables", task.consumables);
-        cv.put("is_active", task.isActive);
-        return cv;
+    // task triggers also rewrite equipment.nearest_due_date / overdue_task_count
+    private void publishTaskChange(Long deviceId) {
+        changeBus.publish(deviceId == null ? DataChangeBus.ALL_DEVICES : deviceId,
+                DbHelper.TABLE_TASKS, DbHelper.TABLE_EQUIPMENT);
     }
 
-    private MaintenanceTask fromCursor(Cursor c) {
-        MaintenanceTask task = new MaintenanceTask();
-        task.id = c.getLong(c.getColumnIndexOrThrow("id"));
-        task.deviceId = c.getLong(c.getColumnIndexOrThrow("device_id"));
-        task.title = c.getString(c.getColumnIndexOrThrow("title"));
-        task.intervalValue = c.getLong(c.getColumnIndexOrThrow("interval_value"));
-        task.intervalUnit = c.getString(c.getColumnIndexOrThrow("interval_unit"));
-        task.nextDueDate = c.getLong(c.getColumnIndexOrThrow("next_due_date"));
-        task.priority = c.getString(c.getColumnIndexOrThrow("priority"));
-        task.comment = c.getString(c.getColumnIndexOrThrow("comment"));
-        int costIdx = c.getColumnIndexOrThrow("cost");
-        task.cost = c.isNull(costIdx) ? null : c.getDouble(costIdx);
-        task.consumables = c.getString(c.getColumnIndexOrThrow("consumables"));
-        task.isActive = c.getInt(c.getColumnIndexOrThrow("is_active"));
-        return task;
+    private static void bindTask(SQLiteStatement st, MaintenanceTask task) {
+        StatementCache.bindLong(st, 1, task.deviceId);
+        StatementCache.bindString(st, 2, task.title);
+        StatementCache.bindLong(st, 3, task.intervalValue);
+        StatementCache.bindString(st, 4, task.intervalUnit);
+        StatementCache.bindLong(st, 5, task.nextDueDate);
+        StatementCache.bindString(st, 6, task.priority);
+        StatementCache.bindString(st, 7, task.comment);
+        StatementCache.bindDouble(st, 8, task.cost);
+        StatementCache.bindString(st, 9, task.consumables);
+        st.bindLong(10, task.isActive);
+    }
+
+    static final class TaskRowMapper implements RowMapper<MaintenanceTask> {
+        private final int id, deviceId, title, intervalValue, intervalUnit, nextDueDate, priority, comment, cost, consumables, isActive;
+
+        TaskRowMapper(Cursor c) {
+            id = c.getColumnIndexOrThrow("id");
+            deviceId = c.getColumnIndexOrThrow("device_id");
+            title = c.getColumnIndexOrThrow("title");
+            intervalValue = c.getColumnIndexOrThrow("interval_value");
+            intervalUnit = c.getColumnIndexOrThrow("interval_unit");
+            nextDueDate = c.getColumnIndexOrThrow("next_due_date");
+            priority = c.getColumnIndexOrThrow("priority");
+            comment = c.getColumnIndexOrThrow("comment");
+            cost = c.getColumnIndexOrThrow("cost");
+            consumables = c.getColumnIndexOrThrow("consumables");
+            isActive = c.getColumnIndexOrThrow("is_active");
+        }
+
+        @Override
+        public MaintenanceTask map(Cursor c) {
+            MaintenanceTask task = new MaintenanceTask();
+            task.id = c.getLong(id);
+            task.deviceId = c.getLong(deviceId);
+            task.title = c.getString(title);
+            task.intervalValue = c.getLong(intervalValue);
+            task.intervalUnit = c.getString(intervalUnit);
+            task.nextDueDate = c.getLong(nextDueDate);
+            task.priority = c.getString(priority);
+            task.comment = c.getString(comment);
+            task.cost = RowMapper.getDoubleOrNull(c, cost);
+            task.consumables = c.getString(consumables);
+            task.isActive = c.getInt(isActive);
+            return task;
+        }
     }
 }
@@ -0,0 +1,91 @@
+package com.example.maintenancereminder.db;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/** Reminders waiting for the next digest, see {@link DbSchema#CREATE_REMINDER_QUEUE}. */
+public class ReminderQueueDao {
+    static final String SQL_ENQUEUE = "INSERT OR IGNORE INTO " + DbSchema.TABLE_REMINDER_QUEUE +
+            " (task_id, queued_at) VALUES (?, ?)";
+    // Reads the whole queue by design; it only holds what fired since the last digest.
+    static final String SQL_QUEUED = "SELECT q.task_id, t.title, t.device_id, e.name, t.next_due_date, t.is_active FROM " + DbSchema.TABLE_REMINDER_QUEUE + " q " +
+            "JOIN " + DbHelper.TABLE_TASKS + " t ON t.id = q.task_id " +
+            "JOIN " + DbHelper.TABLE_EQUIPMENT + " e ON e.id = t.device_id";
+    static final String SQL_REMOVE = "DELETE FROM " + DbSchema.TABLE_REMINDER_QUEUE + " WHERE task_id = ?";
+
+    public static class Entry {
+        public long taskId;
+        public String taskTitle;
+        public long deviceId;
+        public String deviceName;
+        public long nextDueDate;
+        public boolean active;
+    }
+
+    private final DbHelper dbHelper;
+
+    public ReminderQueueDao(Context context) {
+        this.dbHelper = DatabaseProvider.get(context).helper();
+    }
+
+    public void enqueue(Collection<Long> taskIds, long now) {
+        if (taskIds.isEmpty()) return;
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            SQLiteStatement st = dbHelper.statements().acquire(db, SQL_ENQUEUE);
+            for (long taskId : taskIds) {
+                st.bindLong(1, taskId);
+                st.bindLong(2, now);
+                st.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Returns everything queued and leaves it there; the caller {@link #remove}s what it has posted or
+     * dropped, on the writer, so a digest that fails to post is retried by the next flush.
+     */
+    public List<Entry> queued() {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        List<Entry> entries = new ArrayList<>();
+        try (Cursor c = db.rawQuery(SQL_QUEUED, null)) {
+            while (c.moveToNext()) {
+                Entry e = new Entry();
+                e.taskId = c.getLong(0);
+                e.taskTitle = c.getString(1);
+                e.deviceId = c.getLong(2);
+                e.deviceName = c.getString(3);
+                e.nextDueDate = c.getLong(4);
+                e.active = c.getInt(5) == 1;
+                entries.add(e);
+            }
+        }
+        return entries;
+    }
+
+    public void remove(Collection<Long> taskIds) {
+        if (taskIds.isEmpty()) return;
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            SQLiteStatement st = dbHelper.statements().acquire(db, SQL_REMOVE);
+            for (long taskId : taskIds) {
+                st.bindLong(1, taskId);
+                st.executeUpdateDelete();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+}
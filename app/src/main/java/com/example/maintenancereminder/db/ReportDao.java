@@ -0,0 +1,92 @@
+package com.example.maintenancereminder.db;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.maintenancereminder.model.CostRollup;
+
+import java.util.List;
+
+/**
+ * Cost and workload reports. Reads only the monthly rollup tables that triggers on
+ * service_history keep up to date, so a report costs O(months) regardless of history size.
+ * Months are passed as yyyymm, both bounds inclusive.
+ */
+public class ReportDao {
+    private static final String ROLLUP_COLUMNS = "total_cost, completion_count, on_time_count";
+    private static final String ROLLUP_SUMS = "SUM(total_cost) AS total_cost, SUM(completion_count) AS completion_count, " +
+            "SUM(on_time_count) AS on_time_count";
+
+    static final String SQL_DEVICE_MONTHS = "SELECT device_id, month, " + ROLLUP_COLUMNS +
+            " FROM " + DbSchema.TABLE_ROLLUP_DEVICE + " WHERE device_id=? AND month BETWEEN ? AND ? ORDER BY month";
+    static final String SQL_CATEGORY_MONTHS = "SELECT category, month, " + ROLLUP_COLUMNS +
+            " FROM " + DbSchema.TABLE_ROLLUP_CATEGORY + " WHERE category=? AND month BETWEEN ? AND ? ORDER BY month";
+    static final String SQL_MONTH_TOTALS = "SELECT month, " + ROLLUP_SUMS +
+            " FROM " + DbSchema.TABLE_ROLLUP_CATEGORY + " WHERE month BETWEEN ? AND ? GROUP BY month ORDER BY month";
+    static final String SQL_CATEGORY_TOTALS = "SELECT category, " + ROLLUP_SUMS +
+            " FROM " + DbSchema.TABLE_ROLLUP_CATEGORY + " WHERE month BETWEEN ? AND ? GROUP BY category ORDER BY total_cost DESC";
+    static final String SQL_DEVICE_TOTALS = "SELECT device_id, " + ROLLUP_SUMS +
+            " FROM " + DbSchema.TABLE_ROLLUP_DEVICE + " WHERE month BETWEEN ? AND ? GROUP BY device_id ORDER BY total_cost DESC";
+
+    private final DbHelper dbHelper;
+
+    public ReportDao(Context context) {
+        this.dbHelper = DatabaseProvider.get(context).helper();
+    }
+
+    public List<CostRollup> getDeviceMonths(long deviceId, int fromMonth, int toMonth) {
+        return query(SQL_DEVICE_MONTHS, String.valueOf(deviceId), String.valueOf(fromMonth), String.valueOf(toMonth));
+    }
+
+    public List<CostRollup> getCategoryMonths(String category, int fromMonth, int toMonth) {
+        return query(SQL_CATEGORY_MONTHS, category == null ? "" : category, String.valueOf(fromMonth), String.valueOf(toMonth));
+    }
+
+    /** Fleet-wide totals per month. */
+    public List<CostRollup> getMonthTotals(int fromMonth, int toMonth) {
+        return query(SQL_MONTH_TOTALS, String.valueOf(fromMonth), String.valueOf(toMonth));
+    }
+
+    /** One row per category over the range, most expensive first. */
+    public List<CostRollup> getCategoryTotals(int fromMonth, int toMonth) {
+        return query(SQL_CATEGORY_TOTALS, String.valueOf(fromMonth), String.valueOf(toMonth));
+    }
+
+    /** One row per device over the range, most expensive first. */
+    public List<CostRollup> getDeviceTotals(int fromMonth, int toMonth) {
+        return query(SQL_DEVICE_TOTALS, String.valueOf(fromMonth), String.valueOf(toMonth));
+    }
+
+    private List<CostRollup> query(String sql, String... args) {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        try (Cursor c = db.rawQuery(sql, args)) {
+            return RowMapper.mapAll(c, new CostRollupRowMapper(c));
+        }
+    }
+
+    static final class CostRollupRowMapper implements RowMapper<CostRollup> {
+        private final int deviceId, category, month, totalCost, completionCount, onTimeCount;
+
+        CostRollupRowMapper(Cursor c) {
+            deviceId = c.getColumnIndex("device_id");
+            category = c.getColumnIndex("category");
+            month = c.getColumnIndex("month");
+            totalCost = c.getColumnIndexOrThrow("total_cost");
+            completionCount = c.getColumnIndexOrThrow("completion_count");
+            onTimeCount = c.getColumnIndexOrThrow("on_time_count");
+        }
+
+        @Override
+        public CostRollup map(Cursor c) {
+            CostRollup rollup = new CostRollup();
+            rollup.deviceId = RowMapper.getLongOrNull(c, deviceId);
+            rollup.category = RowMapper.getStringOrNull(c, category);
+            rollup.month = month < 0 ? 0 : c.getInt(month);
+            rollup.totalCost = c.getDouble(totalCost);
+            rollup.completionCount = c.getInt(completionCount);
+            rollup.onTimeCount = c.getInt(onTimeCount);
+            return rollup;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.maintenancereminder.db;
+
+import android.database.Cursor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Converts the current cursor row into an object. Implementations resolve column
+ * positions once when they are created for a cursor and then read every row by index.
+ */
+interface RowMapper<T> {
+    T map(Cursor c);
+
+    static <T> List<T> mapAll(Cursor c, RowMapper<T> mapper) {
+        List<T> list = new ArrayList<>(Math.max(c.getCount(), 0));
+        while (c.moveToNext()) list.add(mapper.map(c));
+        return list;
+    }
+
+    static <T> T mapFirst(Cursor c, RowMapper<T> mapper) {
+        return c.moveToFirst() ? mapper.map(c) : null;
+    }
+
+    static Long getLongOrNull(Cursor c, int index) {
+        return index < 0 || c.isNull(index) ? null : c.getLong(index);
+    }
+
+    static Double getDoubleOrNull(Cursor c, int index) {
+        return index < 0 || c.isNull(index) ? null : c.getDouble(index);
+    }
+
+    static String getStringOrNull(Cursor c, int index) {
+        return index < 0 ? null : c.getString(index);
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.maintenancereminder.db;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/** Ledger of the per-task alarms registered with AlarmManager, see {@link DbSchema#CREATE_SCHEDULED_ALARMS}. */
+public class ScheduledAlarmDao {
+    static final String SQL_ACTIVE_WITH_ALARMS = "SELECT t.id, t.device_id, t.title, t.next_due_date, a.trigger_at FROM " +
+            DbHelper.TABLE_TASKS + " t LEFT JOIN " + DbSchema.TABLE_SCHEDULED_ALARMS + " a ON a.task_id = t.id WHERE t.is_active = 1";
+    static final String SQL_INACTIVE_WITH_ALARMS = "SELECT t.id FROM " + DbHelper.TABLE_TASKS + " t WHERE t.is_active = 0" +
+            " AND EXISTS (SELECT 1 FROM " + DbSchema.TABLE_SCHEDULED_ALARMS + " a WHERE a.task_id = t.id)";
+    static final String SQL_RECORD = "INSERT OR REPLACE INTO " + DbSchema.TABLE_SCHEDULED_ALARMS +
+            " (task_id, trigger_at) VALUES (?, ?)";
+    static final String SQL_REMOVE = "DELETE FROM " + DbSchema.TABLE_SCHEDULED_ALARMS + " WHERE task_id = ?";
+    static final String SQL_CLEAR = "DELETE FROM " + DbSchema.TABLE_SCHEDULED_ALARMS;
+
+    public static class Entry {
+        public long taskId;
+        public long deviceId;
+        public String title;
+        public long nextDueDate;
+        // trigger registered for this task, null when it has no alarm
+        public Long registeredTrigger;
+    }
+
+    private final DbHelper dbHelper;
+
+    public ScheduledAlarmDao(Context context) {
+        this.dbHelper = DatabaseProvider.get(context).helper();
+    }
+
+    /** Every active task with the trigger currently registered for it. */
+    public List<Entry> getActive() {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        List<Entry> entries = new ArrayList<>();
+        try (Cursor c = db.rawQuery(SQL_ACTIVE_WITH_ALARMS, null)) {
+            while (c.moveToNext()) {
+                Entry e = new Entry();
+                e.taskId = c.getLong(0);
+                e.deviceId = c.getLong(1);
+                e.title = c.getString(2);
+                e.nextDueDate = c.getLong(3);
+                e.registeredTrigger = c.isNull(4) ? null : c.getLong(4);
+                entries.add(e);
+            }
+        }
+        return entries;
+    }
+
+    /** Deactivated tasks that still have an alarm registered. */
+    public List<Long> getInactiveWithAlarms() {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        List<Long> ids = new ArrayList<>();
+        try (Cursor c = db.rawQuery(SQL_INACTIVE_WITH_ALARMS, null)) {
+            while (c.moveToNext()) ids.add(c.getLong(0));
+        }
+        return ids;
+    }
+
+    public void record(long taskId, long trigger) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        SQLiteStatement st = dbHelper.statements().acquire(db, SQL_RECORD);
+        st.bindLong(1, taskId);
+        st.bindLong(2, trigger);
+        st.executeInsert();
+    }
+
+    /** Records and removes in one transaction. */
+    public void apply(Map<Long, Long> recorded, Collection<Long> removed) {
+        if (recorded.isEmpty() && removed.isEmpty()) return;
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            SQLiteStatement record = dbHelper.statements().acquire(db, SQL_RECORD);
+            for (Map.Entry<Long, Long> e : recorded.entrySet()) {
+                record.bindLong(1, e.getKey());
+                record.bindLong(2, e.getValue());
+                record.executeInsert();
+            }
+            removeAll(db, removed);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    public void remove(Collection<Long> taskIds) {
+        apply(Collections.emptyMap(), taskIds);
+    }
+
+    /** Forgets every registration, e.g. after the database file was replaced. */
+    public void clear() {
+        dbHelper.getWritableDatabase().execSQL(SQL_CLEAR);
+    }
+
+    private void removeAll(SQLiteDatabase db, Collection<Long> taskIds) {
+        if (taskIds.isEmpty()) return;
+        SQLiteStatement st = dbHelper.statements().acquire(db, SQL_REMOVE);
+        for (long taskId : taskIds) {
+            st.bindLong(1, taskId);
+            st.executeUpdateDelete();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.maintenancereminder.db;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Column metadata read once per database open. Migrations call {@link #invalidate()}
+ * after altering tables; nothing else touches PRAGMA table_info.
+ */
+class SchemaCache {
+    private final Map<String, Set<String>> columnsByTable = new HashMap<>();
+
+    synchronized Set<String> columns(SQLiteDatabase db, String table) {
+        Set<String> columns = columnsByTable.get(table);
+        if (columns == null) {
+            columns = readColumns(db, table);
+            columnsByTable.put(table, columns);
+        }
+        return columns;
+    }
+
+    boolean hasColumn(SQLiteDatabase db, String table, String column) {
+        return columns(db, table).contains(column);
+    }
+
+    synchronized void invalidate() {
+        columnsByTable.clear();
+    }
+
+    private static Set<String> readColumns(SQLiteDatabase db, String table) {
+        Set<String> columns = new HashSet<>();
+        try (Cursor cursor = db.rawQuery("PRAGMA table_info(" + table + ")", null)) {
+            int nameIndex = cursor.getColumnIndex("name");
+            while (nameIndex >= 0 && cursor.moveToNext()) {
+                columns.add(cursor.getString(nameIndex));
+            }
+        }
+        return Collections.unmodifiableSet(columns);
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.maintenancereminder.db;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.maintenancereminder.model.SearchHit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+public class SearchDao {
+    public static final String SNIPPET_START = "[";
+    public static final String SNIPPET_END = "]";
+
+    // offsets() has four numbers per matched term occurrence
+    private static final String MATCH_COUNT = "(length(offsets(" + DbSchema.TABLE_SEARCH + ")) - " +
+            "length(replace(offsets(" + DbSchema.TABLE_SEARCH + "), ' ', '')) + 1) / 4";
+
+    // Every match is ranked, on docid and match count only; snippet() runs for the rows of the page alone.
+    // ?1 match expression, ?2 limit, ?3 offset.
+    static final String SQL_SEARCH = "WITH page AS (" +
+            "SELECT docid, " + MATCH_COUNT + " AS match_count FROM " + DbSchema.TABLE_SEARCH +
+            " WHERE " + DbSchema.TABLE_SEARCH + " MATCH ?1 ORDER BY match_count DESC, docid DESC LIMIT ?2 OFFSET ?3) " +
+            "SELECT r.docid / 4 AS ref_id, r.kind, r.device_id, r.label, r.snippet, p.match_count, e.name AS device_name " +
+            "FROM (SELECT docid, kind, device_id, label, " +
+            "snippet(" + DbSchema.TABLE_SEARCH + ", '" + SNIPPET_START + "', '" + SNIPPET_END + "', '…', -1, 12) AS snippet " +
+            "FROM " + DbSchema.TABLE_SEARCH + " WHERE " + DbSchema.TABLE_SEARCH + " MATCH ?1 " +
+            "AND docid IN (SELECT docid FROM page)) r " +
+            "JOIN page p ON p.docid = r.docid " +
+            "JOIN " + DbHelper.TABLE_EQUIPMENT + " e ON e.id = r.device_id " +
+            "ORDER BY p.match_count DESC, r.docid DESC";
+
+    private final DbHelper dbHelper;
+
+    public SearchDao(Context context) {
+        this.dbHelper = DatabaseProvider.get(context).helper();
+    }
+
+    /**
+     * Ranked page of hits for free-form user input. Every word is matched as a prefix,
+     * words like "PX-4711" as a phrase. Returns an empty list when nothing searchable is left.
+     */
+    public List<SearchHit> search(String text, int offset, int limit) {
+        String match = toMatchExpression(text);
+        if (match.isEmpty()) return Collections.emptyList();
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        try (Cursor c = db.rawQuery(SQL_SEARCH, new String[]{match, String.valueOf(limit), String.valueOf(offset)})) {
+            return RowMapper.mapAll(c, new SearchHitRowMapper(c));
+        }
+    }
+
+    static String toMatchExpression(String text) {
+        if (text == null) return "";
+        StringBuilder match = new StringBuilder();
+        for (String word : text.trim().split("\\s+")) {
+            List<String> parts = new ArrayList<>();
+            for (String part : word.split("[^\\p{L}\\p{N}]+")) {
+                if (!part.isEmpty()) parts.add(part.toLowerCase(Locale.ROOT));
+            }
+            if (parts.isEmpty()) continue;
+            if (match.length() > 0) match.append(' ');
+            if (parts.size() == 1) {
+                match.append(parts.get(0)).append('*');
+            } else {
+                match.append('"').append(String.join(" ", parts)).append("*\"");
+            }
+        }
+        return match.toString();
+    }
+
+    static final class SearchHitRowMapper implements RowMapper<SearchHit> {
+        private final int refId, kind, deviceId, label, snippet, matchCount, deviceName;
+
+        SearchHitRowMapper(Cursor c) {
+            refId = c.getColumnIndexOrThrow("ref_id");
+            kind = c.getColumnIndexOrThrow("kind");
+            deviceId = c.getColumnIndexOrThrow("device_id");
+            label = c.getColumnIndexOrThrow("label");
+            snippet = c.getColumnIndexOrThrow("snippet");
+            matchCount = c.getColumnIndexOrThrow("match_count");
+            deviceName = c.getColumnIndexOrThrow("device_name");
+        }
+
+        @Override
+        public SearchHit map(Cursor c) {
+            SearchHit hit = new SearchHit();
+            hit.refId = c.getLong(refId);
+            hit.kind = c.getInt(kind);
+            hit.deviceId = c.getLong(deviceId);
+            hit.label = c.getString(label);
+            hit.snippet = c.getString(snippet);
+            hit.matchCount = c.getInt(matchCount);
+            hit.deviceName = c.getString(deviceName);
+            return hit;
+        }
+    }
+}
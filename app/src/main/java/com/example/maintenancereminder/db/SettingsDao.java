@@ -1,38 +1,113 @@
 package com.example.maintenancereminder.db;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 
 import com.example.maintenancereminder.model.AppSettings;
 
 public class SettingsDao {
+    static final String SQL_GET = "SELECT notification_preset, notification_hour, archive_after_days, reminder_mode, reminder_watermark, alarm_ledger_boot, " +
+            "digest_enabled, digest_cap, digest_interval_minutes, last_digest_at FROM " +
+            DbHelper.TABLE_SETTINGS + " WHERE id=1";
+    static final String SQL_UPDATE = "UPDATE " + DbHelper.TABLE_SETTINGS + " SET notification_preset=?, notification_hour=? WHERE id=1";
+    static final String SQL_UPDATE_ARCHIVE_AFTER = "UPDATE " + DbHelper.TABLE_SETTINGS + " SET archive_after_days=? WHERE id=1";
+    static final String SQL_UPDATE_REMINDER_MODE = "UPDATE " + DbHelper.TABLE_SETTINGS + " SET reminder_mode=? WHERE id=1";
+    static final String SQL_UPDATE_REMINDER_WATERMARK = "UPDATE " + DbHelper.TABLE_SETTINGS + " SET reminder_watermark=? WHERE id=1";
+    static final String SQL_UPDATE_DIGEST = "UPDATE " + DbHelper.TABLE_SETTINGS +
+            " SET digest_enabled=?, digest_cap=?, digest_interval_minutes=? WHERE id=1";
+    static final String SQL_UPDATE_LAST_DIGEST = "UPDATE " + DbHelper.TABLE_SETTINGS + " SET last_digest_at=? WHERE id=1";
+    static final String SQL_UPDATE_ALARM_LEDGER_BOOT = "UPDATE " + DbHelper.TABLE_SETTINGS + " SET alarm_ledger_boot=? WHERE id=1";
+
     private final DbHelper dbHelper;
+    private final DataChangeBus changeBus;
 
     public SettingsDao(Context context) {
-        this.dbHelper = new DbHelper(context);
+        DatabaseProvider provider = DatabaseProvider.get(context);
+        this.dbHelper = provider.helper();
+        this.changeBus = provider.changeBus();
     }
 
     public AppSettings getSettings() {
         SQLiteDatabase db = dbHelper.getReadableDatabase();
-        Cursor c = db.query(DbHelper.TABLE_SETTINGS, null, "id=1", null, null, null, null);
         AppSettings settings = new AppSettings();
         settings.notificationPreset = "MORNING";
         settings.notificationHour = 9;
-        if (c.moveToFirst()) {
-            settings.notificationPreset = c.getString(c.getColumnIndexOrThrow("notification_preset"));
-            settings.notificationHour = c.getInt(c.getColumnIndexOrThrow("notification_hour"));
+        settings.reminderMode = AppSettings.REMINDERS_PER_TASK;
+        settings.digestCap = 10;
+        settings.digestIntervalMinutes = 30;
+        try (Cursor c = db.rawQuery(SQL_GET, null)) {
+            if (c.moveToFirst()) {
+                settings.notificationPreset = c.getString(0);
+                settings.notificationHour = c.getInt(1);
+                settings.archiveAfterDays = c.getInt(2);
+                settings.reminderMode = c.getString(3);
+                settings.reminderWatermark = c.getLong(4);
+                settings.alarmLedgerBoot = c.getInt(5);
+                settings.digestEnabled = c.getInt(6) != 0;
+                settings.digestCap = c.getInt(7);
+                settings.digestIntervalMinutes = c.getInt(8);
+                settings.lastDigestAt = c.getLong(9);
+            }
         }
-        c.close();
         return settings;
     }
 
     public void update(String preset, int hour) {
         SQLiteDatabase db = dbHelper.getWritableDatabase();
-        ContentValues cv = new ContentValues();
-        cv.put("notification_preset", preset);
-        cv.put("notification_hour", hour);
-        db.update(DbHelper.TABLE_SETTINGS, cv, "id=1", null);
+        SQLiteStatement st = dbHelper.statements().acquire(db, SQL_UPDATE);
+        st.bindString(1, preset);
+        st.bindLong(2, hour);
+        st.executeUpdateDelete();
+        changeBus.publish(DataChangeBus.ALL_DEVICES, DbHelper.TABLE_SETTINGS);
+    }
+
+    public void updateArchiveAfterDays(int days) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        SQLiteStatement st = dbHelper.statements().acquire(db, SQL_UPDATE_ARCHIVE_AFTER);
+        st.bindLong(1, Math.max(0, days));
+        st.executeUpdateDelete();
+        changeBus.publish(DataChangeBus.ALL_DEVICES, DbHelper.TABLE_SETTINGS);
+    }
+
+    public void updateReminderMode(String mode) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        SQLiteStatement st = dbHelper.statements().acquire(db, SQL_UPDATE_REMINDER_MODE);
+        st.bindString(1, mode);
+        st.executeUpdateDelete();
+        changeBus.publish(DataChangeBus.ALL_DEVICES, DbHelper.TABLE_SETTINGS);
+    }
+
+    // Scheduler bookkeeping only; nothing on screen depends on it, so no change is published.
+    public void updateReminderWatermark(long watermark) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        SQLiteStatement st = dbHelper.statements().acquire(db, SQL_UPDATE_REMINDER_WATERMARK);
+        st.bindLong(1, watermark);
+        st.executeUpdateDelete();
+    }
+
+    public void updateAlarmLedgerBoot(int bootCount) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        SQLiteStatement st = dbHelper.statements().acquire(db, SQL_UPDATE_ALARM_LEDGER_BOOT);
+        st.bindLong(1, bootCount);
+        st.executeUpdateDelete();
+    }
+
+    public void updateDigest(boolean enabled, int cap, int intervalMinutes) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        SQLiteStatement st = dbHelper.statements().acquire(db, SQL_UPDATE_DIGEST);
+        st.bindLong(1, enabled ? 1 : 0);
+        st.bindLong(2, Math.max(1, cap));
+        st.bindLong(3, Math.max(0, intervalMinutes));
+        st.executeUpdateDelete();
+        changeBus.publish(DataChangeBus.ALL_DEVICES, DbHelper.TABLE_SETTINGS);
+    }
+
+    public void updateLastDigestAt(long millis) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        SQLiteStatement st = dbHelper.statements().acquire(db, SQL_UPDATE_LAST_DIGEST);
+        st.bindLong(1, millis);
+        st.executeUpdateDelete();
     }
 }
@@ -0,0 +1,246 @@
+package com.example.maintenancereminder.db;
+
+import android.content.Context;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Consistent, compacted copies of the database in {@code files/snapshots}, newest {@link #KEEP_SNAPSHOTS}
+ * kept. Snapshots are taken with {@code VACUUM INTO} on a separate connection, which only reads a WAL
+ * snapshot, so app writes carry on. SQLite older than 3.27 (before API 30) falls back to copying the
+ * database and WAL files under the write lock and compacting the copy afterwards.
+ *
+ * <p>All work runs on one background-priority thread; automatic snapshots are taken at most once per
+ * {@link #AUTO_SNAPSHOT_INTERVAL_MS}.
+ */
+public class SnapshotManager {
+    private static final String TAG = "SnapshotManager";
+    public static final int KEEP_SNAPSHOTS = 5;
+    public static final long AUTO_SNAPSHOT_INTERVAL_MS = 24L * 60 * 60 * 1000;
+
+    private static final String DIR = "snapshots";
+    private static final String PREFIX = "maintenance-";
+    private static final String SUFFIX = ".db";
+    private static final DateTimeFormatter STAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private static final int COPY_BUFFER_SIZE = 256 * 1024;
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            r.run();
+        }, "db-snapshot");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public interface Callback<T> {
+        void onDone(T result, Exception error);
+    }
+
+    public static class SnapshotResult {
+        public File file;
+        public long sizeBytes;
+        public long durationMs;
+        public boolean vacuumInto;
+    }
+
+    private final Context appContext;
+    private final DbHelper dbHelper;
+    private final DataChangeBus changeBus;
+
+    public SnapshotManager(Context context) {
+        this.appContext = context.getApplicationContext();
+        DatabaseProvider provider = DatabaseProvider.get(appContext);
+        this.dbHelper = provider.helper();
+        this.changeBus = provider.changeBus();
+    }
+
+    /** Snapshots, newest first. */
+    public List<File> listSnapshots() {
+        File[] files = snapshotDir().listFiles((dir, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        if (files == null) return new ArrayList<>();
+        List<File> list = new ArrayList<>(Arrays.asList(files));
+        // timestamped names sort chronologically
+        list.sort((a, b) -> b.getName().compareTo(a.getName()));
+        return list;
+    }
+
+    public void takeSnapshot(Callback<SnapshotResult> callback) {
+        EXECUTOR.execute(() -> {
+            try {
+                SnapshotResult result = snapshot();
+                if (callback != null) callback.onDone(result, null);
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Snapshot failed", e);
+                if (callback != null) callback.onDone(null, e);
+            }
+        });
+    }
+
+    /** Takes a snapshot unless the newest one is younger than {@link #AUTO_SNAPSHOT_INTERVAL_MS}. */
+    public void takeSnapshotIfDue() {
+        EXECUTOR.execute(() -> {
+            List<File> existing = listSnapshots();
+            if (!existing.isEmpty()
+                    && System.currentTimeMillis() - existing.get(0).lastModified() < AUTO_SNAPSHOT_INTERVAL_MS) {
+                return;
+            }
+            try {
+                snapshot();
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Automatic snapshot failed", e);
+            }
+        });
+    }
+
+    /**
+     * Replaces the live database with {@code snapshot} after checking it. Other threads block on the
+     * swap itself, not on the copy; every screen is told that all tables changed. Runs and calls back
+     * on the writer, so the callback may write too.
+     */
+    public void restore(File snapshot, Callback<File> callback) {
+        DatabaseProvider.get(appContext).writeExecutor().execute(() -> {
+            try {
+                restoreNow(snapshot);
+                if (callback != null) callback.onDone(snapshot, null);
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Restore from " + snapshot + " failed", e);
+                if (callback != null) callback.onDone(null, e);
+            }
+        });
+    }
+
+    private SnapshotResult snapshot() throws IOException {
+        long start = System.currentTimeMillis();
+        File dir = snapshotDir();
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+        File target = new File(dir, PREFIX + LocalDateTime.now().format(STAMP) + SUFFIX);
+        File tmp = new File(dir, target.getName() + ".tmp");
+        deleteWithSidecars(tmp);
+
+        SnapshotResult result = new SnapshotResult();
+        result.vacuumInto = supportsVacuumInto();
+        if (result.vacuumInto) {
+            vacuumInto(tmp);
+        } else {
+            copyUnderWriteLock(tmp);
+        }
+        if (!tmp.renameTo(target)) throw new IOException("Cannot rename " + tmp + " to " + target);
+
+        result.file = target;
+        result.sizeBytes = target.length();
+        result.durationMs = System.currentTimeMillis() - start;
+        rotate();
+        Log.i(TAG, "Snapshot " + target.getName() + ": " + result.sizeBytes + " bytes in " + result.durationMs
+                + " ms, vacuumInto=" + result.vacuumInto);
+        return result;
+    }
+
+    private boolean supportsVacuumInto() {
+        String version = DatabaseUtils.stringForQuery(dbHelper.getReadableDatabase(), "SELECT sqlite_version()", null);
+        String[] parts = version.split("\\.");
+        int major = Integer.parseInt(parts[0]);
+        int minor = parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+        return major > 3 || (major == 3 && minor >= 27);
+    }
+
+    private void vacuumInto(File tmp) {
+        // Own connection: VACUUM INTO is not a read to Android's pool and would otherwise occupy the
+        // primary (writer) connection.
+        dbHelper.withSideConnection(databaseFile(), side -> side.execSQL("VACUUM INTO ?", new Object[]{tmp.getPath()}));
+    }
+
+    private void copyUnderWriteLock(File tmp) throws IOException {
+        File source = databaseFile();
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            copy(source, tmp);
+            File wal = new File(source.getPath() + "-wal");
+            if (wal.exists()) copy(wal, new File(tmp.getPath() + "-wal"));
+        } finally {
+            db.endTransaction();
+        }
+        // Folding the copied WAL in and vacuuming happens on the copy, outside the lock.
+        SQLiteDatabase copy = SQLiteDatabase.openDatabase(tmp.getPath(), null, SQLiteDatabase.OPEN_READWRITE);
+        try {
+            DatabaseUtils.stringForQuery(copy, "PRAGMA journal_mode=DELETE", null);
+            copy.execSQL("VACUUM");
+        } finally {
+            copy.close();
+        }
+        deleteSidecars(tmp);
+    }
+
+    private void restoreNow(File snapshot) throws IOException {
+        SQLiteDatabase check = SQLiteDatabase.openDatabase(snapshot.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+        try {
+            String status = DatabaseUtils.stringForQuery(check, "PRAGMA quick_check", null);
+            if (!"ok".equals(status)) throw new IOException("Snapshot " + snapshot.getName() + " is damaged: " + status);
+            int version = check.getVersion();
+            if (version <= 0 || version > DbHelper.DB_VERSION) {
+                throw new IOException("Snapshot " + snapshot.getName() + " has unsupported version " + version);
+            }
+        } finally {
+            check.close();
+        }
+
+        File target = databaseFile();
+        File staged = new File(target.getPath() + ".restore");
+        copy(snapshot, staged);
+        dbHelper.replaceDatabase(staged, target);
+        changeBus.publish(DataChangeBus.ALL_DEVICES, DbHelper.TABLE_EQUIPMENT, DbHelper.TABLE_TASKS,
+                DbHelper.TABLE_HISTORY, DbHelper.TABLE_SETTINGS);
+        Log.i(TAG, "Restored database from " + snapshot.getName());
+    }
+
+    private void rotate() {
+        List<File> snapshots = listSnapshots();
+        for (int i = KEEP_SNAPSHOTS; i < snapshots.size(); i++) {
+            if (!snapshots.get(i).delete()) Log.w(TAG, "Cannot delete old snapshot " + snapshots.get(i));
+        }
+    }
+
+    private File databaseFile() {
+        return appContext.getDatabasePath(DbHelper.DB_NAME);
+    }
+
+    private File snapshotDir() {
+        return new File(appContext.getFilesDir(), DIR);
+    }
+
+    private static void copy(File from, File to) throws IOException {
+        try (InputStream in = new FileInputStream(from); FileOutputStream out = new FileOutputStream(to)) {
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) > 0) out.write(buffer, 0, read);
+            out.getFD().sync();
+        }
+    }
+
+    private static void deleteWithSidecars(File file) {
+        file.delete();
+        deleteSidecars(file);
+    }
+
+    private static void deleteSidecars(File file) {
+        new File(file.getPath() + "-wal").delete();
+        new File(file.getPath() + "-shm").delete();
+        new File(file.getPath() + "-journal").delete();
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.maintenancereminder.db;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compiled statements for fixed-shape writes, bound to the currently open database.
+ * Confined to {@link DatabaseProvider#writeExecutor()}: statements are bound and executed without
+ * locking, so every write that goes through the cache has to run on the writer thread.
+ */
+class StatementCache {
+    private final Map<String, SQLiteStatement> statements = new HashMap<>();
+    private SQLiteDatabase owner;
+
+    synchronized SQLiteStatement acquire(SQLiteDatabase db, String sql) {
+        if (owner != db) {
+            clear();
+            owner = db;
+        }
+        SQLiteStatement statement = statements.get(sql);
+        if (statement == null) {
+            statement = db.compileStatement(sql);
+            statements.put(sql, statement);
+        }
+        return statement;
+    }
+
+    synchronized void clear() {
+        for (SQLiteStatement statement : statements.values()) statement.close();
+        statements.clear();
+        owner = null;
+    }
+
+    static void bindString(SQLiteStatement statement, int index, String value) {
+        if (value == null) statement.bindNull(index); else statement.bindString(index, value);
+    }
+
+    static void bindLong(SQLiteStatement statement, int index, Long value) {
+        if (value == null) statement.bindNull(index); else statement.bindLong(index, value);
+    }
+
+    static void bindDouble(SQLiteStatement statement, int index, Double value) {
+        if (value == null) statement.bindNull(index); else statement.bindDouble(index, value);
+    }
+}
@@ -0,0 +1,400 @@
+package com.example.maintenancereminder.db;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import com.example.maintenancereminder.model.ChangeBatch;
+import com.example.maintenancereminder.model.ChangeRecord;
+import com.example.maintenancereminder.notification.ReminderScheduler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Exports and applies deltas of the change log (see {@link DbSchema#CREATE_CHANGE_LOG}).
+ *
+ * <p>An export carries the latest state of every row changed after a given seq, so a peer that is
+ * behind by many edits of the same row still receives one record. Applying resolves conflicts per row
+ * with last-writer-wins on (changed_at, origin); a record whose clock is not newer than the local one
+ * is skipped, which also makes re-applying a batch, or receiving our own changes back, a no-op.
+ *
+ * <p>Methods run synchronously; call them from {@link DatabaseProvider#writeExecutor()}.
+ */
+public class SyncEngine {
+    private static final String TAG = "SyncEngine";
+
+    static final String SQL_PEER_ID = "SELECT peer_id FROM " + DbSchema.TABLE_SYNC_STATE + " WHERE id = 1";
+    static final String SQL_LAST_SEQ = "SELECT MAX(seq) FROM " + DbSchema.TABLE_CHANGE_LOG;
+    static final String SQL_CHANGES_SINCE = "SELECT seq, entity, sync_id, op, changed_at, origin FROM " +
+            DbSchema.TABLE_CHANGE_LOG + " WHERE seq > ? ORDER BY seq";
+    static final String SQL_LATEST_CHANGE = "SELECT changed_at, origin FROM " + DbSchema.TABLE_CHANGE_LOG +
+            " WHERE entity = ? AND sync_id = ? ORDER BY seq DESC LIMIT 1";
+    static final String SQL_SET_CLOCK = "UPDATE " + DbSchema.TABLE_SYNC_STATE +
+            " SET applying_changed_at = ?, applying_origin = ? WHERE id = 1";
+    static final String SQL_CLEAR_CLOCK = "UPDATE " + DbSchema.TABLE_SYNC_STATE +
+            " SET applying_changed_at = NULL, applying_origin = NULL WHERE id = 1";
+    static final String SQL_LOG_TOMBSTONE = "INSERT INTO " + DbSchema.TABLE_CHANGE_LOG +
+            "(entity, sync_id, op, changed_at, origin) VALUES (?, ?, '" + ChangeRecord.OP_DELETE + "', ?, ?)";
+    // Only the newest entry per row matters for both export and conflict checks.
+    static final String SQL_COMPACT = "DELETE FROM " + DbSchema.TABLE_CHANGE_LOG + " WHERE seq < " +
+            "(SELECT MAX(c.seq) FROM " + DbSchema.TABLE_CHANGE_LOG + " c WHERE c.entity = " + DbSchema.TABLE_CHANGE_LOG +
+            ".entity AND c.sync_id = " + DbSchema.TABLE_CHANGE_LOG + ".sync_id)";
+
+    static final String SQL_CURSOR = "SELECT last_sent_seq, last_received_seq FROM " + DbSchema.TABLE_SYNC_PEERS +
+            " WHERE peer_key = ?";
+    static final String SQL_CURSOR_INSERT = "INSERT OR IGNORE INTO " + DbSchema.TABLE_SYNC_PEERS + "(peer_key) VALUES (?)";
+    static final String SQL_CURSOR_SENT = "UPDATE " + DbSchema.TABLE_SYNC_PEERS +
+            " SET last_sent_seq = MAX(last_sent_seq, ?) WHERE peer_key = ?";
+    static final String SQL_CURSOR_RECEIVED = "UPDATE " + DbSchema.TABLE_SYNC_PEERS +
+            " SET last_received_seq = MAX(last_received_seq, ?) WHERE peer_key = ?";
+
+    static final String SQL_EQUIPMENT_ROW = "SELECT name, category, notes, photo_uri FROM " + DbHelper.TABLE_EQUIPMENT +
+            " WHERE sync_id = ?";
+    static final String SQL_TASK_ROW = "SELECT e.sync_id AS device_sync_id, t.title, t.interval_value, t.interval_unit, " +
+            "t.next_due_date, t.priority, t.comment, t.cost, t.consumables, t.is_active FROM " + DbHelper.TABLE_TASKS + " t " +
+            "JOIN " + DbHelper.TABLE_EQUIPMENT + " e ON e.id = t.device_id WHERE t.sync_id = ?";
+    private static String historyRow(String table) {
+        return "SELECT t.sync_id AS task_sync_id, e.sync_id AS device_sync_id, h.completion_date, h.completion_comment, " +
+                "h.consumables, h.cost, h.previous_due_date FROM " + table + " h " +
+                "JOIN " + DbHelper.TABLE_TASKS + " t ON t.id = h.task_id " +
+                "JOIN " + DbHelper.TABLE_EQUIPMENT + " e ON e.id = h.device_id WHERE h.sync_id = ?";
+    }
+    static final String SQL_HISTORY_ROW = historyRow(DbHelper.TABLE_HISTORY);
+    static final String SQL_ARCHIVE_ROW = historyRow(DbSchema.TABLE_HISTORY_ARCHIVE);
+    static final String SQL_TASK_IDS_OF_DEVICE = "SELECT t.id FROM " + DbHelper.TABLE_TASKS + " t " +
+            "JOIN " + DbHelper.TABLE_EQUIPMENT + " e ON e.id = t.device_id WHERE e.sync_id = ?";
+
+    // Columns accepted from a batch per entity; anything else in the record is ignored.
+    private static final List<String> EQUIPMENT_COLUMNS = Arrays.asList("name", "category", "notes", "photo_uri");
+    private static final List<String> TASK_COLUMNS = Arrays.asList("title", "interval_value", "interval_unit",
+            "next_due_date", "priority", "comment", "cost", "consumables", "is_active");
+    private static final List<String> HISTORY_COLUMNS = Arrays.asList("completion_date", "completion_comment",
+            "consumables", "cost", "previous_due_date");
+    // Parents before children for upserts, children before parents for deletes.
+    private static final List<String> ENTITY_ORDER = Arrays.asList(
+            ChangeRecord.ENTITY_EQUIPMENT, ChangeRecord.ENTITY_TASK, ChangeRecord.ENTITY_HISTORY);
+
+    public static class ApplyResult {
+        public int applied;
+        // older than (or equal to) what this peer already has
+        public int skipped;
+        // parent row unknown here, e.g. a task whose device was deleted locally
+        public int orphaned;
+    }
+
+    private final Supplier<SQLiteDatabase> database;
+    private final DataChangeBus changeBus;
+    // null when the engine runs on a database other than the app's; reminders are then left alone
+    private final Context appContext;
+
+    public SyncEngine(Context context) {
+        DatabaseProvider provider = DatabaseProvider.get(context);
+        DbHelper helper = provider.helper();
+        this.database = helper::getWritableDatabase;
+        this.changeBus = provider.changeBus();
+        this.appContext = context.getApplicationContext();
+    }
+
+    SyncEngine(Supplier<SQLiteDatabase> database, DataChangeBus changeBus) {
+        this.database = database;
+        this.changeBus = changeBus;
+        this.appContext = null;
+    }
+
+    public String localPeerId() {
+        try (Cursor c = database.get().rawQuery(SQL_PEER_ID, null)) {
+            return c.moveToFirst() ? c.getString(0) : null;
+        }
+    }
+
+    public long lastSeq() {
+        try (Cursor c = database.get().rawQuery(SQL_LAST_SEQ, null)) {
+            return c.moveToFirst() ? c.getLong(0) : 0L;
+        }
+    }
+
+    /** Latest state of every row changed after {@code afterSeq}, parents first and deletes last. */
+    public ChangeBatch exportSince(long afterSeq) {
+        SQLiteDatabase db = database.get();
+        ChangeBatch batch = new ChangeBatch();
+        batch.fromSeq = afterSeq;
+        batch.toSeq = afterSeq;
+        db.beginTransactionNonExclusive();
+        try {
+            batch.origin = localPeerId();
+            Map<String, ChangeRecord> latest = new LinkedHashMap<>();
+            try (Cursor c = db.rawQuery(SQL_CHANGES_SINCE, new String[]{String.valueOf(afterSeq)})) {
+                while (c.moveToNext()) {
+                    ChangeRecord change = new ChangeRecord();
+                    change.seq = c.getLong(0);
+                    change.entity = c.getString(1);
+                    change.syncId = c.getString(2);
+                    change.op = c.getString(3);
+                    change.changedAt = c.getLong(4);
+                    change.origin = c.getString(5);
+                    String key = change.entity + ':' + change.syncId;
+                    latest.remove(key);
+                    latest.put(key, change);
+                    batch.toSeq = change.seq;
+                }
+            }
+            for (String entity : ENTITY_ORDER) {
+                for (ChangeRecord change : latest.values()) {
+                    if (!entity.equals(change.entity) || !ChangeRecord.OP_UPSERT.equals(change.op)) continue;
+                    if (readRow(db, change)) {
+                        batch.changes.add(change);
+                    } else {
+                        Log.w(TAG, "Row gone without a delete entry: " + change.entity + " " + change.syncId);
+                    }
+                }
+            }
+            for (int i = ENTITY_ORDER.size() - 1; i >= 0; i--) {
+                for (ChangeRecord change : latest.values()) {
+                    if (ENTITY_ORDER.get(i).equals(change.entity) && ChangeRecord.OP_DELETE.equals(change.op)) {
+                        batch.changes.add(change);
+                    }
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        Log.d(TAG, "exportSince seq=" + afterSeq + " toSeq=" + batch.toSeq + " changes=" + batch.changes.size());
+        return batch;
+    }
+
+    /**
+     * Applies a batch in one transaction; the writes are logged under the remote clock. Once it is
+     * committed, reminders of removed tasks are cancelled and the rest are rescheduled.
+     */
+    public ApplyResult apply(ChangeBatch batch) {
+        SQLiteDatabase db = database.get();
+        ApplyResult result = new ApplyResult();
+        List<Long> removedTasks = new ArrayList<>();
+        db.beginTransaction();
+        try {
+            for (ChangeRecord change : batch.changes) {
+                if (!isNewer(db, change)) {
+                    result.skipped++;
+                    continue;
+                }
+                db.execSQL(SQL_SET_CLOCK, new Object[]{change.changedAt, change.origin});
+                boolean applied = ChangeRecord.OP_DELETE.equals(change.op)
+                        ? applyDelete(db, change, removedTasks)
+                        : applyUpsert(db, change);
+                if (applied) result.applied++; else result.orphaned++;
+            }
+            db.execSQL(SQL_CLEAR_CLOCK);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        Log.d(TAG, "apply origin=" + batch.origin + " toSeq=" + batch.toSeq + " applied=" + result.applied
+                + " skipped=" + result.skipped + " orphaned=" + result.orphaned);
+        if (result.applied > 0) {
+            changeBus.publish(DataChangeBus.ALL_DEVICES,
+                    DbHelper.TABLE_EQUIPMENT, DbHelper.TABLE_TASKS, DbHelper.TABLE_HISTORY);
+            if (appContext != null) {
+                ReminderScheduler.cancelTaskReminders(appContext, removedTasks);
+                ReminderScheduler.rescheduleAll(appContext);
+            }
+        }
+        return result;
+    }
+
+    /** Drops log entries superseded by a later change to the same row. */
+    public int compact() {
+        SQLiteDatabase db = database.get();
+        db.beginTransaction();
+        try {
+            db.execSQL(SQL_COMPACT);
+            int removed;
+            try (Cursor c = db.rawQuery("SELECT changes()", null)) {
+                removed = c.moveToFirst() ? c.getInt(0) : 0;
+            }
+            db.setTransactionSuccessful();
+            return removed;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    public long lastSentSeq(String peerKey) {
+        return readCursor(peerKey, 0);
+    }
+
+    public long lastReceivedSeq(String peerKey) {
+        return readCursor(peerKey, 1);
+    }
+
+    public void markSent(String peerKey, long seq) {
+        writeCursor(SQL_CURSOR_SENT, peerKey, seq);
+    }
+
+    public void markReceived(String peerKey, long seq) {
+        writeCursor(SQL_CURSOR_RECEIVED, peerKey, seq);
+    }
+
+    private long readCursor(String peerKey, int column) {
+        try (Cursor c = database.get().rawQuery(SQL_CURSOR, new String[]{peerKey})) {
+            return c.moveToFirst() ? c.getLong(column) : 0L;
+        }
+    }
+
+    private void writeCursor(String sql, String peerKey, long seq) {
+        SQLiteDatabase db = database.get();
+        db.beginTransaction();
+        try {
+            db.execSQL(SQL_CURSOR_INSERT, new Object[]{peerKey});
+            db.execSQL(sql, new Object[]{seq, peerKey});
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private boolean isNewer(SQLiteDatabase db, ChangeRecord change) {
+        try (Cursor c = db.rawQuery(SQL_LATEST_CHANGE, new String[]{change.entity, change.syncId})) {
+            if (!c.moveToFirst()) return true;
+            long localChangedAt = c.getLong(0);
+            if (change.changedAt != localChangedAt) return change.changedAt > localChangedAt;
+            return change.origin.compareTo(c.getString(1)) > 0;
+        }
+    }
+
+    private boolean readRow(SQLiteDatabase db, ChangeRecord change) {
+        switch (change.entity) {
+            case ChangeRecord.ENTITY_EQUIPMENT:
+                return readRow(db, SQL_EQUIPMENT_ROW, change);
+            case ChangeRecord.ENTITY_TASK:
+                return readRow(db, SQL_TASK_ROW, change);
+            case ChangeRecord.ENTITY_HISTORY:
+                return readRow(db, SQL_HISTORY_ROW, change) || readRow(db, SQL_ARCHIVE_ROW, change);
+            default:
+                return false;
+        }
+    }
+
+    private boolean readRow(SQLiteDatabase db, String sql, ChangeRecord change) {
+        try (Cursor c = db.rawQuery(sql, new String[]{change.syncId})) {
+            if (!c.moveToFirst()) return false;
+            for (int i = 0; i < c.getColumnCount(); i++) {
+                Object value;
+                switch (c.getType(i)) {
+                    case Cursor.FIELD_TYPE_INTEGER: value = c.getLong(i); break;
+                    case Cursor.FIELD_TYPE_FLOAT: value = c.getDouble(i); break;
+                    case Cursor.FIELD_TYPE_NULL: value = null; break;
+                    default: value = c.getString(i); break;
+                }
+                change.data.put(c.getColumnName(i), value);
+            }
+            return true;
+        }
+    }
+
+    private boolean applyUpsert(SQLiteDatabase db, ChangeRecord change) {
+        switch (change.entity) {
+            case ChangeRecord.ENTITY_EQUIPMENT: {
+                ContentValues values = values(change, EQUIPMENT_COLUMNS);
+                upsert(db, DbHelper.TABLE_EQUIPMENT, change.syncId, values);
+                return true;
+            }
+            case ChangeRecord.ENTITY_TASK: {
+                Long deviceId = findId(db, DbHelper.TABLE_EQUIPMENT, change.data.get("device_sync_id"));
+                if (deviceId == null) return false;
+                ContentValues values = values(change, TASK_COLUMNS);
+                values.put("device_id", deviceId);
+                upsert(db, DbHelper.TABLE_TASKS, change.syncId, values);
+                return true;
+            }
+            case ChangeRecord.ENTITY_HISTORY: {
+                Long taskId = findId(db, DbHelper.TABLE_TASKS, change.data.get("task_sync_id"));
+                Long deviceId = findId(db, DbHelper.TABLE_EQUIPMENT, change.data.get("device_sync_id"));
+                if (taskId == null || deviceId == null) return false;
+                // completions are never edited, so one already present here (hot or archived) is up to date
+                if (findId(db, DbHelper.TABLE_HISTORY, change.syncId) != null
+                        || findId(db, DbSchema.TABLE_HISTORY_ARCHIVE, change.syncId) != null) return true;
+                ContentValues values = values(change, HISTORY_COLUMNS);
+                values.put("task_id", taskId);
+                values.put("device_id", deviceId);
+                values.put("sync_id", change.syncId);
+                db.insertOrThrow(DbHelper.TABLE_HISTORY, null, values);
+                return true;
+            }
+            default:
+                Log.w(TAG, "Unknown entity in batch: " + change.entity);
+                return false;
+        }
+    }
+
+    private void upsert(SQLiteDatabase db, String table, String syncId, ContentValues values) {
+        Long id = findId(db, table, syncId);
+        if (id != null) {
+            db.update(table, values, "id=?", new String[]{String.valueOf(id)});
+        } else {
+            values.put("sync_id", syncId);
+            db.insertOrThrow(table, null, values);
+        }
+    }
+
+    // Ids of the tasks removed here, directly or with their device, go to removedTasks.
+    private boolean applyDelete(SQLiteDatabase db, ChangeRecord change, List<Long> removedTasks) {
+        String[] args = {change.syncId};
+        int deleted;
+        switch (change.entity) {
+            case ChangeRecord.ENTITY_EQUIPMENT:
+                try (Cursor c = db.rawQuery(SQL_TASK_IDS_OF_DEVICE, args)) {
+                    while (c.moveToNext()) removedTasks.add(c.getLong(0));
+                }
+                deleted = db.delete(DbHelper.TABLE_EQUIPMENT, "sync_id=?", args);
+                break;
+            case ChangeRecord.ENTITY_TASK: {
+                Long taskId = findId(db, DbHelper.TABLE_TASKS, change.syncId);
+                if (taskId != null) removedTasks.add(taskId);
+                deleted = db.delete(DbHelper.TABLE_TASKS, "sync_id=?", args);
+                break;
+            }
+            case ChangeRecord.ENTITY_HISTORY:
+                deleted = db.delete(DbHelper.TABLE_HISTORY, "sync_id=?", args)
+                        + db.delete(DbSchema.TABLE_HISTORY_ARCHIVE, "sync_id=?", args);
+                break;
+            default:
+                Log.w(TAG, "Unknown entity in batch: " + change.entity);
+                return false;
+        }
+        if (deleted == 0) {
+            // never seen here, or already gone: keep the tombstone so an older upsert cannot revive it
+            db.execSQL(SQL_LOG_TOMBSTONE, new Object[]{change.entity, change.syncId, change.changedAt, change.origin});
+        }
+        return true;
+    }
+
+    private static Long findId(SQLiteDatabase db, String table, Object syncId) {
+        if (syncId == null) return null;
+        try (Cursor c = db.rawQuery("SELECT id FROM " + table + " WHERE sync_id = ?", new String[]{syncId.toString()})) {
+            return c.moveToFirst() ? c.getLong(0) : null;
+        }
+    }
+
+    private static ContentValues values(ChangeRecord change, List<String> columns) {
+        ContentValues values = new ContentValues();
+        for (String column : columns) {
+            if (!change.data.containsKey(column)) continue;
+            Object value = change.data.get(column);
+            if (value == null) values.putNull(column);
+            else if (value instanceof Long) values.put(column, (Long) value);
+            else if (value instanceof Integer) values.put(column, (Integer) value);
+            else if (value instanceof Double) values.put(column, (Double) value);
+            else if (value instanceof Boolean) values.put(column, (Boolean) value ? 1 : 0);
+            else values.put(column, value.toString());
+        }
+        return values;
+    }
+}
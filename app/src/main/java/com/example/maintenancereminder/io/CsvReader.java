@@ -0,0 +1,94 @@
+package com.example.maintenancereminder.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Minimal streaming CSV reader (RFC 4180 quoting, ',' or ';' separators).
+ * Only the current record is kept in memory.
+ */
+public class CsvReader implements Closeable {
+    private final Reader reader;
+    private final char separator;
+    private final StringBuilder field = new StringBuilder();
+    private final List<String> record = new ArrayList<>();
+    private int pushback = -2;
+    private long lineNumber;
+
+    public CsvReader(Reader reader, char separator) {
+        this.reader = reader;
+        this.separator = separator;
+    }
+
+    /** Returns the next record or {@code null} at end of input. The returned list is reused. */
+    public List<String> next() throws IOException {
+        record.clear();
+        field.setLength(0);
+        int ch = read();
+        if (ch == -1) return null;
+        lineNumber++;
+        boolean quoted = false;
+        boolean fieldStarted = false;
+        while (true) {
+            if (quoted) {
+                if (ch == -1) throw new IOException("Unterminated quoted field at line " + lineNumber);
+                if (ch == '"') {
+                    int nextCh = read();
+                    if (nextCh == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        ch = nextCh;
+                        continue;
+                    }
+                } else {
+                    if (ch == '\n') lineNumber++;
+                    field.append((char) ch);
+                }
+            } else if (ch == '"' && !fieldStarted) {
+                quoted = true;
+                fieldStarted = true;
+            } else if (ch == separator) {
+                endField();
+                fieldStarted = false;
+            } else if (ch == '\r' || ch == '\n' || ch == -1) {
+                if (ch == '\r') {
+                    int nextCh = read();
+                    if (nextCh != '\n') pushback = nextCh;
+                }
+                endField();
+                return record;
+            } else {
+                field.append((char) ch);
+                fieldStarted = true;
+            }
+            ch = read();
+        }
+    }
+
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    private void endField() {
+        record.add(field.toString());
+        field.setLength(0);
+    }
+
+    private int read() throws IOException {
+        if (pushback != -2) {
+            int ch = pushback;
+            pushback = -2;
+            return ch;
+        }
+        return reader.read();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
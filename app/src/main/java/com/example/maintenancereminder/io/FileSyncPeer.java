@@ -0,0 +1,225 @@
+package com.example.maintenancereminder.io;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.JsonWriter;
+import android.util.Log;
+
+import com.example.maintenancereminder.db.SyncEngine;
+import com.example.maintenancereminder.model.ChangeBatch;
+import com.example.maintenancereminder.model.ChangeRecord;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Syncs through a folder shared by every peer (a USB stick, a synced cloud folder, or a temp dir in
+ * tests). Each peer drops its own deltas there as {@code changes-<peer>-<toSeq>.json} and applies the
+ * files of the others it has not seen yet, so a sync only moves what changed since the last one.
+ * Runs synchronously; call it from the writer executor.
+ */
+public class FileSyncPeer {
+    private static final String TAG = "FileSyncPeer";
+    private static final String PREFIX = "changes-";
+    private static final String SUFFIX = ".json";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public static class SyncResult {
+        public int changesSent;
+        public int batchesReceived;
+        public int applied;
+        public int skipped;
+        public int orphaned;
+        public long elapsedMs;
+    }
+
+    private final SyncEngine engine;
+    private final File folder;
+
+    public FileSyncPeer(SyncEngine engine, File folder) {
+        this.engine = engine;
+        this.folder = folder;
+    }
+
+    public SyncResult sync() throws IOException {
+        long start = System.currentTimeMillis();
+        if (!folder.isDirectory() && !folder.mkdirs()) throw new IOException("Cannot create " + folder);
+        SyncResult result = new SyncResult();
+        String self = engine.localPeerId();
+        push(result);
+        for (BatchFile file : pendingFiles(self)) {
+            ChangeBatch batch = read(file.file);
+            SyncEngine.ApplyResult applied = engine.apply(batch);
+            engine.markReceived(file.origin, batch.toSeq);
+            result.batchesReceived++;
+            result.applied += applied.applied;
+            result.skipped += applied.skipped;
+            result.orphaned += applied.orphaned;
+        }
+        engine.compact();
+        result.elapsedMs = System.currentTimeMillis() - start;
+        Log.d(TAG, "sync folder=" + folder + " sent=" + result.changesSent + " batches=" + result.batchesReceived
+                + " applied=" + result.applied + " skipped=" + result.skipped + " in " + result.elapsedMs + "ms");
+        return result;
+    }
+
+    private void push(SyncResult result) throws IOException {
+        String folderKey = "folder:" + folder.getAbsolutePath();
+        long sent = engine.lastSentSeq(folderKey);
+        ChangeBatch batch = engine.exportSince(sent);
+        if (!batch.changes.isEmpty()) {
+            File target = new File(folder, String.format(Locale.US, "%s%s-%019d%s", PREFIX, batch.origin, batch.toSeq, SUFFIX));
+            File tmp = new File(folder, target.getName() + ".tmp");
+            write(batch, tmp);
+            // readers only pick up complete files
+            if (!tmp.renameTo(target)) throw new IOException("Cannot rename " + tmp + " to " + target);
+            result.changesSent = batch.changes.size();
+        }
+        if (batch.toSeq > sent) engine.markSent(folderKey, batch.toSeq);
+    }
+
+    private static class BatchFile {
+        File file;
+        String origin;
+        long toSeq;
+    }
+
+    /** Files of other peers newer than what was applied from them, oldest first per peer. */
+    private List<BatchFile> pendingFiles(String self) {
+        List<BatchFile> pending = new ArrayList<>();
+        File[] files = folder.listFiles((dir, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        if (files == null) return pending;
+        for (File f : files) {
+            String name = f.getName();
+            String stem = name.substring(PREFIX.length(), name.length() - SUFFIX.length());
+            int dash = stem.lastIndexOf('-');
+            if (dash <= 0) continue;
+            BatchFile batchFile = new BatchFile();
+            batchFile.file = f;
+            batchFile.origin = stem.substring(0, dash);
+            try {
+                batchFile.toSeq = Long.parseLong(stem.substring(dash + 1));
+            } catch (NumberFormatException e) {
+                Log.w(TAG, "Ignoring " + name);
+                continue;
+            }
+            if (batchFile.origin.equals(self)) continue;
+            if (batchFile.toSeq <= engine.lastReceivedSeq(batchFile.origin)) continue;
+            pending.add(batchFile);
+        }
+        // zero-padded seq keeps the names of one peer in order
+        pending.sort((a, b) -> a.file.getName().compareTo(b.file.getName()));
+        return pending;
+    }
+
+    static void write(ChangeBatch batch, File file) throws IOException {
+        try (JsonWriter json = new JsonWriter(new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), BUFFER_SIZE))) {
+            json.beginObject();
+            json.name("origin").value(batch.origin);
+            json.name("from_seq").value(batch.fromSeq);
+            json.name("to_seq").value(batch.toSeq);
+            json.name("changes").beginArray();
+            for (ChangeRecord change : batch.changes) {
+                json.beginObject();
+                json.name("seq").value(change.seq);
+                json.name("entity").value(change.entity);
+                json.name("sync_id").value(change.syncId);
+                json.name("op").value(change.op);
+                json.name("changed_at").value(change.changedAt);
+                json.name("origin").value(change.origin);
+                if (!change.data.isEmpty()) {
+                    json.name("data").beginObject();
+                    for (Map.Entry<String, Object> field : change.data.entrySet()) {
+                        json.name(field.getKey());
+                        Object value = field.getValue();
+                        if (value == null) json.nullValue();
+                        else if (value instanceof Number) json.value((Number) value);
+                        else json.value(value.toString());
+                    }
+                    json.endObject();
+                }
+                json.endObject();
+            }
+            json.endArray();
+            json.endObject();
+        }
+    }
+
+    static ChangeBatch read(File file) throws IOException {
+        ChangeBatch batch = new ChangeBatch();
+        try (JsonReader json = new JsonReader(new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8), BUFFER_SIZE))) {
+            json.beginObject();
+            while (json.hasNext()) {
+                switch (json.nextName()) {
+                    case "origin": batch.origin = json.nextString(); break;
+                    case "from_seq": batch.fromSeq = json.nextLong(); break;
+                    case "to_seq": batch.toSeq = json.nextLong(); break;
+                    case "changes":
+                        json.beginArray();
+                        while (json.hasNext()) batch.changes.add(readChange(json));
+                        json.endArray();
+                        break;
+                    default: json.skipValue(); break;
+                }
+            }
+            json.endObject();
+        }
+        return batch;
+    }
+
+    private static ChangeRecord readChange(JsonReader json) throws IOException {
+        ChangeRecord change = new ChangeRecord();
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "seq": change.seq = json.nextLong(); break;
+                case "entity": change.entity = json.nextString(); break;
+                case "sync_id": change.syncId = json.nextString(); break;
+                case "op": change.op = json.nextString(); break;
+                case "changed_at": change.changedAt = json.nextLong(); break;
+                case "origin": change.origin = json.nextString(); break;
+                case "data":
+                    json.beginObject();
+                    while (json.hasNext()) {
+                        String name = json.nextName();
+                        change.data.put(name, readValue(json));
+                    }
+                    json.endObject();
+                    break;
+                default: json.skipValue(); break;
+            }
+        }
+        json.endObject();
+        return change;
+    }
+
+    private static Object readValue(JsonReader json) throws IOException {
+        JsonToken token = json.peek();
+        if (token == JsonToken.NULL) {
+            json.nextNull();
+            return null;
+        }
+        if (token == JsonToken.NUMBER) {
+            String number = json.nextString();
+            if (number.indexOf('.') >= 0 || number.indexOf('e') >= 0 || number.indexOf('E') >= 0) {
+                return Double.parseDouble(number);
+            }
+            return Long.parseLong(number);
+        }
+        if (token == JsonToken.BOOLEAN) return json.nextBoolean();
+        return json.nextString();
+    }
+}
@@ -0,0 +1,470 @@
+package com.example.maintenancereminder.io;
+
+import android.content.Context;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.Log;
+
+import com.example.maintenancereminder.db.DataChangeBus;
+import com.example.maintenancereminder.db.DatabaseProvider;
+import com.example.maintenancereminder.db.EquipmentDao;
+import com.example.maintenancereminder.db.HistoryDao;
+import com.example.maintenancereminder.db.MaintenanceTaskDao;
+import com.example.maintenancereminder.model.Equipment;
+import com.example.maintenancereminder.model.MaintenanceTask;
+import com.example.maintenancereminder.model.ServiceHistoryEntry;
+import com.example.maintenancereminder.notification.ReminderScheduler;
+import com.example.maintenancereminder.util.DateCodec;
+import com.example.maintenancereminder.util.DateUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Streams a fleet description (CSV or JSON) into equipment, maintenance_tasks and service_history.
+ *
+ * <p>CSV: a header row followed by one row per task or completion. Recognised columns are
+ * device_name (required), category, notes, task_title, interval_value, interval_unit, next_due_date,
+ * priority, task_cost, consumables, comment, completion_date, completion_comment, completion_cost.
+ * Consecutive rows with the same device and task title add completions to the same task.
+ *
+ * <p>JSON: an array of devices {@code {name, category, notes, tasks: [{title, interval_value,
+ * interval_unit, next_due_date, priority, cost, consumables, comment, history: [{completion_date,
+ * comment, consumables, cost}]}]}}.
+ *
+ * <p>interval_unit is one of DAYS, WEEKS, MONTHS, YEARS and priority one of LOW, MEDIUM, HIGH (any case);
+ * a task with another value is skipped. A JSON task is written once its object is complete, so its
+ * fields may come in any order. Dates are yyyy-MM-dd in the zone the app keeps dates in. Rows are committed in chunks of {@link #CHUNK_SIZE}; reminders are
+ * rescheduled once after the last chunk. A file that breaks off or turns malformed keeps everything
+ * read before the break and reports it in {@link ImportResult#failure}. A database failure rolls back
+ * the open chunk and is thrown; the chunks committed before it stay, and reminders are still rescheduled.
+ */
+public class FleetImporter {
+    private static final String TAG = "FleetImporter";
+    public static final int CHUNK_SIZE = 500;
+    private static final Set<String> INTERVAL_UNITS = Set.of("DAYS", "WEEKS", "MONTHS", "YEARS");
+    private static final Set<String> PRIORITIES = Set.of("LOW", "MEDIUM", "HIGH");
+
+    public static class ImportResult {
+        public long rowsRead;
+        public long rowsSkipped;
+        public int devicesInserted;
+        public int tasksInserted;
+        public int historyInserted;
+        public long elapsedMs;
+        /** Why reading stopped before the end of the input; null when all of it was read. */
+        public String failure;
+
+        public double rowsPerSecond() {
+            return elapsedMs <= 0 ? rowsRead : rowsRead * 1000.0 / elapsedMs;
+        }
+    }
+
+    private final Context appContext;
+    private final SQLiteDatabase db;
+    private final DataChangeBus changeBus;
+    private final EquipmentDao equipmentDao;
+    private final MaintenanceTaskDao taskDao;
+    private final HistoryDao historyDao;
+
+    private final Map<String, Long> deviceIds = new HashMap<>();
+    private final ImportResult result = new ImportResult();
+    private int rowsInChunk;
+
+    private long currentDeviceId = -1L;
+    private MaintenanceTask currentTask;
+    private boolean currentTaskHasExplicitDue;
+    private long currentTaskLastCompletion = Long.MIN_VALUE;
+
+    public FleetImporter(Context context) {
+        this.appContext = context.getApplicationContext();
+        DatabaseProvider provider = DatabaseProvider.get(appContext);
+        this.db = provider.helper().getWritableDatabase();
+        this.changeBus = provider.changeBus();
+        this.equipmentDao = new EquipmentDao(appContext);
+        this.taskDao = new MaintenanceTaskDao(appContext);
+        this.historyDao = new HistoryDao(appContext);
+    }
+
+    /** Detects the format from the first non-blank character ('[' or '{' means JSON). */
+    public ImportResult importStream(InputStream in) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in, 64 * 1024);
+        buffered.mark(8 * 1024);
+        int first;
+        do {
+            first = buffered.read();
+        } while (first == ' ' || first == '\t' || first == '\r' || first == '\n' || first == 0xEF || first == 0xBB || first == 0xBF);
+        buffered.reset();
+        return first == '[' || first == '{' ? importJson(buffered) : importCsv(buffered);
+    }
+
+    public ImportResult importCsv(InputStream in) throws IOException {
+        long start = System.currentTimeMillis();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 64 * 1024);
+        String headerLine = stripBom(reader.readLine());
+        if (headerLine == null) return finish(start);
+        char separator = headerLine.indexOf(';') >= 0 && headerLine.indexOf(',') < 0 ? ';' : ',';
+        List<String> header = new CsvReader(new StringReader(headerLine), separator).next();
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) columns.put(header.get(i).trim().toLowerCase(Locale.ROOT), i);
+        if (!columns.containsKey("device_name")) throw new IOException("CSV header must contain device_name");
+
+        db.beginTransaction();
+        changeBus.beginTransaction();
+        try (CsvReader csv = new CsvReader(reader, separator)) {
+            try {
+                List<String> row;
+                while ((row = csv.next()) != null) {
+                    result.rowsRead++;
+                    try {
+                        importCsvRow(row, columns);
+                    } catch (IllegalArgumentException | DateTimeException e) {
+                        result.rowsSkipped++;
+                        Log.w(TAG, "Skipping CSV record " + (csv.getLineNumber() + 1) + ": " + e.getMessage());
+                    }
+                }
+            } catch (IOException e) {
+                stoppedEarly(e);
+            }
+            flushTask();
+            db.setTransactionSuccessful();
+        } finally {
+            try {
+                db.endTransaction();
+            } finally {
+                changeBus.endTransaction();
+                finish(start);
+            }
+        }
+        return result;
+    }
+
+    public ImportResult importJson(InputStream in) throws IOException {
+        long start = System.currentTimeMillis();
+        db.beginTransaction();
+        changeBus.beginTransaction();
+        try (JsonReader json = new JsonReader(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 64 * 1024))) {
+            try {
+                json.beginArray();
+                while (json.hasNext()) readJsonDevice(json);
+                json.endArray();
+            } catch (IOException | IllegalStateException | IllegalArgumentException | DateTimeException e) {
+                // JsonReader reports an unexpected token with IllegalStateException
+                stoppedEarly(e);
+            }
+            flushTask();
+            db.setTransactionSuccessful();
+        } finally {
+            try {
+                db.endTransaction();
+            } finally {
+                changeBus.endTransaction();
+                finish(start);
+            }
+        }
+        return result;
+    }
+
+    // Rows written so far are complete, so they are kept.
+    private void stoppedEarly(Exception e) {
+        result.failure = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+        Log.w(TAG, "Input broke off after " + result.rowsRead + " rows, keeping what was read", e);
+    }
+
+    // Every value is parsed before the first write, so a bad one skips the row without leaving part of it behind.
+    private void importCsvRow(List<String> row, Map<String, Integer> columns) {
+        String deviceName = column(row, columns, "device_name");
+        if (deviceName == null) throw new IllegalArgumentException("device_name is empty");
+        String title = column(row, columns, "task_title");
+        MaintenanceTask task = null;
+        Long explicitDue = null;
+        Long completionDate = null;
+        Double completionCost = null;
+        if (title != null) {
+            task = new MaintenanceTask();
+            task.title = title;
+            task.intervalValue = parseLong(column(row, columns, "interval_value"), 1L);
+            task.intervalUnit = oneOf(column(row, columns, "interval_unit"), "DAYS", INTERVAL_UNITS, "interval_unit");
+            task.priority = oneOf(column(row, columns, "priority"), "MEDIUM", PRIORITIES, "priority");
+            task.comment = column(row, columns, "comment");
+            task.cost = parseDouble(column(row, columns, "task_cost"));
+            task.consumables = column(row, columns, "consumables");
+            explicitDue = parseDate(column(row, columns, "next_due_date"));
+            completionDate = parseDate(column(row, columns, "completion_date"));
+            completionCost = parseDouble(column(row, columns, "completion_cost"));
+        }
+
+        long deviceId = device(deviceName, column(row, columns, "category"), column(row, columns, "notes"));
+        if (task == null) return;
+        if (currentTask == null || currentTask.deviceId != deviceId || !title.equals(currentTask.title)) {
+            task.deviceId = deviceId;
+            task(task, explicitDue);
+        }
+        if (completionDate != null) {
+            history(completionDate, column(row, columns, "completion_comment"), null, completionCost);
+        }
+    }
+
+    private void readJsonDevice(JsonReader json) throws IOException {
+        String name = null, category = null, notes = null;
+        long deviceId = -1L;
+        json.beginObject();
+        while (json.hasNext()) {
+            String key = json.nextName();
+            switch (key) {
+                case "name": name = nextString(json); break;
+                case "category": category = nextString(json); break;
+                case "notes": notes = nextString(json); break;
+                case "tasks":
+                    if (name == null) throw new IOException("Device \"name\" must precede \"tasks\"");
+                    deviceId = device(name, category, notes);
+                    json.beginArray();
+                    while (json.hasNext()) readJsonTask(json, deviceId);
+                    json.endArray();
+                    break;
+                default: json.skipValue(); break;
+            }
+        }
+        json.endObject();
+        result.rowsRead++;
+        if (name == null) {
+            result.rowsSkipped++;
+        } else if (deviceId == -1L) {
+            device(name, category, notes);
+        }
+    }
+
+    // History is buffered until the task object ends, so fields after "history" still reach the task.
+    private void readJsonTask(JsonReader json, long deviceId) throws IOException {
+        MaintenanceTask task = new MaintenanceTask();
+        task.deviceId = deviceId;
+        task.intervalValue = 1L;
+        String intervalUnit = null, priority = null;
+        Long explicitDue = null;
+        List<ServiceHistoryEntry> history = new ArrayList<>();
+        json.beginObject();
+        while (json.hasNext()) {
+            String key = json.nextName();
+            switch (key) {
+                case "title": task.title = nextString(json); break;
+                case "interval_value": task.intervalValue = Math.max(1L, json.nextLong()); break;
+                case "interval_unit": intervalUnit = nextString(json); break;
+                case "next_due_date": explicitDue = parseDate(nextString(json)); break;
+                case "priority": priority = nextString(json); break;
+                case "comment": task.comment = nextString(json); break;
+                case "cost": task.cost = nextDouble(json); break;
+                case "consumables": task.consumables = nextString(json); break;
+                case "history":
+                    json.beginArray();
+                    while (json.hasNext()) {
+                        ServiceHistoryEntry entry = readJsonHistory(json);
+                        if (entry != null) history.add(entry);
+                    }
+                    json.endArray();
+                    break;
+                default: json.skipValue(); break;
+            }
+        }
+        json.endObject();
+        result.rowsRead++;
+        try {
+            if (task.title == null) throw new IllegalArgumentException("task without title");
+            task.intervalUnit = oneOf(intervalUnit, "DAYS", INTERVAL_UNITS, "interval_unit");
+            task.priority = oneOf(priority, "MEDIUM", PRIORITIES, "priority");
+        } catch (IllegalArgumentException e) {
+            result.rowsSkipped += 1 + history.size();
+            Log.w(TAG, "Skipping JSON task " + task.title + " with " + history.size() + " completions: " + e.getMessage());
+            return;
+        }
+        task(task, explicitDue);
+        for (ServiceHistoryEntry entry : history) {
+            history(entry.completionDate, entry.completionComment, entry.consumables, entry.cost);
+        }
+    }
+
+    // Null (and counted as skipped) without a completion_date.
+    private ServiceHistoryEntry readJsonHistory(JsonReader json) throws IOException {
+        ServiceHistoryEntry entry = new ServiceHistoryEntry();
+        json.beginObject();
+        while (json.hasNext()) {
+            String key = json.nextName();
+            switch (key) {
+                case "completion_date": entry.completionDate = parseDate(nextString(json)); break;
+                case "comment": entry.completionComment = nextString(json); break;
+                case "consumables": entry.consumables = nextString(json); break;
+                case "cost": entry.cost = nextDouble(json); break;
+                default: json.skipValue(); break;
+            }
+        }
+        json.endObject();
+        result.rowsRead++;
+        if (entry.completionDate == null) {
+            result.rowsSkipped++;
+            return null;
+        }
+        return entry;
+    }
+
+    private long device(String name, String category, String notes) {
+        Long id = deviceIds.get(name);
+        if (id == null) {
+            id = equipmentDao.findIdByName(name);
+            if (id == null) {
+                Equipment e = new Equipment();
+                e.name = name;
+                e.category = category;
+                e.notes = notes;
+                id = equipmentDao.insert(e);
+                if (id <= 0) throw new SQLException("Insert failed for equipment " + name);
+                result.devicesInserted++;
+                rowWritten();
+            }
+            deviceIds.put(name, id);
+        }
+        if (id != currentDeviceId) {
+            flushTask();
+            currentDeviceId = id;
+        }
+        return id;
+    }
+
+    private void task(MaintenanceTask task, Long explicitDue) {
+        flushTask();
+        currentTaskHasExplicitDue = explicitDue != null;
+        currentTaskLastCompletion = Long.MIN_VALUE;
+        task.nextDueDate = explicitDue != null
+                ? explicitDue
+                : DateUtils.calculateNextDueDate(System.currentTimeMillis(), task.intervalValue, task.intervalUnit);
+        task.isActive = 1;
+        task.id = taskDao.insertOrThrow(task);
+        currentTask = task;
+        result.tasksInserted++;
+        rowWritten();
+    }
+
+    private void history(long completionDate, String comment, String consumables, Double cost) {
+        if (currentTask == null) throw new IllegalArgumentException("Completion without a task");
+        ServiceHistoryEntry entry = new ServiceHistoryEntry();
+        entry.taskId = currentTask.id;
+        entry.deviceId = currentTask.deviceId;
+        entry.completionDate = completionDate;
+        entry.completionComment = comment;
+        entry.consumables = consumables;
+        entry.cost = cost;
+        if (currentTaskLastCompletion != Long.MIN_VALUE) {
+            entry.previousDueDate = DateUtils.calculateNextDueDate(currentTaskLastCompletion, currentTask.intervalValue, currentTask.intervalUnit);
+        } else {
+            entry.previousDueDate = completionDate;
+        }
+        if (historyDao.insert(entry) <= 0) throw new SQLException("Failed to save history for task=" + currentTask.id);
+        currentTaskLastCompletion = Math.max(currentTaskLastCompletion, completionDate);
+        result.historyInserted++;
+        rowWritten();
+    }
+
+    private void flushTask() {
+        writeTaskDue();
+        currentTask = null;
+        currentTaskLastCompletion = Long.MIN_VALUE;
+    }
+
+    /** Without an explicit next_due_date a task is due one interval after its latest imported completion. */
+    private void writeTaskDue() {
+        if (currentTask == null) return;
+        if (!currentTaskHasExplicitDue && currentTaskLastCompletion != Long.MIN_VALUE) {
+            taskDao.updateNextDueDate(currentTask.id,
+                    DateUtils.calculateNextDueDate(currentTaskLastCompletion, currentTask.intervalValue, currentTask.intervalUnit));
+        }
+    }
+
+    private void rowWritten() {
+        if (++rowsInChunk >= CHUNK_SIZE) {
+            // a chunk that ends inside a task commits that task's due date with it
+            writeTaskDue();
+            db.setTransactionSuccessful();
+            db.endTransaction();
+            // deliver the committed chunk so open screens catch up while the import runs
+            changeBus.endTransaction();
+            db.beginTransaction();
+            changeBus.beginTransaction();
+            rowsInChunk = 0;
+        }
+    }
+
+    private ImportResult finish(long start) {
+        ReminderScheduler.rescheduleAll(appContext);
+        result.elapsedMs = System.currentTimeMillis() - start;
+        Log.i(TAG, "Import finished: rows=" + result.rowsRead
+                + ", skipped=" + result.rowsSkipped
+                + ", devices=" + result.devicesInserted
+                + ", tasks=" + result.tasksInserted
+                + ", history=" + result.historyInserted
+                + ", elapsedMs=" + result.elapsedMs
+                + ", rowsPerSecond=" + Math.round(result.rowsPerSecond())
+                + (result.failure == null ? "" : ", stoppedEarly=" + result.failure));
+        return result;
+    }
+
+    private static String column(List<String> row, Map<String, Integer> columns, String name) {
+        Integer index = columns.get(name);
+        if (index == null || index >= row.size()) return null;
+        String value = row.get(index).trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    private static String stripBom(String line) {
+        return line != null && !line.isEmpty() && line.charAt(0) == '﻿' ? line.substring(1) : line;
+    }
+
+    private static String oneOf(String value, String fallback, Set<String> allowed, String name) {
+        if (value == null) return fallback;
+        String upper = value.toUpperCase(Locale.ROOT);
+        if (!allowed.contains(upper)) throw new IllegalArgumentException("unknown " + name + " " + value);
+        return upper;
+    }
+
+    private static long parseLong(String value, long fallback) {
+        return value == null ? fallback : Math.max(1L, Long.parseLong(value));
+    }
+
+    private static Double parseDouble(String value) {
+        return value == null ? null : Double.parseDouble(value.replace(',', '.'));
+    }
+
+    private static Long parseDate(String value) {
+        if (value == null || value.isEmpty()) return null;
+        return DateCodec.startOfDay(LocalDate.parse(value).toEpochDay());
+    }
+
+    private static String nextString(JsonReader json) throws IOException {
+        if (json.peek() == JsonToken.NULL) {
+            json.nextNull();
+            return null;
+        }
+        String value = json.nextString().trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    private static Double nextDouble(JsonReader json) throws IOException {
+        if (json.peek() == JsonToken.NULL) {
+            json.nextNull();
+            return null;
+        }
+        return json.nextDouble();
+    }
+}
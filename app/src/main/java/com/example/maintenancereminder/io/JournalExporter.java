@@ -0,0 +1,160 @@
+package com.example.maintenancereminder.io;
+
+import android.content.Context;
+import android.os.CancellationSignal;
+import android.util.JsonWriter;
+
+import com.example.maintenancereminder.db.HistoryDao;
+import com.example.maintenancereminder.model.ServiceHistoryEntry;
+import com.example.maintenancereminder.util.DateCodec;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Writes the service journal (newest first, with device name and task title) to a stream as CSV
+ * or JSON. Rows are read in keyset pages of {@link #PAGE_SIZE}, so memory stays constant and no
+ * read transaction is held open for the whole export. Dates are ISO-8601 date-times with their UTC
+ * offset. The CSV is meant for spreadsheets, not for {@link FleetImporter}: text cells that a
+ * spreadsheet would take for a formula get a leading apostrophe.
+ */
+public class JournalExporter {
+    public static final int PAGE_SIZE = 1000;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public enum Format { CSV, JSON }
+
+    public interface ProgressListener {
+        /** Called after every page on the exporting thread. */
+        void onProgress(long rowsWritten, long totalRows);
+    }
+
+    public static class ExportResult {
+        public long rowsWritten;
+        public long elapsedMs;
+    }
+
+    private static final String[] CSV_HEADER = {"id", "device_name", "task_title", "completion_date",
+            "completion_comment", "consumables", "completion_cost", "previous_due_date", "archived"};
+
+    private final HistoryDao historyDao;
+
+    public JournalExporter(Context context) {
+        this.historyDao = new HistoryDao(context.getApplicationContext());
+    }
+
+    /**
+     * Exports the journal of one device ({@code deviceId > 0}) or of all devices. The stream is
+     * flushed but not closed. Throws {@link android.os.OperationCanceledException} when
+     * {@code signal} is cancelled; whatever was written up to then stays in the stream.
+     */
+    public ExportResult export(OutputStream out, Format format, long deviceId, boolean includeArchived,
+                               ProgressListener listener, CancellationSignal signal) throws IOException {
+        long start = System.currentTimeMillis();
+        long total = historyDao.count(deviceId, includeArchived);
+        ExportResult result = new ExportResult();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        JsonWriter json = null;
+        if (format == Format.JSON) {
+            json = new JsonWriter(writer);
+            json.beginArray();
+        } else {
+            writer.write('\uFEFF');
+            writeCsvRow(writer, CSV_HEADER);
+        }
+
+        String[] csvRow = new String[CSV_HEADER.length];
+        ServiceHistoryEntry after = null;
+        List<ServiceHistoryEntry> page;
+        do {
+            if (signal != null) signal.throwIfCanceled();
+            page = historyDao.getPage(deviceId, after, PAGE_SIZE, includeArchived);
+            for (ServiceHistoryEntry e : page) {
+                if (json != null) {
+                    writeJsonEntry(json, e);
+                } else {
+                    csvRow[0] = String.valueOf(e.id);
+                    csvRow[1] = csvText(e.deviceName);
+                    csvRow[2] = csvText(e.taskTitle);
+                    csvRow[3] = formatDateTime(e.completionDate);
+                    csvRow[4] = csvText(e.completionComment);
+                    csvRow[5] = csvText(e.consumables);
+                    csvRow[6] = e.cost == null ? null : String.valueOf(e.cost);
+                    csvRow[7] = formatDateTime(e.previousDueDate);
+                    csvRow[8] = e.archived ? "1" : "0";
+                    writeCsvRow(writer, csvRow);
+                }
+            }
+            result.rowsWritten += page.size();
+            if (!page.isEmpty()) after = page.get(page.size() - 1);
+            if (listener != null) listener.onProgress(result.rowsWritten, Math.max(total, result.rowsWritten));
+        } while (page.size() == PAGE_SIZE);
+
+        if (json != null) {
+            json.endArray();
+            json.flush();
+        } else {
+            writer.flush();
+        }
+        result.elapsedMs = System.currentTimeMillis() - start;
+        return result;
+    }
+
+    private static void writeJsonEntry(JsonWriter json, ServiceHistoryEntry e) throws IOException {
+        json.beginObject();
+        json.name("id").value(e.id);
+        json.name("device_name").value(e.deviceName);
+        json.name("task_title").value(e.taskTitle);
+        json.name("completion_date").value(formatDateTime(e.completionDate));
+        json.name("completion_comment").value(e.completionComment);
+        json.name("consumables").value(e.consumables);
+        json.name("cost").value(e.cost);
+        json.name("previous_due_date").value(formatDateTime(e.previousDueDate));
+        json.name("archived").value(e.archived);
+        json.endObject();
+    }
+
+    private static String formatDateTime(Long millis) {
+        return millis == null ? null : DateCodec.formatDateTime(millis);
+    }
+
+    // Free text only: a cell starting with one of these is evaluated as a formula by spreadsheets.
+    static String csvText(String value) {
+        if (value == null || value.isEmpty()) return value;
+        char first = value.charAt(0);
+        return first == '=' || first == '+' || first == '-' || first == '@' ? "'" + value : value;
+    }
+
+    private static void writeCsvRow(Writer writer, String[] row) throws IOException {
+        for (int i = 0; i < row.length; i++) {
+            if (i > 0) writer.write(',');
+            writeCsvField(writer, row[i]);
+        }
+        writer.write("\r\n");
+    }
+
+    private static void writeCsvField(Writer writer, String value) throws IOException {
+        if (value == null || value.isEmpty()) return;
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') writer.write('"');
+            writer.write(c);
+        }
+        writer.write('"');
+    }
+}
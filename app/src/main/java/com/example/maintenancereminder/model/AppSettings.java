@@ -1,6 +1,24 @@
 package com.example.maintenancereminder.model;
 
 public class AppSettings {
+    public static final String REMINDERS_PER_TASK = "PER_TASK";
+    public static final String REMINDERS_COALESCED = "COALESCED";
+
     public String notificationPreset;
     public int notificationHour;
+    // completions older than this many days move to the history archive; 0 keeps everything hot
+    public int archiveAfterDays;
+    // PER_TASK arms one alarm per task; COALESCED keeps a single alarm for the earliest due date
+    public String reminderMode;
+    // coalesced mode: tasks due at or before this have already been notified
+    public long reminderWatermark;
+    // boot the scheduled_alarms ledger was written in; alarms do not survive a reboot
+    public int alarmLedgerBoot;
+    // digest mode: due reminders are collected and posted as one grouped notification
+    public boolean digestEnabled;
+    // at most this many devices get their own child notification / summary line
+    public int digestCap;
+    // minimum time between two digests
+    public int digestIntervalMinutes;
+    public long lastDigestAt;
 }
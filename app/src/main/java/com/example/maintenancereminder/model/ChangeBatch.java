@@ -0,0 +1,13 @@
+package com.example.maintenancereminder.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ChangeBatch {
+    // peer that exported the batch
+    public String origin;
+    // change_log range on the exporting peer: (fromSeq, toSeq]
+    public long fromSeq;
+    public long toSeq;
+    public List<ChangeRecord> changes = new ArrayList<>();
+}
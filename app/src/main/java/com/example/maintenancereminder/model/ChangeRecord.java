@@ -0,0 +1,23 @@
+package com.example.maintenancereminder.model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class ChangeRecord {
+    public static final String ENTITY_EQUIPMENT = "equipment";
+    public static final String ENTITY_TASK = "task";
+    public static final String ENTITY_HISTORY = "history";
+
+    public static final String OP_UPSERT = "U";
+    public static final String OP_DELETE = "D";
+
+    public long seq;
+    public String entity;
+    public String syncId;
+    public String op;
+    // last-writer-wins clock: wall time of the change and the peer that made it
+    public long changedAt;
+    public String origin;
+    // row state for upserts; parents are referenced by sync id (device_sync_id, task_sync_id)
+    public Map<String, Object> data = new LinkedHashMap<>();
+}
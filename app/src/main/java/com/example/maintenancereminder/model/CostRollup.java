@@ -0,0 +1,12 @@
+package com.example.maintenancereminder.model;
+
+public class CostRollup {
+    // device or category the row belongs to; unused side stays null
+    public Long deviceId;
+    public String category;
+    // calendar month as yyyymm, 0 for totals over a range
+    public int month;
+    public double totalCost;
+    public int completionCount;
+    public int onTimeCount;
+}
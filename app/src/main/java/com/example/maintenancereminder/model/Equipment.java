@@ -13,6 +13,7 @@ public class Equipment {
     public Long serviceIntervalDays;
     public Long nextServiceDate;
 
-    // calculated for list UI
+    // maintained by triggers on maintenance_tasks, used by the list UI
     public Long nearestTaskDueDate;
+    public int overdueTaskCount;
 }
@@ -0,0 +1,85 @@
+package com.example.maintenancereminder.model;
+
+/**
+ * Projected workload over a horizon, one slot per bucket (a day, or a Monday-based week).
+ * Slot i covers epoch days [startEpochDay + i * bucketDays, startEpochDay + (i + 1) * bucketDays), of
+ * which only those in [horizonStart, horizonEnd) were forecast; see {@link #daysCovered(int)}.
+ */
+public class Forecast {
+    public final long startEpochDay;
+    public final int bucketDays;
+    public final int[] count;
+    // estimated cost from the task's cost field, in kopecks so incremental updates stay exact
+    public final long[] costCents;
+    public final int[] high;
+    public final int[] medium;
+    public final int[] low;
+    public final long horizonStart;
+    public final long horizonEnd;
+
+    public Forecast(long startEpochDay, int bucketDays, int buckets) {
+        this(startEpochDay, bucketDays, buckets, startEpochDay, startEpochDay + (long) bucketDays * buckets);
+    }
+
+    private Forecast(long startEpochDay, int bucketDays, int buckets, long horizonStart, long horizonEnd) {
+        this.startEpochDay = startEpochDay;
+        this.bucketDays = bucketDays;
+        this.count = new int[buckets];
+        this.costCents = new long[buckets];
+        this.high = new int[buckets];
+        this.medium = new int[buckets];
+        this.low = new int[buckets];
+        this.horizonStart = horizonStart;
+        this.horizonEnd = horizonEnd;
+    }
+
+    public int buckets() {
+        return count.length;
+    }
+
+    public double cost(int bucket) {
+        return costCents[bucket] / 100.0;
+    }
+
+    /** Days of the bucket inside the horizon; less than {@link #bucketDays} for a clipped first or last week. */
+    public int daysCovered(int bucket) {
+        long first = Math.max(startEpochDay + (long) bucket * bucketDays, horizonStart);
+        long end = Math.min(startEpochDay + (long) (bucket + 1) * bucketDays, horizonEnd);
+        return (int) Math.max(0, end - first);
+    }
+
+    public boolean isPartial(int bucket) {
+        return daysCovered(bucket) < bucketDays;
+    }
+
+    /**
+     * Per-week totals of a per-day forecast; the first week starts on the Monday on or before the start.
+     * Weeks the horizon only partly covers keep their partial totals and report {@link #isPartial(int)}.
+     */
+    public Forecast weekly() {
+        if (bucketDays != 1) throw new IllegalStateException("weekly() needs a per-day forecast");
+        // epoch day 0 (1970-01-01) was a Thursday
+        long monday = startEpochDay - Math.floorMod(startEpochDay + 3, 7);
+        int offset = (int) (startEpochDay - monday);
+        Forecast weeks = new Forecast(monday, 7, (offset + count.length + 6) / 7, horizonStart, horizonEnd);
+        for (int day = 0; day < count.length; day++) {
+            int w = (offset + day) / 7;
+            weeks.count[w] += count[day];
+            weeks.costCents[w] += costCents[day];
+            weeks.high[w] += high[day];
+            weeks.medium[w] += medium[day];
+            weeks.low[w] += low[day];
+        }
+        return weeks;
+    }
+
+    public Forecast copy() {
+        Forecast copy = new Forecast(startEpochDay, bucketDays, count.length, horizonStart, horizonEnd);
+        System.arraycopy(count, 0, copy.count, 0, count.length);
+        System.arraycopy(costCents, 0, copy.costCents, 0, count.length);
+        System.arraycopy(high, 0, copy.high, 0, count.length);
+        System.arraycopy(medium, 0, copy.medium, 0, count.length);
+        System.arraycopy(low, 0, copy.low, 0, count.length);
+        return copy;
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.maintenancereminder.model;
+
+public class SearchHit {
+    public static final int KIND_EQUIPMENT = 1;
+    public static final int KIND_TASK = 2;
+    public static final int KIND_HISTORY = 3;
+
+    public int kind;
+    // id of the equipment, task or history row, depending on kind
+    public long refId;
+    public long deviceId;
+    public String deviceName;
+    public String label;
+    public String snippet;
+    public int matchCount;
+}
@@ -9,6 +9,7 @@ public class ServiceHistoryEntry {
     public String consumables;
     public Double cost;
     public Long previousDueDate;
+    public boolean archived;
 
     public String taskTitle;
     public String deviceName;
@@ -0,0 +1,219 @@
+package com.example.maintenancereminder.notification;
+
+import android.app.AlarmManager;
+import android.app.Notification;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+
+import com.example.maintenancereminder.MainActivity;
+import com.example.maintenancereminder.R;
+import com.example.maintenancereminder.db.ReminderQueueDao;
+import com.example.maintenancereminder.db.SettingsDao;
+import com.example.maintenancereminder.model.AppSettings;
+import com.example.maintenancereminder.model.MaintenanceTask;
+import com.example.maintenancereminder.ui.DeviceDetailActivity;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Digest mode: reminders that fire are queued instead of posted, and a short while later the queue
+ * is posted as one grouped summary with a child notification per device. At most
+ * {@link AppSettings#digestCap} devices are listed, and two digests are at least
+ * {@link AppSettings#digestIntervalMinutes} apart; whatever fires in between waits for the next one.
+ */
+public final class DigestNotifier {
+    private static final String TAG = "DigestNotifier";
+    public static final String ACTION_FLUSH = "com.example.maintenancereminder.action.DIGEST_FLUSH";
+
+    private static final String GROUP_KEY = "com.example.maintenancereminder.DIGEST";
+    private static final String NOTIFICATION_TAG = "digest";
+    private static final String ACTION_OPEN_DEVICE = "com.example.maintenancereminder.action.OPEN_DIGEST_DEVICE";
+    private static final int SUMMARY_ID = 0;
+    // Per-task alarms of one morning fire within seconds of each other; wait for the rest before posting.
+    private static final long COLLECT_WINDOW_MS = 60_000L;
+
+    private DigestNotifier() {
+    }
+
+    /** Queues reminders that fired in digest mode and arms a flush once the rest of the burst is in. */
+    static void collect(Context context, Collection<Long> taskIds) {
+        enqueue(context, taskIds);
+        scheduleFlush(context, System.currentTimeMillis() + COLLECT_WINDOW_MS);
+    }
+
+    /** Queues reminders there was no time to post and arms a flush right away. */
+    static void defer(Context context, Collection<Long> taskIds) {
+        enqueue(context, taskIds);
+        scheduleFlush(context, System.currentTimeMillis());
+    }
+
+    static void enqueue(Context context, Collection<Long> taskIds) {
+        new ReminderQueueDao(context).enqueue(taskIds, System.currentTimeMillis());
+    }
+
+    /**
+     * Posts the queued reminders, or re-arms the flush if the last digest was too recent or
+     * {@code deadline} ({@link SystemClock#elapsedRealtime()}) has passed. Reminders
+     * whose task was completed or deactivated while they waited are dropped. Runs on the writer;
+     * queue rows are removed only once their notifications are posted, so a failed post keeps them.
+     */
+    static int flush(Context context, long deadline) {
+        cancelFlush(context);
+        SettingsDao settingsDao = new SettingsDao(context);
+        AppSettings settings = settingsDao.getSettings();
+        long now = System.currentTimeMillis();
+        long nextAllowed = settings.lastDigestAt + settings.digestIntervalMinutes * 60_000L;
+        if (settings.digestEnabled && now < nextAllowed && now >= settings.lastDigestAt) {
+            scheduleFlush(context, nextAllowed);
+            return 0;
+        }
+        if (SystemClock.elapsedRealtime() > deadline) {
+            // the writer got to this after the broadcast was let go; the next one posts it
+            scheduleFlush(context, now);
+            return 0;
+        }
+        long start = System.currentTimeMillis();
+        ReminderQueueDao queueDao = new ReminderQueueDao(context);
+        List<ReminderQueueDao.Entry> queued = new ArrayList<>();
+        List<Long> done = new ArrayList<>();
+        for (ReminderQueueDao.Entry e : queueDao.queued()) {
+            if (ReminderReceiver.isStale(e.active, e.nextDueDate, settings.notificationHour, now)) done.add(e.taskId);
+            else queued.add(e);
+        }
+        if (queued.isEmpty()) {
+            queueDao.remove(done);
+            return 0;
+        }
+        if (!settings.digestEnabled) {
+            // switched off while reminders were waiting, or deferred by a receiver that ran out of time
+            List<MaintenanceTask> tasks = new ArrayList<>(queued.size());
+            for (ReminderQueueDao.Entry e : queued) {
+                MaintenanceTask task = new MaintenanceTask();
+                task.id = e.taskId;
+                task.deviceId = e.deviceId;
+                task.title = e.taskTitle;
+                tasks.add(task);
+            }
+            // posted in order; the rest stays queued and a flush is re-armed for it
+            int posted = ReminderReceiver.postTaskNotifications(context, tasks, deadline);
+            for (MaintenanceTask task : tasks.subList(0, posted)) done.add(task.id);
+            queueDao.remove(done);
+            return posted;
+        }
+        int devices = post(context, queued, Math.max(1, settings.digestCap));
+        if (devices == 0) {
+            // notifications are off; keep the reminders for a flush that can post them
+            queueDao.remove(done);
+            return 0;
+        }
+        for (ReminderQueueDao.Entry e : queued) done.add(e.taskId);
+        queueDao.remove(done);
+        settingsDao.updateLastDigestAt(now);
+        Log.d(TAG, "Digest posted: tasks=" + queued.size() + ", devices=" + devices
+                + " in " + (System.currentTimeMillis() - start) + "ms");
+        return queued.size();
+    }
+
+    private static int post(Context context, List<ReminderQueueDao.Entry> queued, int cap) {
+        if (!ReminderReceiver.prepareChannel(context)) return 0;
+        Map<Long, List<ReminderQueueDao.Entry>> byDevice = new LinkedHashMap<>();
+        for (ReminderQueueDao.Entry e : queued) {
+            List<ReminderQueueDao.Entry> tasks = byDevice.get(e.deviceId);
+            if (tasks == null) {
+                tasks = new ArrayList<>();
+                byDevice.put(e.deviceId, tasks);
+            }
+            tasks.add(e);
+        }
+
+        NotificationManagerCompat nm = NotificationManagerCompat.from(context);
+        NotificationCompat.InboxStyle summaryStyle = new NotificationCompat.InboxStyle();
+        int shown = 0;
+        for (List<ReminderQueueDao.Entry> tasks : byDevice.values()) {
+            if (shown == cap) break;
+            ReminderQueueDao.Entry first = tasks.get(0);
+            summaryStyle.addLine(first.deviceName + ": " + tasks.size());
+            nm.notify(NOTIFICATION_TAG, (int) first.deviceId, deviceNotification(context, tasks, cap));
+            shown++;
+        }
+        if (byDevice.size() > shown) summaryStyle.setSummaryText("и ещё устройств: " + (byDevice.size() - shown));
+
+        String title = "Регламентные работы: " + queued.size();
+        PendingIntent openApp = PendingIntent.getActivity(context, 0, new Intent(context, MainActivity.class),
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+        NotificationCompat.Builder summary = new NotificationCompat.Builder(context, ReminderReceiver.CHANNEL_ID)
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setContentTitle(title)
+                .setContentText("Устройств: " + byDevice.size())
+                .setStyle(summaryStyle.setBigContentTitle(title))
+                .setGroup(GROUP_KEY)
+                .setGroupSummary(true)
+                .setGroupAlertBehavior(NotificationCompat.GROUP_ALERT_SUMMARY)
+                .setPriority(NotificationCompat.PRIORITY_HIGH)
+                .setAutoCancel(true)
+                .setContentIntent(openApp);
+        nm.notify(NOTIFICATION_TAG, SUMMARY_ID, summary.build());
+        return byDevice.size();
+    }
+
+    private static Notification deviceNotification(Context context, List<ReminderQueueDao.Entry> tasks, int cap) {
+        ReminderQueueDao.Entry first = tasks.get(0);
+        NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle();
+        int lines = Math.min(cap, tasks.size());
+        for (int i = 0; i < lines; i++) style.addLine(tasks.get(i).taskTitle);
+        if (tasks.size() > lines) style.setSummaryText("и ещё: " + (tasks.size() - lines));
+
+        // own action, so this PendingIntent never replaces the extras of a per-task one with the same request code
+        Intent open = new Intent(context, DeviceDetailActivity.class)
+                .setAction(ACTION_OPEN_DEVICE)
+                .putExtra("equipment_id", first.deviceId);
+        PendingIntent contentIntent = PendingIntent.getActivity(context, (int) first.deviceId, open,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+        return new NotificationCompat.Builder(context, ReminderReceiver.CHANNEL_ID)
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setContentTitle(first.deviceName)
+                .setContentText(tasks.size() == 1 ? first.taskTitle : "Работ к выполнению: " + tasks.size())
+                .setStyle(style)
+                .setGroup(GROUP_KEY)
+                .setGroupAlertBehavior(NotificationCompat.GROUP_ALERT_SUMMARY)
+                .setAutoCancel(true)
+                .setContentIntent(contentIntent)
+                .build();
+    }
+
+    // An already armed flush is kept, so a steady stream of reminders cannot push the digest back forever.
+    private static void scheduleFlush(Context context, long at) {
+        AlarmManager am = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        if (am == null) return;
+        if (PendingIntent.getBroadcast(context, 0, flushIntent(context),
+                PendingIntent.FLAG_NO_CREATE | PendingIntent.FLAG_IMMUTABLE) != null) {
+            return;
+        }
+        PendingIntent pi = PendingIntent.getBroadcast(context, 0, flushIntent(context),
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+        am.setAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, at, pi);
+    }
+
+    private static void cancelFlush(Context context) {
+        PendingIntent pi = PendingIntent.getBroadcast(context, 0, flushIntent(context),
+                PendingIntent.FLAG_NO_CREATE | PendingIntent.FLAG_IMMUTABLE);
+        if (pi == null) return;
+        AlarmManager am = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        if (am != null) am.cancel(pi);
+        pi.cancel();
+    }
+
+    private static Intent flushIntent(Context context) {
+        return new Intent(context, ReminderReceiver.class).setAction(ACTION_FLUSH);
+    }
+}
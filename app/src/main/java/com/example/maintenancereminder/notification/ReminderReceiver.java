@@ -1,6 +1,7 @@
 package com.example.maintenancereminder.notification;
 
 import android.Manifest;
+import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
@@ -9,34 +10,155 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
 
 import androidx.core.app.NotificationCompat;
 import androidx.core.app.NotificationManagerCompat;
 import androidx.core.content.ContextCompat;
 
 import com.example.maintenancereminder.R;
+import com.example.maintenancereminder.db.DatabaseProvider;
+import com.example.maintenancereminder.db.MaintenanceTaskDao;
+import com.example.maintenancereminder.db.SettingsDao;
+import com.example.maintenancereminder.model.AppSettings;
+import com.example.maintenancereminder.model.MaintenanceTask;
 import com.example.maintenancereminder.ui.DeviceDetailActivity;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Handles every reminder broadcast off the main thread: {@link #onReceive} only calls goAsync and
+ * hands the work to a receiver thread, which checks the task against the database before anything
+ * is posted. That check is a read, so a reminder is not held up by an import or archive running on
+ * the writer; writes go to the writer and are waited for only while the budget lasts. Posting stops
+ * {@link #RECEIVE_BUDGET_MS} after the work started; what is left goes to the digest queue.
+ */
 public class ReminderReceiver extends BroadcastReceiver {
+    private static final String TAG = "ReminderReceiver";
     public static final String CHANNEL_ID = "maintenance_channel";
 
+    // A broadcast held with goAsync has about 10 s before the system treats the app as unresponsive.
+    static final long RECEIVE_BUDGET_MS = 5_000L;
+    // An alarm may be delivered slightly before its nominal time.
+    private static final long EARLY_DELIVERY_MS = 60_000L;
+
+    static final ExecutorService RECEIVER_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "reminder-receiver");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static volatile boolean channelReady;
+
     @Override
     public void onReceive(Context context, Intent intent) {
-        long deviceId = intent.getLongExtra("device_id", -1L);
+        PendingResult result = goAsync();
+        Context appContext = context.getApplicationContext();
+        RECEIVER_EXECUTOR.execute(() -> {
+            long started = SystemClock.elapsedRealtime();
+            try {
+                handle(appContext, intent, started + RECEIVE_BUDGET_MS);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Reminder broadcast failed: action=" + intent.getAction(), e);
+            } finally {
+                long elapsed = SystemClock.elapsedRealtime() - started;
+                if (elapsed > RECEIVE_BUDGET_MS) {
+                    Log.w(TAG, "Reminder broadcast over budget: action=" + intent.getAction() + ", " + elapsed + "ms");
+                } else {
+                    Log.d(TAG, "Reminder broadcast handled: action=" + intent.getAction() + ", " + elapsed + "ms");
+                }
+                result.finish();
+            }
+        });
+    }
+
+    private static void handle(Context context, Intent intent, long deadline) {
+        // Both drain state they write back, so they run on the writer, within this broadcast's deadline:
+        // if the writer only gets to them after it, nothing is posted and the reminders go to the digest queue.
+        if (ReminderScheduler.ACTION_COALESCED.equals(intent.getAction())) {
+            runOnWriter(context, () -> ReminderScheduler.onCoalescedAlarm(context, deadline), deadline);
+            return;
+        }
+        if (DigestNotifier.ACTION_FLUSH.equals(intent.getAction())) {
+            runOnWriter(context, () -> DigestNotifier.flush(context, deadline), deadline);
+            return;
+        }
         long taskId = intent.getLongExtra("task_id", -1L);
-        String taskTitle = intent.getStringExtra("task_title");
+        if (taskId <= 0) return;
+        AppSettings settings = new SettingsDao(context).getSettings();
+        MaintenanceTask task = new MaintenanceTaskDao(context).getReminderState(taskId);
+        if (task == null || isStale(task.isActive == 1, task.nextDueDate, settings.notificationHour, System.currentTimeMillis())) {
+            Log.d(TAG, "Dropping stale reminder: taskId=" + taskId);
+            return;
+        }
+        if (settings.digestEnabled) {
+            runOnWriter(context, () -> DigestNotifier.collect(context, Collections.singletonList(taskId)), deadline);
+        } else if (prepareChannel(context) && notify(context, Collections.singletonList(task), deadline) == 0) {
+            runOnWriter(context, () -> DigestNotifier.defer(context, Collections.singletonList(taskId)), deadline);
+        }
+    }
 
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            NotificationChannel channel = new NotificationChannel(CHANNEL_ID, "Maintenance reminders", NotificationManager.IMPORTANCE_HIGH);
-            NotificationManager nm = context.getSystemService(NotificationManager.class);
-            if (nm != null) nm.createNotificationChannel(channel);
+    /**
+     * Queues {@code write} on the database writer and waits for it until {@code deadline}. Past that
+     * the broadcast is let go; the write stays queued and runs once the writer is free.
+     */
+    static void runOnWriter(Context context, Runnable write, long deadline) {
+        Future<?> done = DatabaseProvider.get(context).writeExecutor().submit(write);
+        try {
+            done.get(Math.max(0L, deadline - SystemClock.elapsedRealtime()), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            Log.w(TAG, "Writer busy, reminder work left queued");
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Reminder write failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+    }
 
-        if (Build.VERSION.SDK_INT >= 33 && ContextCompat.checkSelfPermission(context, Manifest.permission.POST_NOTIFICATIONS)
-                != PackageManager.PERMISSION_GRANTED) {
-            return;
+    /** True when the task was deactivated or completed (its reminder moved forward) since the alarm was set. */
+    static boolean isStale(boolean active, long nextDueDate, int notificationHour, long now) {
+        return !active || ReminderScheduler.nominalTrigger(nextDueDate, notificationHour) > now + EARLY_DELIVERY_MS;
+    }
+
+    /**
+     * Posts one notification per task through a single manager until {@code deadline}
+     * ({@link SystemClock#elapsedRealtime()}); the rest are queued for the next digest flush.
+     * Returns the number posted now. Queues through the writer's statements, so writer only.
+     */
+    static int postTaskNotifications(Context context, List<MaintenanceTask> tasks, long deadline) {
+        if (tasks.isEmpty() || !prepareChannel(context)) return 0;
+        int posted = notify(context, tasks, deadline);
+        if (posted < tasks.size()) {
+            List<Long> rest = new ArrayList<>(tasks.size() - posted);
+            for (MaintenanceTask task : tasks.subList(posted, tasks.size())) rest.add(task.id);
+            DigestNotifier.defer(context, rest);
+            Log.w(TAG, "Out of time after " + posted + " notifications, deferred " + rest.size());
+        }
+        return posted;
+    }
+
+    // Posts in order until the deadline; returns how many were posted. The channel must be prepared.
+    private static int notify(Context context, List<MaintenanceTask> tasks, long deadline) {
+        NotificationManagerCompat nm = NotificationManagerCompat.from(context);
+        int posted = 0;
+        for (MaintenanceTask task : tasks) {
+            if (SystemClock.elapsedRealtime() > deadline) break;
+            nm.notify(task.id.intValue(), buildTaskNotification(context, task.deviceId, task.id, task.title));
+            posted++;
         }
+        return posted;
+    }
 
+    private static Notification buildTaskNotification(Context context, long deviceId, long taskId, String taskTitle) {
         Intent openIntent = new Intent(context, DeviceDetailActivity.class);
         if (deviceId > 0) openIntent.putExtra("equipment_id", deviceId);
         if (taskId > 0) openIntent.putExtra("highlight_task_id", taskId);
@@ -54,7 +176,20 @@ public class ReminderReceiver extends BroadcastReceiver {
                 .setPriority(NotificationCompat.PRIORITY_HIGH)
                 .setAutoCancel(true)
                 .setContentIntent(contentIntent);
+        return b.build();
+    }
 
-        NotificationManagerCompat.from(context).notify(taskId > 0 ? (int) taskId : 1, b.build());
+    /** Creates the channel once per process; false when the app may not post notifications. */
+    static boolean prepareChannel(Context context) {
+        if (!channelReady && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationChannel channel = new NotificationChannel(CHANNEL_ID, "Maintenance reminders", NotificationManager.IMPORTANCE_HIGH);
+            NotificationManager nm = context.getSystemService(NotificationManager.class);
+            if (nm != null) {
+                nm.createNotificationChannel(channel);
+                channelReady = true;
+            }
+        }
+        return Build.VERSION.SDK_INT < 33 || ContextCompat.checkSelfPermission(context, Manifest.permission.POST_NOTIFICATIONS)
+                == PackageManager.PERMISSION_GRANTED;
     }
 }
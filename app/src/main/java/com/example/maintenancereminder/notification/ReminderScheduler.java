@@ -5,19 +5,28 @@ import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Build;
+import android.os.SystemClock;
+import android.provider.Settings;
 import android.util.Log;
 
 import com.example.maintenancereminder.db.MaintenanceTaskDao;
+import com.example.maintenancereminder.db.ScheduledAlarmDao;
 import com.example.maintenancereminder.db.SettingsDao;
 import com.example.maintenancereminder.model.AppSettings;
 import com.example.maintenancereminder.model.MaintenanceTask;
+import com.example.maintenancereminder.util.DateCodec;
 
-import java.time.Instant;
-import java.time.LocalDate;
-import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class ReminderScheduler {
     private static final String TAG = "ReminderScheduler";
+    // Distinct action, so the shared alarm never matches a per-task PendingIntent with the same request code.
+    public static final String ACTION_COALESCED = "com.example.maintenancereminder.action.COALESCED_REMINDER";
 
     private static final long SCHEDULE_PAST_GRACE_MS = 5_000L;
 
@@ -45,14 +54,13 @@ public class ReminderScheduler {
 
         Context appContext = context.getApplicationContext();
         AppSettings settings = new SettingsDao(appContext).getSettings();
-        LocalDate dueDate = Instant.ofEpochMilli(task.nextDueDate).atZone(ZoneId.systemDefault()).toLocalDate();
-        long trigger = dueDate.atTime(settings.notificationHour, 0)
-                .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
-
-        long now = System.currentTimeMillis();
-        if (trigger <= now) {
-            trigger = now + SCHEDULE_PAST_GRACE_MS;
+        // In coalesced mode the shared alarm covers every task past the watermark; one that moved back
+        // into an already announced window still gets its own one-off alarm below.
+        if (AppSettings.REMINDERS_COALESCED.equals(settings.reminderMode) && task.nextDueDate > settings.reminderWatermark) {
+            return armCoalesced(appContext, settings);
         }
+        long nominal = nominalTrigger(task.nextDueDate, settings.notificationHour);
+        long trigger = triggerAt(nominal, System.currentTimeMillis());
 
         Log.d(TAG, "Scheduling reminder: taskId=" + task.id
                 + ", deviceId=" + task.deviceId
@@ -66,7 +74,21 @@ public class ReminderScheduler {
         }
 
         PendingIntent pi = buildPendingIntent(appContext, task.id.intValue(), task.deviceId, task.id, task.title);
+        if (!setAlarm(am, trigger, pi, "taskId=" + task.id)) return false;
+        new ScheduledAlarmDao(appContext).record(task.id, nominal);
+        return true;
+    }
+
+    // Due day at the notification hour; this is what the ledger stores.
+    static long nominalTrigger(long dueDate, int notificationHour) {
+        return DateCodec.atHour(DateCodec.epochDay(dueDate), notificationHour);
+    }
+
+    private static long triggerAt(long nominal, long now) {
+        return nominal <= now ? now + SCHEDULE_PAST_GRACE_MS : nominal;
+    }
 
+    private static boolean setAlarm(AlarmManager am, long trigger, PendingIntent pi, String label) {
         try {
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
                 if (am.canScheduleExactAlarms()) {
@@ -75,7 +97,7 @@ public class ReminderScheduler {
                     return true;
                 }
 
-                Log.w(TAG, "Exact alarms are not allowed; scheduling inexact fallback for taskId=" + task.id);
+                Log.w(TAG, "Exact alarms are not allowed; scheduling inexact fallback for " + label);
                 am.setAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, trigger, pi);
                 return true;
             }
@@ -84,31 +106,207 @@ public class ReminderScheduler {
             Log.d(TAG, "Exact alarm scheduled on API <31");
             return true;
         } catch (Exception exactException) {
-            Log.e(TAG, "Failed to schedule exact reminder for taskId=" + task.id, exactException);
+            Log.e(TAG, "Failed to schedule exact reminder for " + label, exactException);
             try {
                 am.setAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, trigger, pi);
-                Log.w(TAG, "Fallback alarm scheduled after exact scheduling failure for taskId=" + task.id);
+                Log.w(TAG, "Fallback alarm scheduled after exact scheduling failure for " + label);
                 return true;
             } catch (Exception fallbackException) {
-                Log.e(TAG, "Failed to schedule fallback reminder for taskId=" + task.id, fallbackException);
+                Log.e(TAG, "Failed to schedule fallback reminder for " + label, fallbackException);
                 return false;
             }
         }
     }
 
+    /**
+     * Switches between one alarm per task and a single shared alarm. Alarms of the old mode are
+     * cancelled and everything is rescheduled in the new one.
+     */
+    public static void setReminderMode(Context context, String mode) {
+        Context appContext = context.getApplicationContext();
+        SettingsDao settingsDao = new SettingsDao(appContext);
+        if (mode.equals(settingsDao.getSettings().reminderMode)) return;
+        settingsDao.updateReminderMode(mode);
+        if (AppSettings.REMINDERS_COALESCED.equals(mode)) {
+            // per-task alarms already announced every day whose reminder time has passed
+            AppSettings settings = settingsDao.getSettings();
+            long announced = windowEnd(System.currentTimeMillis(), settings.notificationHour) - 1;
+            if (announced > settings.reminderWatermark) settingsDao.updateReminderWatermark(announced);
+            List<Long> taskIds = new ArrayList<>();
+            for (MaintenanceTask task : new MaintenanceTaskDao(appContext).getAllActive()) taskIds.add(task.id);
+            cancelTaskReminders(appContext, taskIds);
+        } else {
+            AlarmManager am = (AlarmManager) appContext.getSystemService(Context.ALARM_SERVICE);
+            if (am != null) am.cancel(buildCoalescedIntent(appContext));
+        }
+        rescheduleAll(appContext);
+    }
+
+    /** Points the shared alarm at the earliest task past the watermark, or cancels it when there is none. */
+    private static boolean armCoalesced(Context appContext, AppSettings settings) {
+        AlarmManager am = (AlarmManager) appContext.getSystemService(Context.ALARM_SERVICE);
+        if (am == null) {
+            Log.e(TAG, "armCoalesced failed: AlarmManager is null");
+            return false;
+        }
+        PendingIntent pi = buildCoalescedIntent(appContext);
+        Long nextDue = new MaintenanceTaskDao(appContext).getFirstDueAfter(settings.reminderWatermark);
+        if (nextDue == null) {
+            am.cancel(pi);
+            Log.d(TAG, "Coalesced alarm cleared: no pending tasks after " + settings.reminderWatermark);
+            return true;
+        }
+        long trigger = triggerAt(nominalTrigger(nextDue, settings.notificationHour), System.currentTimeMillis());
+        Log.d(TAG, "Arming coalesced alarm: nextDueDate=" + nextDue + ", triggerMillis=" + trigger);
+        return setAlarm(am, trigger, pi, "coalesced alarm");
+    }
+
+    /**
+     * Handles the shared alarm: reads every active task whose reminder time has passed with one range
+     * query, moves the watermark past them, re-arms for the next one and only then announces them, so
+     * a process killed while posting still has its next alarm. Returns the number of tasks announced.
+     */
+    static int onCoalescedAlarm(Context context, long deadline) {
+        Context appContext = context.getApplicationContext();
+        SettingsDao settingsDao = new SettingsDao(appContext);
+        AppSettings settings = settingsDao.getSettings();
+        // the mode was switched back while this alarm was pending
+        if (!AppSettings.REMINDERS_COALESCED.equals(settings.reminderMode)) return 0;
+
+        long windowEnd = windowEnd(System.currentTimeMillis(), settings.notificationHour);
+        List<MaintenanceTask> due = new MaintenanceTaskDao(appContext).getActiveDueBetween(settings.reminderWatermark, windowEnd);
+        if (settings.digestEnabled) {
+            List<Long> ids = new ArrayList<>(due.size());
+            for (MaintenanceTask task : due) ids.add(task.id);
+            DigestNotifier.enqueue(appContext, ids);
+        }
+        settings.reminderWatermark = Math.max(settings.reminderWatermark, windowEnd - 1);
+        settingsDao.updateReminderWatermark(settings.reminderWatermark);
+        armCoalesced(appContext, settings);
+        if (settings.digestEnabled) {
+            DigestNotifier.flush(appContext, deadline);
+        } else {
+            ReminderReceiver.postTaskNotifications(appContext, due, deadline);
+        }
+        Log.d(TAG, "Coalesced alarm: announced=" + due.size() + ", watermark=" + settings.reminderWatermark);
+        return due.size();
+    }
+
+    // Start of the day after the latest day whose reminder time has passed; everything due before it is announced.
+    static long windowEnd(long now, int notificationHour) {
+        long today = DateCodec.epochDay(now);
+        long lastDay = now >= DateCodec.atHour(today, notificationHour) ? today : today - 1;
+        return DateCodec.startOfDay(lastDay + 1);
+    }
+
     public static void cancelTaskReminder(Context context, long taskId) {
         Context appContext = context.getApplicationContext();
         AlarmManager am = (AlarmManager) appContext.getSystemService(Context.ALARM_SERVICE);
         if (am == null) return;
         PendingIntent pi = buildPendingIntent(appContext, (int) taskId, -1L, taskId, null);
         am.cancel(pi);
+        new ScheduledAlarmDao(appContext).remove(Collections.singletonList(taskId));
     }
 
+    /**
+     * Cancels the reminders of many tasks with one AlarmManager and one intent. Tasks without a
+     * pending reminder are skipped instead of creating a PendingIntent just to cancel it.
+     * Returns the number of reminders that were actually cancelled.
+     */
+    public static int cancelTaskReminders(Context context, Collection<Long> taskIds) {
+        if (taskIds.isEmpty()) return 0;
+        Context appContext = context.getApplicationContext();
+        AlarmManager am = (AlarmManager) appContext.getSystemService(Context.ALARM_SERVICE);
+        if (am == null) return 0;
+        int cancelled = cancelAlarms(appContext, am, taskIds);
+        new ScheduledAlarmDao(appContext).remove(taskIds);
+        return cancelled;
+    }
+
+    private static int cancelAlarms(Context appContext, AlarmManager am, Collection<Long> taskIds) {
+        // PendingIntent matching ignores extras, so one intent serves every request code
+        Intent intent = new Intent(appContext, ReminderReceiver.class);
+        int cancelled = 0;
+        for (long taskId : taskIds) {
+            PendingIntent pi = PendingIntent.getBroadcast(appContext, (int) taskId, intent,
+                    PendingIntent.FLAG_NO_CREATE | PendingIntent.FLAG_IMMUTABLE);
+            if (pi == null) continue;
+            am.cancel(pi);
+            pi.cancel();
+            cancelled++;
+        }
+        return cancelled;
+    }
+
+    /**
+     * Brings the registered alarms in line with the tasks. Per-task mode reads every active task with
+     * its ledger entry in one query and only re-registers alarms whose trigger changed; alarms that
+     * already fired are not announced again. Call it off the main thread.
+     */
     public static void rescheduleAll(Context context) {
-        MaintenanceTaskDao dao = new MaintenanceTaskDao(context);
-        for (MaintenanceTask task : dao.getAllActive()) {
-            scheduleTaskReminder(context, task);
+        long start = SystemClock.elapsedRealtime();
+        Context appContext = context.getApplicationContext();
+        SettingsDao settingsDao = new SettingsDao(appContext);
+        AppSettings settings = settingsDao.getSettings();
+        if (AppSettings.REMINDERS_COALESCED.equals(settings.reminderMode)) {
+            // the watermark stays: as with per-task alarms, what was already announced is not announced again
+            armCoalesced(appContext, settings);
+            return;
+        }
+        AlarmManager am = (AlarmManager) appContext.getSystemService(Context.ALARM_SERVICE);
+        if (am == null) {
+            Log.e(TAG, "rescheduleAll failed: AlarmManager is null");
+            return;
+        }
+        ScheduledAlarmDao ledger = new ScheduledAlarmDao(appContext);
+        // alarms do not survive a reboot, so a ledger written before one describes nothing
+        int bootCount = bootCount(appContext);
+        if (bootCount != settings.alarmLedgerBoot) {
+            ledger.clear();
+            settingsDao.updateAlarmLedgerBoot(bootCount);
         }
+
+        long now = System.currentTimeMillis();
+        Map<Long, Long> recorded = new HashMap<>();
+        int unchanged = 0;
+        for (ScheduledAlarmDao.Entry entry : ledger.getActive()) {
+            long nominal = nominalTrigger(entry.nextDueDate, settings.notificationHour);
+            Long registered = entry.registeredTrigger;
+            if (registered != null && registered == nominal) {
+                unchanged++;
+                continue;
+            }
+            if (registered != null && registered <= now && nominal <= now) {
+                // fired already and would only fire again right away
+                recorded.put(entry.taskId, nominal);
+                continue;
+            }
+            PendingIntent pi = buildPendingIntent(appContext, (int) entry.taskId, entry.deviceId, entry.taskId, entry.title);
+            if (setAlarm(am, triggerAt(nominal, now), pi, "taskId=" + entry.taskId)) {
+                recorded.put(entry.taskId, nominal);
+            }
+        }
+        List<Long> deactivated = ledger.getInactiveWithAlarms();
+        cancelAlarms(appContext, am, deactivated);
+        ledger.apply(recorded, deactivated);
+        Log.d(TAG, "rescheduleAll updated=" + recorded.size() + " unchanged=" + unchanged
+                + " cancelled=" + deactivated.size() + " in " + (SystemClock.elapsedRealtime() - start) + "ms");
+    }
+
+    /** Forgets what is registered and registers everything again, e.g. after the database was replaced. */
+    public static void rescheduleAllFromScratch(Context context) {
+        new ScheduledAlarmDao(context.getApplicationContext()).clear();
+        rescheduleAll(context);
+    }
+
+    private static int bootCount(Context context) {
+        return Settings.Global.getInt(context.getContentResolver(), Settings.Global.BOOT_COUNT, -1);
+    }
+
+    private static PendingIntent buildCoalescedIntent(Context context) {
+        Intent i = new Intent(context, ReminderReceiver.class).setAction(ACTION_COALESCED);
+        return PendingIntent.getBroadcast(context, 0, i,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
     }
 
     private static PendingIntent buildPendingIntent(Context context, int requestCode, Long deviceId, Long taskId, String taskTitle) {
@@ -0,0 +1,45 @@
+package com.example.maintenancereminder.notification;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.maintenancereminder.db.DueDateRezoner;
+import com.example.maintenancereminder.util.DateCodec;
+
+import java.time.ZoneId;
+
+/**
+ * Time zone or clock changes: moves the stored due dates into the new zone and re-arms the
+ * reminders. The alarm ledger makes the re-arm touch only reminders whose trigger time moved.
+ * The broadcast waits for the writer only {@link ReminderReceiver#RECEIVE_BUDGET_MS}; a migration
+ * queued behind an import finishes after the broadcast has been let go.
+ */
+public class TimeChangeReceiver extends BroadcastReceiver {
+    private static final String TAG = "TimeChangeReceiver";
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        DateCodec.reset();
+        PendingResult result = goAsync();
+        Context appContext = context.getApplicationContext();
+        String zoneId = intent.getStringExtra(Intent.EXTRA_TIMEZONE);
+        ReminderReceiver.RECEIVER_EXECUTOR.execute(() -> {
+            try {
+                ReminderReceiver.runOnWriter(appContext, () -> {
+                    try {
+                        ZoneId zone = zoneId != null ? ZoneId.of(zoneId) : ZoneId.systemDefault();
+                        new DueDateRezoner(appContext).run(zone);
+                        ReminderScheduler.rescheduleAll(appContext);
+                    } catch (RuntimeException e) {
+                        Log.e(TAG, "Handling " + intent.getAction() + " failed", e);
+                    }
+                }, SystemClock.elapsedRealtime() + ReminderReceiver.RECEIVE_BUDGET_MS);
+            } finally {
+                result.finish();
+            }
+        });
+    }
+}
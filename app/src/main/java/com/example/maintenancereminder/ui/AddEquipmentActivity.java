@@ -1,6 +1,8 @@
 package com.example.maintenancereminder.ui;
 
 import android.content.Intent;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
 import android.os.Bundle;
 import android.os.Looper;
 import android.util.Log;
@@ -13,11 +15,15 @@ import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.PickVisualMediaRequest;
 import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.ViewModelProvider;
 
 import com.example.maintenancereminder.R;
+import com.example.maintenancereminder.db.DatabaseProvider;
 import com.example.maintenancereminder.db.EquipmentDao;
 import com.example.maintenancereminder.model.Equipment;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -37,7 +43,7 @@ public class AddEquipmentActivity extends AppCompatActivity {
             registerForActivityResult(new ActivityResultContracts.PickVisualMedia(), uri -> {
                 if (uri != null) {
                     selectedPhotoUri = uri.toString();
-                    ivPhoto.setImageURI(uri);
+                    showPhoto(uri);
                     try {
                         getContentResolver().takePersistableUriPermission(uri, Intent.FLAG_GRANT_READ_URI_PERMISSION);
                     } catch (SecurityException ex) {
@@ -74,17 +80,35 @@ public class AddEquipmentActivity extends AppCompatActivity {
     }
 
     private void loadForEdit(long id) {
-        editingEquipment = dao.getById(id);
-        if (editingEquipment == null) {
-            Toast.makeText(this, "Устройство не найдено", Toast.LENGTH_SHORT).show();
-            finish();
-            return;
-        }
-        etName.setText(editingEquipment.name);
-        etCategory.setText(editingEquipment.category);
-        etNote.setText(editingEquipment.notes);
-        selectedPhotoUri = editingEquipment.photoUri;
-        if (selectedPhotoUri != null) ivPhoto.setImageURI(android.net.Uri.parse(selectedPhotoUri));
+        new ViewModelProvider(this).get(EquipmentEditViewModel.class).load(id).observe(this, equipment -> {
+            if (equipment == null) {
+                Toast.makeText(this, "Устройство не найдено", Toast.LENGTH_SHORT).show();
+                finish();
+                return;
+            }
+            editingEquipment = equipment;
+            etName.setText(equipment.name);
+            etCategory.setText(equipment.category);
+            etNote.setText(equipment.notes);
+            selectedPhotoUri = equipment.photoUri;
+            if (selectedPhotoUri != null) showPhoto(Uri.parse(selectedPhotoUri));
+        });
+    }
+
+    // decoding reads the image file, so it stays off the main thread
+    private void showPhoto(Uri uri) {
+        ioExecutor.execute(() -> {
+            Drawable photo = null;
+            try (InputStream in = getContentResolver().openInputStream(uri)) {
+                if (in != null) photo = Drawable.createFromStream(in, uri.toString());
+            } catch (IOException | SecurityException e) {
+                Log.w(TAG, "Cannot load photo uri=" + uri, e);
+            }
+            Drawable loaded = photo;
+            runOnUiThread(() -> {
+                if (loaded != null && uri.toString().equals(selectedPhotoUri)) ivPhoto.setImageDrawable(loaded);
+            });
+        });
     }
 
     private void saveOrUpdate() {
@@ -93,12 +117,14 @@ public class AddEquipmentActivity extends AppCompatActivity {
             Toast.makeText(this, "Введите название устройства", Toast.LENGTH_SHORT).show();
             return;
         }
+        // still loading the device being edited
+        if (editingId != -1L && editingEquipment == null) return;
 
         String category = etCategory.getText().toString().trim();
         String notes = etNote.getText().toString().trim();
         String photoUri = selectedPhotoUri;
 
-        ioExecutor.execute(() -> {
+        DatabaseProvider.get(this).writeExecutor().execute(() -> {
             try {
                 if (editingId == -1L) {
                     Equipment e = new Equipment();
@@ -7,21 +7,15 @@ import android.widget.Toast;
 
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.maintenancereminder.R;
-import com.example.maintenancereminder.db.EquipmentDao;
-import com.example.maintenancereminder.db.MaintenanceRepository;
-import com.example.maintenancereminder.db.MaintenanceTaskDao;
-import com.example.maintenancereminder.model.Equipment;
-import com.example.maintenancereminder.model.MaintenanceTask;
 
 public class DeviceDetailActivity extends AppCompatActivity {
     private long deviceId;
-    private EquipmentDao equipmentDao;
-    private MaintenanceTaskDao taskDao;
-    private MaintenanceRepository repository;
+    private DeviceDetailViewModel model;
     private TaskAdapter adapter;
 
     @Override protected void onCreate(Bundle savedInstanceState) {
@@ -29,9 +23,8 @@ public class DeviceDetailActivity extends AppCompatActivity {
         setContentView(R.layout.activity_device_detail);
 
         deviceId = getIntent().getLongExtra("equipment_id", -1L);
-        equipmentDao = new EquipmentDao(this);
-        taskDao = new MaintenanceTaskDao(this);
-        repository = new MaintenanceRepository(this);
+        model = new ViewModelProvider(this).get(DeviceDetailViewModel.class);
+        model.start(deviceId);
 
         adapter = new TaskAdapter(task -> {
             Intent intent = new Intent(this, TaskEditActivity.class);
@@ -42,6 +35,7 @@ public class DeviceDetailActivity extends AppCompatActivity {
         RecyclerView rv = findViewById(R.id.recyclerViewTasks);
         rv.setLayoutManager(new LinearLayoutManager(this));
         rv.setAdapter(adapter);
+        model.content().observe(this, this::show);
 
         findViewById(R.id.btnAddTask).setOnClickListener(v -> {
             Intent intent = new Intent(this, TaskEditActivity.class);
@@ -65,19 +59,24 @@ public class DeviceDetailActivity extends AppCompatActivity {
                 .setTitle("Удалить устройство?")
                 .setMessage("Будут удалены задачи, история и напоминания")
                 .setPositiveButton("Удалить", (d, w) -> {
-                    repository.deleteDevice(this, deviceId);
+                    model.deleteDevice();
                     finish();
                 }).setNegativeButton("Отмена", null).show());
     }
 
     @Override protected void onResume() {
         super.onResume();
-        Equipment e = equipmentDao.getById(deviceId);
-        if (e == null) { finish(); return; }
-        ((TextView) findViewById(R.id.tvDeviceTitle)).setText(e.name);
-        ((TextView) findViewById(R.id.tvDeviceMeta)).setText((e.category == null ? "" : e.category) + "\n" + (e.notes == null ? "" : e.notes));
-        java.util.List<MaintenanceTask> tasks = taskDao.getByDevice(deviceId);
-        adapter.submit(tasks);
-        if (tasks.isEmpty()) Toast.makeText(this, "Нет регламентных работ", Toast.LENGTH_SHORT).show();
+        model.refresh();
+    }
+
+    private void show(DeviceDetailViewModel.Content content) {
+        if (content.device == null) { finish(); return; }
+        ((TextView) findViewById(R.id.tvDeviceTitle)).setText(content.device.name);
+        ((TextView) findViewById(R.id.tvDeviceMeta)).setText(content.meta);
+        adapter.submit(content.tasks);
+        if (content.tasks.isEmpty() && !content.hintShown) {
+            content.hintShown = true;
+            Toast.makeText(this, "Нет регламентных работ", Toast.LENGTH_SHORT).show();
+        }
     }
 }
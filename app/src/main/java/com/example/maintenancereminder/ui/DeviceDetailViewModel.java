@@ -0,0 +1,89 @@
+package com.example.maintenancereminder.ui;
+
+import android.app.Application;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.example.maintenancereminder.db.ChangeTracker;
+import com.example.maintenancereminder.db.DataChangeBus;
+import com.example.maintenancereminder.db.DatabaseProvider;
+import com.example.maintenancereminder.db.DbHelper;
+import com.example.maintenancereminder.db.EquipmentDao;
+import com.example.maintenancereminder.db.MaintenanceRepository;
+import com.example.maintenancereminder.db.MaintenanceTaskDao;
+import com.example.maintenancereminder.model.Equipment;
+
+import java.util.List;
+
+/** Device header and task rows, loaded on the read executor and kept across configuration changes. */
+public class DeviceDetailViewModel extends AndroidViewModel {
+
+    public static final class Content {
+        /** Null once the device is gone. */
+        public final Equipment device;
+        public final String meta;
+        public final List<TaskAdapter.Row> tasks;
+        // the empty-list hint is shown once per load, not again after a rotation
+        boolean hintShown;
+
+        Content(Equipment device, String meta, List<TaskAdapter.Row> tasks) {
+            this.device = device;
+            this.meta = meta;
+            this.tasks = tasks;
+        }
+    }
+
+    private final DatabaseProvider provider;
+    private final EquipmentDao equipmentDao;
+    private final MaintenanceTaskDao taskDao;
+    private final MutableLiveData<Content> content = new MutableLiveData<>();
+    private long deviceId = -1L;
+    private ChangeTracker changes;
+
+    public DeviceDetailViewModel(@NonNull Application application) {
+        super(application);
+        provider = DatabaseProvider.get(application);
+        equipmentDao = new EquipmentDao(application);
+        taskDao = new MaintenanceTaskDao(application);
+    }
+
+    public void start(long deviceId) {
+        if (changes != null) return;
+        this.deviceId = deviceId;
+        changes = new ChangeTracker(deviceId, DbHelper.TABLE_EQUIPMENT, DbHelper.TABLE_TASKS);
+        provider.changeBus().register(changes);
+    }
+
+    public LiveData<Content> content() {
+        return content;
+    }
+
+    /** Re-queries when the device or its tasks changed since the last load. */
+    public void refresh() {
+        if (!changes.consume()) return;
+        long id = deviceId;
+        provider.readExecutor().execute(() -> {
+            Equipment e = equipmentDao.getById(id);
+            if (e == null) {
+                content.postValue(new Content(null, null, null));
+                return;
+            }
+            String meta = (e.category == null ? "" : e.category) + "\n" + (e.notes == null ? "" : e.notes);
+            content.postValue(new Content(e, meta, TaskAdapter.rows(taskDao.getByDevice(id))));
+        });
+    }
+
+    public void deleteDevice() {
+        Application app = getApplication();
+        long id = deviceId;
+        provider.writeExecutor().execute(() -> new MaintenanceRepository(app).deleteDevice(app, id));
+    }
+
+    @Override
+    protected void onCleared() {
+        if (changes != null) provider.changeBus().unregister(changes);
+    }
+}
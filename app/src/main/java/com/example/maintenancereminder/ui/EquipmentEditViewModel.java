@@ -0,0 +1,31 @@
+package com.example.maintenancereminder.ui;
+
+import android.app.Application;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.example.maintenancereminder.db.DatabaseProvider;
+import com.example.maintenancereminder.db.EquipmentDao;
+import com.example.maintenancereminder.model.Equipment;
+
+/** The device being edited, read once on the read executor; null when it no longer exists. */
+public class EquipmentEditViewModel extends AndroidViewModel {
+    private final EquipmentDao dao;
+    private MutableLiveData<Equipment> equipment;
+
+    public EquipmentEditViewModel(@NonNull Application application) {
+        super(application);
+        dao = new EquipmentDao(application);
+    }
+
+    public LiveData<Equipment> load(long id) {
+        if (equipment == null) {
+            equipment = new MutableLiveData<>();
+            DatabaseProvider.get(getApplication()).readExecutor().execute(() -> equipment.postValue(dao.getById(id)));
+        }
+        return equipment;
+    }
+}
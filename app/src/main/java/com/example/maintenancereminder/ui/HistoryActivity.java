@@ -1,38 +1,97 @@
 package com.example.maintenancereminder.ui;
 
 import android.os.Bundle;
+import android.view.View;
+import android.widget.Button;
+import android.widget.CheckBox;
+import android.widget.TextView;
+import android.widget.Toast;
 
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
+
+import androidx.annotation.NonNull;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.maintenancereminder.R;
-import com.example.maintenancereminder.db.HistoryDao;
+import com.example.maintenancereminder.io.JournalExporter;
 
 public class HistoryActivity extends AppCompatActivity {
+    private static final int PREFETCH_DISTANCE = 20;
+
+    private HistoryViewModel model;
+    private HistoryAdapter adapter;
+    private long deviceId;
+
+    private final ActivityResultLauncher<String> csvExportLauncher =
+            registerForActivityResult(new ActivityResultContracts.CreateDocument("text/csv"), uri -> {
+                if (uri != null) model.export(uri, JournalExporter.Format.CSV);
+            });
+    private final ActivityResultLauncher<String> jsonExportLauncher =
+            registerForActivityResult(new ActivityResultContracts.CreateDocument("application/json"), uri -> {
+                if (uri != null) model.export(uri, JournalExporter.Format.JSON);
+            });
+
     @Override protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_history);
 
-        long deviceId = getIntent().getLongExtra("device_id", -1L);
-        HistoryDao dao = new HistoryDao(this);
-        HistoryAdapter adapter = new HistoryAdapter(entry -> new AlertDialog.Builder(this)
+        deviceId = getIntent().getLongExtra("device_id", -1L);
+        model = new ViewModelProvider(this).get(HistoryViewModel.class);
+        adapter = new HistoryAdapter(entry -> new AlertDialog.Builder(this)
                 .setMessage("Удалить запись истории?")
-                .setPositiveButton("Удалить", (d, w) -> { dao.deleteById(entry.id); recreate(); })
+                .setPositiveButton("Удалить", (d, w) -> model.delete(entry))
                 .setNegativeButton("Отмена", null)
                 .show());
 
         RecyclerView rv = findViewById(R.id.recyclerViewHistory);
-        rv.setLayoutManager(new LinearLayoutManager(this));
+        LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        rv.setLayoutManager(layoutManager);
         rv.setAdapter(adapter);
+        rv.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                if (layoutManager.findLastVisibleItemPosition() >= model.loadedCount() - PREFETCH_DISTANCE) {
+                    model.loadNextPage();
+                }
+            }
+        });
+        model.rows().observe(this, adapter::submit);
+
+        CheckBox cbArchive = findViewById(R.id.cbShowArchive);
+        cbArchive.setChecked(model.includeArchived());
+        cbArchive.setOnCheckedChangeListener((b, checked) -> model.setIncludeArchived(checked));
+
+        TextView tvExportProgress = findViewById(R.id.tvExportProgress);
+        Button btnExport = findViewById(R.id.btnExport);
+        model.exportProgress().observe(this, progress -> {
+            btnExport.setText(progress == null ? "Экспорт" : "Отменить");
+            tvExportProgress.setVisibility(progress == null ? View.GONE : View.VISIBLE);
+            tvExportProgress.setText(progress);
+        });
+        model.exportResult().observe(this, message -> {
+            if (message == null) return;
+            Toast.makeText(this, message, Toast.LENGTH_LONG).show();
+            model.exportResultShown();
+        });
+        btnExport.setOnClickListener(v -> {
+            if (model.exporting()) {
+                model.cancelExport();
+                return;
+            }
+            new AlertDialog.Builder(this)
+                    .setTitle("Формат экспорта")
+                    .setItems(new String[]{"CSV", "JSON"}, (d, which) -> {
+                        if (which == 0) csvExportLauncher.launch("journal.csv");
+                        else jsonExportLauncher.launch("journal.json");
+                    })
+                    .show();
+        });
 
-        if (deviceId > 0) {
-            setTitle("История устройства");
-            adapter.submit(dao.getByDevice(deviceId));
-        } else {
-            setTitle("Общий журнал");
-            adapter.submit(dao.getAll());
-        }
+        setTitle(deviceId > 0 ? "История устройства" : "Общий журнал");
+        model.start(deviceId);
     }
 }
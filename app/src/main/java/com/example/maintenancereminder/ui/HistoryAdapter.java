@@ -6,32 +6,69 @@ import android.view.ViewGroup;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.maintenancereminder.R;
 import com.example.maintenancereminder.model.ServiceHistoryEntry;
-import com.example.maintenancereminder.util.DateUtils;
+import com.example.maintenancereminder.util.DateCodec;
 
 import java.util.ArrayList;
 import java.util.List;
 
-public class HistoryAdapter extends RecyclerView.Adapter<HistoryAdapter.VH> {
+public class HistoryAdapter extends ListAdapter<HistoryAdapter.Row, HistoryAdapter.VH> {
     public interface Listener { void onLongClick(ServiceHistoryEntry entry); }
-    private final List<ServiceHistoryEntry> items = new ArrayList<>();
+
+    /** Display text of one journal entry, built off the main thread by {@link #rows}. */
+    public static final class Row {
+        final long id;
+        final ServiceHistoryEntry entry;
+        final String title;
+        final String meta;
+
+        Row(ServiceHistoryEntry e) {
+            this.id = e.id;
+            this.entry = e;
+            this.title = (e.deviceName == null ? "" : e.deviceName + " • ") + e.taskTitle;
+            this.meta = DateCodec.label("Выполнено: ", e.completionDate, e.archived ? " • архив" : null);
+        }
+    }
+
+    private static final DiffUtil.ItemCallback<Row> DIFF = new DiffUtil.ItemCallback<>() {
+        @Override public boolean areItemsTheSame(@NonNull Row a, @NonNull Row b) { return a.id == b.id; }
+        @Override public boolean areContentsTheSame(@NonNull Row a, @NonNull Row b) { return a.title.equals(b.title) && a.meta.equals(b.meta); }
+    };
+
     private final Listener listener;
-    public HistoryAdapter(Listener listener) { this.listener = listener; }
-    public void submit(List<ServiceHistoryEntry> data) { items.clear(); items.addAll(data); notifyDataSetChanged(); }
+
+    public HistoryAdapter(Listener listener) { super(DIFF); this.listener = listener; setHasStableIds(true); }
+
+    public static List<Row> rows(List<ServiceHistoryEntry> entries) {
+        List<Row> rows = new ArrayList<>(entries.size());
+        for (ServiceHistoryEntry e : entries) rows.add(new Row(e));
+        return rows;
+    }
+
+    public void submit(List<Row> rows) { submitList(rows); }
+
+    @Override public long getItemId(int position) { return getItem(position).id; }
     @NonNull @Override public VH onCreateViewHolder(@NonNull ViewGroup parent, int viewType) { return new VH(LayoutInflater.from(parent.getContext()).inflate(R.layout.item_history, parent, false)); }
-    @Override public void onBindViewHolder(@NonNull VH holder, int position) { holder.bind(items.get(position)); }
-    @Override public int getItemCount() { return items.size(); }
+    @Override public void onBindViewHolder(@NonNull VH holder, int position) { holder.bind(getItem(position)); }
 
     class VH extends RecyclerView.ViewHolder {
         TextView tvTitle, tvMeta;
-        VH(@NonNull View itemView) { super(itemView); tvTitle = itemView.findViewById(R.id.tvHistoryTitle); tvMeta = itemView.findViewById(R.id.tvHistoryMeta); }
-        void bind(ServiceHistoryEntry e) {
-            tvTitle.setText((e.deviceName == null ? "" : e.deviceName + " • ") + e.taskTitle);
-            tvMeta.setText("Выполнено: " + DateUtils.formatDate(e.completionDate));
-            itemView.setOnLongClickListener(v -> { listener.onLongClick(e); return true; });
+        Row row;
+        VH(@NonNull View itemView) {
+            super(itemView);
+            tvTitle = itemView.findViewById(R.id.tvHistoryTitle);
+            tvMeta = itemView.findViewById(R.id.tvHistoryMeta);
+            itemView.setOnLongClickListener(v -> { if (row != null) listener.onLongClick(row.entry); return true; });
+        }
+        void bind(Row row) {
+            this.row = row;
+            tvTitle.setText(row.title);
+            tvMeta.setText(row.meta);
         }
     }
 }
@@ -0,0 +1,182 @@
+package com.example.maintenancereminder.ui;
+
+import android.app.Application;
+import android.net.Uri;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.OperationCanceledException;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.example.maintenancereminder.db.DatabaseProvider;
+import com.example.maintenancereminder.db.HistoryDao;
+import com.example.maintenancereminder.io.JournalExporter;
+import com.example.maintenancereminder.model.ServiceHistoryEntry;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keyset-paged journal. The loaded pages and the paging cursor live here, so a rotation keeps the
+ * scroll position's data instead of starting from the first page. A running export lives here too:
+ * it survives a rotation and is cancelled only when the screen is left. State changes on the main
+ * thread only.
+ */
+public class HistoryViewModel extends AndroidViewModel {
+    private static final String TAG = "HistoryViewModel";
+    private static final int PAGE_SIZE = 50;
+
+    private final DatabaseProvider provider;
+    private final HistoryDao dao;
+    private final Handler main = new Handler(Looper.getMainLooper());
+    private final MutableLiveData<List<HistoryAdapter.Row>> rows = new MutableLiveData<>(Collections.emptyList());
+    private long deviceId;
+    private boolean started;
+    private boolean loading;
+    private boolean endReached;
+    private boolean includeArchived;
+    // bumped on every reload so pages requested for the previous list are dropped
+    private int generation;
+    // null while no export runs; progress text otherwise
+    private final MutableLiveData<String> exportProgress = new MutableLiveData<>();
+    // outcome of the last export until the screen has shown it
+    private final MutableLiveData<String> exportResult = new MutableLiveData<>();
+    private CancellationSignal exportSignal;
+
+    public HistoryViewModel(@NonNull Application application) {
+        super(application);
+        provider = DatabaseProvider.get(application);
+        dao = new HistoryDao(application);
+    }
+
+    public void start(long deviceId) {
+        if (started) return;
+        started = true;
+        this.deviceId = deviceId;
+        loadNextPage();
+    }
+
+    public LiveData<List<HistoryAdapter.Row>> rows() {
+        return rows;
+    }
+
+    public int loadedCount() {
+        return rows.getValue().size();
+    }
+
+    public boolean includeArchived() {
+        return includeArchived;
+    }
+
+    public void setIncludeArchived(boolean include) {
+        if (include == includeArchived) return;
+        includeArchived = include;
+        generation++;
+        loading = false;
+        endReached = false;
+        rows.setValue(Collections.emptyList());
+        loadNextPage();
+    }
+
+    public void loadNextPage() {
+        if (loading || endReached) return;
+        loading = true;
+        List<HistoryAdapter.Row> current = rows.getValue();
+        ServiceHistoryEntry after = current.isEmpty() ? null : current.get(current.size() - 1).entry;
+        boolean archived = includeArchived;
+        int requested = generation;
+        long device = deviceId;
+        provider.readExecutor().execute(() -> {
+            List<HistoryAdapter.Row> page = HistoryAdapter.rows(dao.getPage(device, after, PAGE_SIZE, archived));
+            main.post(() -> {
+                if (requested != generation) return;
+                loading = false;
+                endReached = page.size() < PAGE_SIZE;
+                List<HistoryAdapter.Row> loaded = rows.getValue();
+                List<HistoryAdapter.Row> next = new ArrayList<>(loaded.size() + page.size());
+                next.addAll(loaded);
+                next.addAll(page);
+                rows.setValue(next);
+            });
+        });
+    }
+
+    public LiveData<String> exportProgress() {
+        return exportProgress;
+    }
+
+    public LiveData<String> exportResult() {
+        return exportResult;
+    }
+
+    public void exportResultShown() {
+        exportResult.setValue(null);
+    }
+
+    public boolean exporting() {
+        return exportSignal != null;
+    }
+
+    public void export(Uri uri, JournalExporter.Format format) {
+        if (exportSignal != null) return;
+        CancellationSignal signal = new CancellationSignal();
+        exportSignal = signal;
+        exportProgress.setValue("Экспорт…");
+        Application app = getApplication();
+        boolean archived = includeArchived;
+        long device = deviceId;
+        provider.readExecutor().execute(() -> {
+            String message;
+            try (OutputStream out = app.getContentResolver().openOutputStream(uri)) {
+                if (out == null) throw new IOException("Cannot open " + uri);
+                JournalExporter.ExportResult result = new JournalExporter(app).export(out, format, device, archived,
+                        (written, total) -> exportProgress.postValue("Экспорт: " + written + " из " + total),
+                        signal);
+                message = "Экспортировано записей: " + result.rowsWritten;
+            } catch (OperationCanceledException e) {
+                message = "Экспорт отменён";
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Journal export failed for uri=" + uri, e);
+                message = "Не удалось экспортировать журнал";
+            }
+            String done = message;
+            main.post(() -> {
+                exportSignal = null;
+                exportProgress.setValue(null);
+                exportResult.setValue(done);
+            });
+        });
+    }
+
+    public void cancelExport() {
+        if (exportSignal != null) exportSignal.cancel();
+    }
+
+    @Override
+    protected void onCleared() {
+        cancelExport();
+    }
+
+    public void delete(ServiceHistoryEntry entry) {
+        provider.writeExecutor().execute(() -> {
+            if (dao.delete(entry) <= 0) return;
+            main.post(() -> {
+                List<HistoryAdapter.Row> next = new ArrayList<>(rows.getValue());
+                for (int i = 0; i < next.size(); i++) {
+                    if (next.get(i).entry != entry) continue;
+                    next.remove(i);
+                    rows.setValue(next);
+                    return;
+                }
+            });
+        });
+    }
+}
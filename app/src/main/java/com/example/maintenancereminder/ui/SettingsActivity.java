@@ -1,37 +1,120 @@
 package com.example.maintenancereminder.ui;
 
+import android.content.Context;
 import android.os.Bundle;
+import android.widget.CheckBox;
+import android.widget.EditText;
 import android.widget.RadioGroup;
 import android.widget.Toast;
 
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.ViewModelProvider;
 
 import com.example.maintenancereminder.R;
-import com.example.maintenancereminder.db.SettingsDao;
+import com.example.maintenancereminder.db.DatabaseProvider;
+import com.example.maintenancereminder.db.SnapshotManager;
+import com.example.maintenancereminder.model.AppSettings;
 import com.example.maintenancereminder.notification.ReminderScheduler;
 
+import java.io.File;
+import java.util.List;
+
 public class SettingsActivity extends AppCompatActivity {
     @Override protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_settings);
-        SettingsDao dao = new SettingsDao(this);
+        SettingsViewModel model = new ViewModelProvider(this).get(SettingsViewModel.class);
         RadioGroup rg = findViewById(R.id.rgTimePreset);
 
-        String preset = dao.getSettings().notificationPreset;
-        if ("DAY".equals(preset)) rg.check(R.id.rbDay);
-        else if ("EVENING".equals(preset)) rg.check(R.id.rbEvening);
-        else rg.check(R.id.rbMorning);
+        EditText etArchiveDays = findViewById(R.id.etArchiveAfterDays);
+        CheckBox cbCoalesced = findViewById(R.id.cbCoalescedReminders);
+        CheckBox cbDigest = findViewById(R.id.cbDigest);
+        EditText etDigestCap = findViewById(R.id.etDigestCap);
+        EditText etDigestInterval = findViewById(R.id.etDigestInterval);
+
+        model.settings().observe(this, settings -> {
+            // after a rotation the views restore what the user has typed; only the first load fills them
+            if (!model.takeFormFill()) return;
+            etArchiveDays.setText(String.valueOf(settings.archiveAfterDays));
+            cbCoalesced.setChecked(AppSettings.REMINDERS_COALESCED.equals(settings.reminderMode));
+            cbDigest.setChecked(settings.digestEnabled);
+            etDigestCap.setText(String.valueOf(settings.digestCap));
+            etDigestInterval.setText(String.valueOf(settings.digestIntervalMinutes));
+            String preset = settings.notificationPreset;
+            if ("DAY".equals(preset)) rg.check(R.id.rbDay);
+            else if ("EVENING".equals(preset)) rg.check(R.id.rbEvening);
+            else rg.check(R.id.rbMorning);
+        });
 
         findViewById(R.id.btnSaveSettings).setOnClickListener(v -> {
+            // nothing to compare against until the stored settings have loaded
+            if (model.settings().getValue() == null) return;
             int checked = rg.getCheckedRadioButtonId();
             String p = "MORNING";
             int hour = 9;
             if (checked == R.id.rbDay) { p = "DAY"; hour = 14; }
             if (checked == R.id.rbEvening) { p = "EVENING"; hour = 19; }
-            dao.update(p, hour);
-            ReminderScheduler.rescheduleAll(this);
+            model.save(p, hour, cbDigest.isChecked(),
+                    parseNonNegative(etDigestCap.getText().toString()),
+                    parseNonNegative(etDigestInterval.getText().toString()),
+                    cbCoalesced.isChecked() ? AppSettings.REMINDERS_COALESCED : AppSettings.REMINDERS_PER_TASK,
+                    parseNonNegative(etArchiveDays.getText().toString()));
             Toast.makeText(this, "Настройки сохранены", Toast.LENGTH_SHORT).show();
             finish();
         });
+
+        SnapshotManager snapshots = new SnapshotManager(this);
+        findViewById(R.id.btnTakeSnapshot).setOnClickListener(v -> {
+            Context app = getApplicationContext();
+            snapshots.takeSnapshot((result, error) -> runOnUiThread(() -> Toast.makeText(app, error != null
+                    ? "Не удалось создать снимок"
+                    : "Снимок создан: " + result.sizeBytes / 1024 + " КБ за " + result.durationMs + " мс",
+                    Toast.LENGTH_LONG).show()));
+        });
+        findViewById(R.id.btnRestoreSnapshot).setOnClickListener(v -> chooseSnapshot(snapshots));
+    }
+
+    private void chooseSnapshot(SnapshotManager snapshots) {
+        DatabaseProvider.get(this).readExecutor().execute(() -> {
+            List<File> files = snapshots.listSnapshots();
+            runOnUiThread(() -> showSnapshots(snapshots, files));
+        });
+    }
+
+    private void showSnapshots(SnapshotManager snapshots, List<File> files) {
+        if (files.isEmpty()) {
+            Toast.makeText(this, "Снимков нет", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        String[] names = new String[files.size()];
+        for (int i = 0; i < names.length; i++) names[i] = files.get(i).getName();
+        new AlertDialog.Builder(this)
+                .setTitle("Восстановить из снимка")
+                .setItems(names, (d, which) -> new AlertDialog.Builder(this)
+                        .setMessage("Текущие данные будут заменены снимком " + names[which])
+                        .setPositiveButton("Восстановить", (d2, w2) -> restore(snapshots, files.get(which)))
+                        .setNegativeButton("Отмена", null)
+                        .show())
+                .show();
+    }
+
+    private void restore(SnapshotManager snapshots, File snapshot) {
+        Context app = getApplicationContext();
+        snapshots.restore(snapshot, (restored, error) -> {
+            if (error == null) ReminderScheduler.rescheduleAllFromScratch(app);
+            runOnUiThread(() -> Toast.makeText(app, error != null
+                    ? "Не удалось восстановить данные"
+                    : "Данные восстановлены", Toast.LENGTH_LONG).show());
+        });
+    }
+
+    /** Days, minutes or a count from a number field; blank or garbled input reads as 0. */
+    private static int parseNonNegative(String text) {
+        try {
+            return Math.max(0, Integer.parseInt(text.trim()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
     }
 }
@@ -0,0 +1,77 @@
+package com.example.maintenancereminder.ui;
+
+import android.app.Application;
+import android.os.Handler;
+import android.os.Looper;
+import android.widget.Toast;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.example.maintenancereminder.db.DatabaseProvider;
+import com.example.maintenancereminder.db.HistoryArchiver;
+import com.example.maintenancereminder.db.SettingsDao;
+import com.example.maintenancereminder.model.AppSettings;
+import com.example.maintenancereminder.notification.ReminderScheduler;
+
+/**
+ * Settings as last read from the database. Saving runs on the writer together with the reminder
+ * rescheduling it causes, so the screen can close immediately.
+ */
+public class SettingsViewModel extends AndroidViewModel {
+    private final DatabaseProvider provider;
+    private final SettingsDao dao;
+    private MutableLiveData<AppSettings> settings;
+    private boolean formFilled;
+
+    public SettingsViewModel(@NonNull Application application) {
+        super(application);
+        provider = DatabaseProvider.get(application);
+        dao = new SettingsDao(application);
+    }
+
+    public LiveData<AppSettings> settings() {
+        if (settings == null) {
+            settings = new MutableLiveData<>();
+            provider.readExecutor().execute(() -> settings.postValue(dao.getSettings()));
+        }
+        return settings;
+    }
+
+    /** True only the first time it is called: the screen fills its fields from the stored settings once. */
+    public boolean takeFormFill() {
+        if (formFilled) return false;
+        formFilled = true;
+        return true;
+    }
+
+    /** Call after {@link #settings()} has delivered; changes are compared against that value. */
+    public void save(String preset, int hour, boolean digestEnabled, int digestCap, int digestIntervalMinutes,
+                     String reminderMode, int archiveAfterDays) {
+        AppSettings before = settings.getValue();
+        Application app = getApplication();
+        provider.writeExecutor().execute(() -> {
+            dao.update(preset, hour);
+            dao.updateDigest(digestEnabled, digestCap, digestIntervalMinutes);
+            if (!reminderMode.equals(before.reminderMode)) {
+                ReminderScheduler.setReminderMode(app, reminderMode);
+            } else {
+                ReminderScheduler.rescheduleAll(app);
+            }
+            if (archiveAfterDays != before.archiveAfterDays) {
+                dao.updateArchiveAfterDays(archiveAfterDays);
+                if (archiveAfterDays > 0) archiveNow(app);
+            }
+        });
+    }
+
+    private static void archiveNow(Application app) {
+        Handler main = new Handler(Looper.getMainLooper());
+        new HistoryArchiver(app).runRetention(result -> {
+            if (result.rowsArchived > 0) main.post(() ->
+                    Toast.makeText(app, "Перенесено в архив: " + result.rowsArchived, Toast.LENGTH_SHORT).show());
+        });
+    }
+}
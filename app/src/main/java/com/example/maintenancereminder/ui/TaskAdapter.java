@@ -6,38 +6,73 @@ import android.view.ViewGroup;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.maintenancereminder.R;
 import com.example.maintenancereminder.model.MaintenanceTask;
-import com.example.maintenancereminder.util.DateUtils;
+import com.example.maintenancereminder.util.DateCodec;
 
 import java.util.ArrayList;
 import java.util.List;
 
-public class TaskAdapter extends RecyclerView.Adapter<TaskAdapter.VH> {
+public class TaskAdapter extends ListAdapter<TaskAdapter.Row, TaskAdapter.VH> {
     public interface Listener { void onClick(MaintenanceTask task); }
-    private final List<MaintenanceTask> items = new ArrayList<>();
+
+    /** Display text of one task, built off the main thread by {@link #rows}. */
+    public static final class Row {
+        final long id;
+        final MaintenanceTask task;
+        final String title;
+        final String meta;
+
+        Row(MaintenanceTask task) {
+            this.id = task.id;
+            this.task = task;
+            this.title = task.title + " [" + task.priority + "]";
+            this.meta = DateCodec.label("Следующая дата: ", task.nextDueDate);
+        }
+    }
+
+    private static final DiffUtil.ItemCallback<Row> DIFF = new DiffUtil.ItemCallback<>() {
+        @Override public boolean areItemsTheSame(@NonNull Row a, @NonNull Row b) { return a.id == b.id; }
+        @Override public boolean areContentsTheSame(@NonNull Row a, @NonNull Row b) { return a.title.equals(b.title) && a.meta.equals(b.meta); }
+    };
+
     private final Listener listener;
 
-    public TaskAdapter(Listener listener) { this.listener = listener; }
+    public TaskAdapter(Listener listener) { super(DIFF); this.listener = listener; setHasStableIds(true); }
+
+    public static List<Row> rows(List<MaintenanceTask> tasks) {
+        List<Row> rows = new ArrayList<>(tasks.size());
+        for (MaintenanceTask task : tasks) rows.add(new Row(task));
+        return rows;
+    }
 
-    public void submit(List<MaintenanceTask> data) { items.clear(); items.addAll(data); notifyDataSetChanged(); }
+    public void submit(List<Row> rows) { submitList(rows); }
+
+    @Override public long getItemId(int position) { return getItem(position).id; }
 
     @NonNull @Override public VH onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         return new VH(LayoutInflater.from(parent.getContext()).inflate(R.layout.item_task, parent, false));
     }
 
-    @Override public void onBindViewHolder(@NonNull VH holder, int position) { holder.bind(items.get(position)); }
-    @Override public int getItemCount() { return items.size(); }
+    @Override public void onBindViewHolder(@NonNull VH holder, int position) { holder.bind(getItem(position)); }
 
     class VH extends RecyclerView.ViewHolder {
         TextView tvTitle, tvMeta;
-        VH(@NonNull View itemView) { super(itemView); tvTitle = itemView.findViewById(R.id.tvTaskTitle); tvMeta = itemView.findViewById(R.id.tvTaskMeta); }
-        void bind(MaintenanceTask task) {
-            tvTitle.setText(task.title + " [" + task.priority + "]");
-            tvMeta.setText("Следующая дата: " + DateUtils.formatDate(task.nextDueDate));
-            itemView.setOnClickListener(v -> listener.onClick(task));
+        Row row;
+        VH(@NonNull View itemView) {
+            super(itemView);
+            tvTitle = itemView.findViewById(R.id.tvTaskTitle);
+            tvMeta = itemView.findViewById(R.id.tvTaskMeta);
+            itemView.setOnClickListener(v -> { if (row != null) listener.onClick(row.task); });
+        }
+        void bind(Row row) {
+            this.row = row;
+            tvTitle.setText(row.title);
+            tvMeta.setText(row.meta);
         }
     }
 }
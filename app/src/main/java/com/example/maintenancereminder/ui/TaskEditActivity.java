@@ -12,8 +12,10 @@ import android.widget.Toast;
 
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.ViewModelProvider;
 
 import com.example.maintenancereminder.R;
+import com.example.maintenancereminder.db.DatabaseProvider;
 import com.example.maintenancereminder.db.MaintenanceRepository;
 import com.example.maintenancereminder.db.MaintenanceTaskDao;
 import com.example.maintenancereminder.model.MaintenanceTask;
@@ -23,7 +25,6 @@ import com.example.maintenancereminder.util.DateUtils;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 public class TaskEditActivity extends AppCompatActivity {
     private static final String TAG = "TaskEditActivity";
@@ -33,7 +34,7 @@ public class TaskEditActivity extends AppCompatActivity {
     private MaintenanceTaskDao dao;
     private MaintenanceRepository repository;
     private MaintenanceTask editing;
-    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+    private ExecutorService writer;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -41,6 +42,7 @@ public class TaskEditActivity extends AppCompatActivity {
         setContentView(R.layout.activity_task_edit);
         dao = new MaintenanceTaskDao(this);
         repository = new MaintenanceRepository(this);
+        writer = DatabaseProvider.get(this).writeExecutor();
 
         deviceId = getIntent().getLongExtra("device_id", -1L);
         if (deviceId == -1L) {
@@ -55,22 +57,27 @@ public class TaskEditActivity extends AppCompatActivity {
         spPriority.setAdapter(new ArrayAdapter<>(this, android.R.layout.simple_spinner_dropdown_item, new String[]{"LOW", "MEDIUM", "HIGH"}));
 
         if (taskId != -1L) {
-            editing = dao.getById(taskId);
-            if (editing != null) {
-                ((EditText) findViewById(R.id.etTaskTitle)).setText(editing.title);
-                ((EditText) findViewById(R.id.etIntervalValue)).setText(String.valueOf(editing.intervalValue));
-                ((EditText) findViewById(R.id.etStartDate)).setText(DateUtils.formatDate(editing.nextDueDate));
-                setSpinnerSelection(spUnit, editing.intervalUnit == null ? "DAYS" : editing.intervalUnit);
-                setSpinnerSelection(spPriority, editing.priority);
+            new ViewModelProvider(this).get(TaskEditViewModel.class).load(taskId).observe(this, task -> {
+                if (task == null) {
+                    Toast.makeText(this, "Задача не найдена", Toast.LENGTH_SHORT).show();
+                    finish();
+                    return;
+                }
+                editing = task;
+                ((EditText) findViewById(R.id.etTaskTitle)).setText(task.title);
+                ((EditText) findViewById(R.id.etIntervalValue)).setText(String.valueOf(task.intervalValue));
+                ((EditText) findViewById(R.id.etStartDate)).setText(DateUtils.formatDate(task.nextDueDate));
+                setSpinnerSelection(spUnit, task.intervalUnit == null ? "DAYS" : task.intervalUnit);
+                setSpinnerSelection(spPriority, task.priority);
                 updateCalculatedNextDueDate();
-            }
+            });
         }
 
         Button btnComplete = findViewById(R.id.btnCompleteTask);
         btnComplete.setOnClickListener(v -> completeTask());
         btnComplete.setEnabled(taskId != -1L);
 
-        findViewById(R.id.btnRollback).setOnClickListener(v -> ioExecutor.execute(() -> {
+        findViewById(R.id.btnRollback).setOnClickListener(v -> writer.execute(() -> {
             try {
                 if (taskId != -1L && repository.rollbackLastCompletion(this, taskId)) {
                     runOnUiThread(() -> Toast.makeText(this, "Последнее выполнение отменено", Toast.LENGTH_SHORT).show());
@@ -101,6 +108,8 @@ public class TaskEditActivity extends AppCompatActivity {
             Log.e(TAG, "saveTask failed: invalid deviceId=" + deviceId);
             return;
         }
+        // an existing task that is still loading would otherwise be inserted as a new one
+        if (taskId != -1L && editing == null) return;
 
         String title = ((EditText) findViewById(R.id.etTaskTitle)).getText().toString().trim();
         String intervalStr = ((EditText) findViewById(R.id.etIntervalValue)).getText().toString().trim();
@@ -138,7 +147,7 @@ public class TaskEditActivity extends AppCompatActivity {
         task.isActive = 1;
         final Context appContext = getApplicationContext();
 
-        ioExecutor.execute(() -> {
+        writer.execute(() -> {
             try {
                 if (editing == null) {
                     long id = dao.insertOrThrow(task);
@@ -175,7 +184,7 @@ public class TaskEditActivity extends AppCompatActivity {
             return;
         }
 
-        ioExecutor.execute(() -> {
+        writer.execute(() -> {
             try {
                 if (editing.intervalUnit == null) {
                     editing.intervalUnit = "DAYS";
@@ -193,7 +202,7 @@ public class TaskEditActivity extends AppCompatActivity {
     }
 
     private void deleteTask() {
-        ioExecutor.execute(() -> {
+        writer.execute(() -> {
             try {
                 int deleted = repository.deleteTask(this, taskId);
                 runOnUiThread(() -> {
@@ -238,10 +247,4 @@ public class TaskEditActivity extends AppCompatActivity {
         int pos = adapter.getPosition(value);
         if (pos >= 0) spinner.setSelection(pos);
     }
-
-    @Override
-    protected void onDestroy() {
-        super.onDestroy();
-        ioExecutor.shutdown();
-    }
 }
@@ -0,0 +1,31 @@
+package com.example.maintenancereminder.ui;
+
+import android.app.Application;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.example.maintenancereminder.db.DatabaseProvider;
+import com.example.maintenancereminder.db.MaintenanceTaskDao;
+import com.example.maintenancereminder.model.MaintenanceTask;
+
+/** The task being edited, read once on the read executor; null when it no longer exists. */
+public class TaskEditViewModel extends AndroidViewModel {
+    private final MaintenanceTaskDao dao;
+    private MutableLiveData<MaintenanceTask> task;
+
+    public TaskEditViewModel(@NonNull Application application) {
+        super(application);
+        dao = new MaintenanceTaskDao(application);
+    }
+
+    public LiveData<MaintenanceTask> load(long id) {
+        if (task == null) {
+            task = new MutableLiveData<>();
+            DatabaseProvider.get(getApplication()).readExecutor().execute(() -> task.postValue(dao.getById(id)));
+        }
+        return task;
+    }
+}
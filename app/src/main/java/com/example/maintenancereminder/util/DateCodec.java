@@ -0,0 +1,214 @@
+package com.example.maintenancereminder.util;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+
+/**
+ * Epoch-millis / epoch-day conversions in the system zone without java.time objects on the hot path.
+ * The UTC offset is cached per stretch between two zone transitions, so a conversion is a range check
+ * and some arithmetic; only instants within a day of a transition fall back to java.time. Formatted
+ * dates (and adapter labels built around them) come from a small cache keyed by epoch day, so binding
+ * a list row allocates nothing once its day has been seen.
+ *
+ * Call {@link #reset()} when the time zone changes.
+ */
+public final class DateCodec {
+    public static final long DAY_MS = 86_400_000L;
+    private static final long HOUR_MS = 3_600_000L;
+    private static final int SPAN_SLOTS = 4;
+    private static final int TEXT_SLOTS = 1024;
+    private static final DateTimeFormatter FALLBACK_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    /** [fromUtc, toUtc) with a single offset. */
+    private static final class Span {
+        final ZoneRules rules;
+        final long fromUtc;
+        final long toUtc;
+        final long offsetMs;
+
+        Span(ZoneRules rules, long fromUtc, long toUtc, long offsetMs) {
+            this.rules = rules;
+            this.fromUtc = fromUtc;
+            this.toUtc = toUtc;
+            this.offsetMs = offsetMs;
+        }
+
+        boolean contains(long utc) {
+            return utc >= fromUtc && utc < toUtc;
+        }
+
+        // at least a day away from both transitions, so a local time here maps to exactly one instant
+        boolean containsWithMargin(long utc) {
+            return (fromUtc == Long.MIN_VALUE || utc - fromUtc >= DAY_MS)
+                    && (toUtc == Long.MAX_VALUE || toUtc - utc >= DAY_MS);
+        }
+    }
+
+    private static final class Text {
+        final long epochDay;
+        final String prefix;
+        final String suffix;
+        final String text;
+
+        Text(long epochDay, String prefix, String suffix, String text) {
+            this.epochDay = epochDay;
+            this.prefix = prefix;
+            this.suffix = suffix;
+            this.text = text;
+        }
+    }
+
+    private static volatile ZoneId zone;
+    private static volatile ZoneRules rules;
+    // entries are immutable; a racing write only costs a recomputation
+    private static final Span[] spans = new Span[SPAN_SLOTS];
+    private static int nextSpan;
+    private static final Text[] texts = new Text[TEXT_SLOTS];
+
+    private DateCodec() {
+    }
+
+    /** Drops everything derived from the previous zone. */
+    public static void reset() {
+        zone = null;
+        rules = null;
+    }
+
+    /** Local calendar day of {@code millis}, as days since 1970-01-01. */
+    public static long epochDay(long millis) {
+        return Math.floorDiv(millis + span(millis).offsetMs, DAY_MS);
+    }
+
+    /** First instant of the local day. */
+    public static long startOfDay(long epochDay) {
+        return localToUtc(epochDay * DAY_MS);
+    }
+
+    /** {@code hour}:00 local time on the given day. */
+    public static long atHour(long epochDay, int hour) {
+        return localToUtc(epochDay * DAY_MS + hour * HOUR_MS);
+    }
+
+    /** yyyy-MM-dd of the local day of {@code millis}. */
+    public static String format(long millis) {
+        return label(null, millis, null);
+    }
+
+    /** ISO-8601 local date-time of {@code millis} with the offset in effect then, e.g. 2024-03-01T09:30:00+03:00. */
+    public static String formatDateTime(long millis) {
+        ZoneOffset offset = ZoneOffset.ofTotalSeconds((int) (span(millis).offsetMs / 1000L));
+        return OffsetDateTime.ofInstant(Instant.ofEpochMilli(millis), offset).format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+    }
+
+    public static String label(String prefix, long millis) {
+        return label(prefix, millis, null);
+    }
+
+    /**
+     * {@code prefix + format(millis) + suffix}, cached. Prefix and suffix are matched by identity,
+     * so pass constants.
+     */
+    public static String label(String prefix, long millis, String suffix) {
+        long day = epochDay(millis);
+        int slot = (int) ((day ^ (day >>> 32)) * 31 + System.identityHashCode(prefix) * 17
+                + System.identityHashCode(suffix)) & (TEXT_SLOTS - 1);
+        Text cached = texts[slot];
+        if (cached != null && cached.epochDay == day && cached.prefix == prefix && cached.suffix == suffix) {
+            return cached.text;
+        }
+        String date = formatDay(day);
+        String text = prefix == null && suffix == null ? date
+                : (prefix == null ? "" : prefix) + date + (suffix == null ? "" : suffix);
+        texts[slot] = new Text(day, prefix, suffix, text);
+        return text;
+    }
+
+    private static String formatDay(long epochDay) {
+        // days to civil date (H. Hinnant), valid for the proleptic Gregorian calendar
+        long z = epochDay + 719_468;
+        long era = Math.floorDiv(z, 146_097);
+        long doe = z - era * 146_097;
+        long yoe = (doe - doe / 1460 + doe / 36_524 - doe / 146_096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+        if (year < 0 || year > 9999) return LocalDate.ofEpochDay(epochDay).format(FALLBACK_FORMAT);
+        char[] c = new char[10];
+        int y = (int) year;
+        c[0] = (char) ('0' + y / 1000);
+        c[1] = (char) ('0' + y / 100 % 10);
+        c[2] = (char) ('0' + y / 10 % 10);
+        c[3] = (char) ('0' + y % 10);
+        c[4] = '-';
+        c[5] = (char) ('0' + month / 10);
+        c[6] = (char) ('0' + month % 10);
+        c[7] = '-';
+        c[8] = (char) ('0' + day / 10);
+        c[9] = (char) ('0' + day % 10);
+        return new String(c);
+    }
+
+    private static long localToUtc(long localMillis) {
+        long guess = localMillis - span(localMillis).offsetMs;
+        Span s = span(guess);
+        long utc = localMillis - s.offsetMs;
+        if (s.contains(utc) && s.containsWithMargin(utc)) return utc;
+        // near a transition: let java.time resolve gaps and overlaps
+        LocalDateTime local = LocalDateTime.ofEpochSecond(Math.floorDiv(localMillis, 1000L),
+                (int) Math.floorMod(localMillis, 1000L) * 1_000_000, ZoneOffset.UTC);
+        return local.atZone(zone()).toInstant().toEpochMilli();
+    }
+
+    private static Span span(long utc) {
+        ZoneRules current = rules();
+        for (Span s : spans) {
+            if (s != null && s.rules == current && s.contains(utc)) return s;
+        }
+        Span loaded = load(current, utc);
+        spans[nextSpan++ & (SPAN_SLOTS - 1)] = loaded;
+        return loaded;
+    }
+
+    private static Span load(ZoneRules r, long utc) {
+        Instant at = Instant.ofEpochMilli(utc);
+        ZoneOffset offset = r.getOffset(at);
+        long offsetMs = offset.getTotalSeconds() * 1000L;
+        if (r.isFixedOffset()) return new Span(r, Long.MIN_VALUE, Long.MAX_VALUE, offsetMs);
+        ZoneOffsetTransition prev = r.previousTransition(at);
+        ZoneOffsetTransition next = r.nextTransition(at);
+        long from = Long.MIN_VALUE;
+        if (prev != null) {
+            // exactly on a transition, previousTransition returns the one before it
+            from = prev.getOffsetAfter().equals(offset) ? prev.toEpochSecond() * 1000L : utc;
+        }
+        long to = next == null ? Long.MAX_VALUE : next.toEpochSecond() * 1000L;
+        return new Span(r, from, to, offsetMs);
+    }
+
+    private static ZoneRules rules() {
+        ZoneRules r = rules;
+        if (r == null) {
+            r = zone().getRules();
+            rules = r;
+        }
+        return r;
+    }
+
+    private static ZoneId zone() {
+        ZoneId z = zone;
+        if (z == null) {
+            z = ZoneId.systemDefault();
+            zone = z;
+        }
+        return z;
+    }
+}
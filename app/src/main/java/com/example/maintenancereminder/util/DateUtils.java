@@ -1,19 +1,11 @@
 package com.example.maintenancereminder.util;
 
-import java.time.Instant;
 import java.time.LocalDate;
-import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
 
 public class DateUtils {
-    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-
     public static long calculateNextDueDate(long baseMillis, long intervalValue, String unit) {
-        LocalDate baseDate = Instant.ofEpochMilli(baseMillis).atZone(ZoneId.systemDefault()).toLocalDate();
-        return calculateNextDueDate(baseDate, intervalValue, unit)
-                .atStartOfDay(ZoneId.systemDefault())
-                .toInstant()
-                .toEpochMilli();
+        LocalDate baseDate = LocalDate.ofEpochDay(DateCodec.epochDay(baseMillis));
+        return DateCodec.startOfDay(calculateNextDueDate(baseDate, intervalValue, unit).toEpochDay());
     }
 
     public static LocalDate calculateNextDueDate(LocalDate baseDate, long intervalValue, String unit) {
@@ -40,9 +32,6 @@ public class DateUtils {
     }
 
     public static String formatDate(long millis) {
-        return Instant.ofEpochMilli(millis)
-                .atZone(ZoneId.systemDefault())
-                .toLocalDate()
-                .format(FORMATTER);
+        return DateCodec.format(millis);
     }
 }
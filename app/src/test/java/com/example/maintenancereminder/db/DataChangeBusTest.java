@@ -0,0 +1,39 @@
+package com.example.maintenancereminder.db;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DataChangeBusTest {
+
+    @Test
+    public void publishInsideTransactionIsDeliveredAfterOutermostEnd() {
+        DataChangeBus bus = new DataChangeBus();
+        ChangeTracker tracker = new ChangeTracker(7L, DbHelper.TABLE_TASKS);
+        bus.register(tracker);
+        tracker.consume();
+
+        bus.beginTransaction();
+        bus.beginTransaction();
+        bus.publish(7L, DbHelper.TABLE_TASKS);
+        bus.endTransaction();
+        assertFalse(tracker.consume());
+        bus.endTransaction();
+        assertTrue(tracker.consume());
+    }
+
+    @Test
+    public void mixedDevicesWidenToAllDevices() {
+        DataChangeBus bus = new DataChangeBus();
+        ChangeTracker tracker = new ChangeTracker(7L, DbHelper.TABLE_HISTORY);
+        bus.register(tracker);
+        tracker.consume();
+
+        bus.beginTransaction();
+        bus.publish(7L, DbHelper.TABLE_TASKS);
+        bus.publish(8L, DbHelper.TABLE_HISTORY);
+        bus.endTransaction();
+        assertTrue(tracker.consume());
+    }
+}
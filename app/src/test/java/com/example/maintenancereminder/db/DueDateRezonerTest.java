@@ -0,0 +1,158 @@
+package com.example.maintenancereminder.db;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * {@link DueDateRezoner#shift} and the statements of an interrupted migration, run in the order
+ * {@link DueDateRezoner#run} issues them.
+ */
+public class DueDateRezonerTest {
+    private static final ZoneId MOSCOW = ZoneId.of("Europe/Moscow");
+    private static final ZoneId VLADIVOSTOK = ZoneId.of("Asia/Vladivostok");
+    private static final ZoneId SANTIAGO = ZoneId.of("America/Santiago");
+    private static final LocalDate MAY_1 = LocalDate.of(2024, 5, 1);
+
+    private Connection connection;
+
+    @Before
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        try (Statement st = connection.createStatement()) {
+            st.execute("PRAGMA foreign_keys = ON");
+            for (String ddl : DbSchema.createStatements()) st.execute(ddl);
+            st.execute("UPDATE " + DbHelper.TABLE_SETTINGS + " SET date_zone = '" + MOSCOW.getId() + "' WHERE id = 1");
+            st.execute("INSERT INTO " + DbHelper.TABLE_EQUIPMENT + " (name) VALUES ('Pump')");
+        }
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Test
+    public void shiftKeepsTheWallClockTime() {
+        long moscowMidnight = midnight(MAY_1, MOSCOW);
+        assertEquals(midnight(MAY_1, VLADIVOSTOK), DueDateRezoner.shift(moscowMidnight, MOSCOW, VLADIVOSTOK));
+        assertEquals(moscowMidnight, DueDateRezoner.shift(moscowMidnight, MOSCOW, MOSCOW));
+        assertEquals(moscowMidnight, DueDateRezoner.shift(
+                DueDateRezoner.shift(moscowMidnight, MOSCOW, VLADIVOSTOK), VLADIVOSTOK, MOSCOW));
+    }
+
+    @Test
+    public void shiftIntoAGapKeepsTheDay() {
+        // Santiago skips from 00:00 to 01:00 on 2024-09-08
+        LocalDate gapDay = LocalDate.of(2024, 9, 8);
+        long shifted = DueDateRezoner.shift(midnight(gapDay, MOSCOW), MOSCOW, SANTIAGO);
+        assertEquals(gapDay.atTime(1, 0), LocalDateTime.ofInstant(Instant.ofEpochMilli(shifted), SANTIAGO));
+    }
+
+    @Test
+    public void resumeStopsAtTheRangeFixedWhenTheMigrationBegan() throws SQLException {
+        for (int day = 0; day < 3; day++) addTask(midnight(MAY_1.plusDays(day), MOSCOW));
+        long lastChange = longQuery(DueDateRezoner.SQL_LAST_CHANGE_SEQ);
+
+        execute(DueDateRezoner.SQL_BEGIN, VLADIVOSTOK.getId());
+        shiftChunk(0, 1, null);
+        // interrupted here; a task created in the meantime already has a date in the new zone
+        long created = midnight(MAY_1, VLADIVOSTOK);
+        addTask(created);
+
+        long afterId;
+        long maxId;
+        try (Statement st = connection.createStatement(); ResultSet rs = st.executeQuery(DueDateRezoner.SQL_STATE)) {
+            rs.next();
+            assertEquals(VLADIVOSTOK.getId(), rs.getString("rezone_to"));
+            afterId = rs.getLong("rezone_after_id");
+            maxId = rs.getLong("rezone_max_id");
+        }
+        assertEquals(1, afterId);
+        assertEquals(3, maxId);
+        shiftChunk(afterId, maxId, 0L);
+
+        for (int id = 1; id <= 3; id++) {
+            assertEquals(midnight(MAY_1.plusDays(id - 1), VLADIVOSTOK), nextDue(id));
+        }
+        assertEquals(created, nextDue(4));
+        try (Statement st = connection.createStatement(); ResultSet rs = st.executeQuery(DueDateRezoner.SQL_STATE)) {
+            rs.next();
+            assertEquals(VLADIVOSTOK.getId(), rs.getString("date_zone"));
+            assertNull(rs.getString("rezone_to"));
+            assertEquals(0, rs.getLong("rezone_max_id"));
+        }
+        // only the task created in between was logged for peers
+        assertEquals(lastChange + 1, longQuery("SELECT COUNT(*) FROM " + DbSchema.TABLE_CHANGE_LOG));
+    }
+
+    // What DueDateRezoner.shiftChunk does, in one transaction; finishWatermark marks the last chunk.
+    private void shiftChunk(long afterId, long upTo, Long finishWatermark) throws SQLException {
+        connection.setAutoCommit(false);
+        try {
+            Set<Long> dues = new HashSet<>();
+            try (PreparedStatement st = connection.prepareStatement(DueDateRezoner.SQL_CHUNK_DUES)) {
+                st.setLong(1, afterId);
+                st.setLong(2, upTo);
+                try (ResultSet rs = st.executeQuery()) {
+                    while (rs.next()) dues.add(rs.getLong(1));
+                }
+            }
+            execute(DueDateRezoner.SQL_CREATE_MAP);
+            execute(DueDateRezoner.SQL_CLEAR_MAP);
+            for (long due : dues) execute(DueDateRezoner.SQL_ADD_MAPPING, due, DueDateRezoner.shift(due, MOSCOW, VLADIVOSTOK));
+            long lastChange = longQuery(DueDateRezoner.SQL_LAST_CHANGE_SEQ);
+            execute(DueDateRezoner.SQL_SHIFT_CHUNK, afterId, upTo);
+            execute(DueDateRezoner.SQL_DROP_CHANGES_AFTER, lastChange);
+            if (finishWatermark == null) {
+                execute(DueDateRezoner.SQL_PROGRESS, upTo);
+            } else {
+                execute(DueDateRezoner.SQL_FINISH, finishWatermark);
+            }
+            connection.commit();
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private void addTask(long nextDue) throws SQLException {
+        execute(MaintenanceTaskDao.SQL_INSERT, 1, "Task", 30, "DAYS", nextDue, "MEDIUM", null, null, null, 1);
+    }
+
+    private long nextDue(long taskId) throws SQLException {
+        return longQuery("SELECT next_due_date FROM " + DbHelper.TABLE_TASKS + " WHERE id = " + taskId);
+    }
+
+    private void execute(String sql, Object... args) throws SQLException {
+        try (PreparedStatement st = connection.prepareStatement(sql)) {
+            for (int i = 0; i < args.length; i++) st.setObject(i + 1, args[i]);
+            st.execute();
+        }
+    }
+
+    private long longQuery(String sql) throws SQLException {
+        try (Statement st = connection.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+            return rs.next() ? rs.getLong(1) : 0L;
+        }
+    }
+
+    private static long midnight(LocalDate day, ZoneId zone) {
+        return day.atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+}
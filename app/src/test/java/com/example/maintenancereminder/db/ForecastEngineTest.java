@@ -0,0 +1,168 @@
+package com.example.maintenancereminder.db;
+
+import com.example.maintenancereminder.model.Forecast;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Applies task edits, moves and deletes the way the DAOs publish them and checks that every cached
+ * horizon, patched per device by {@link ForecastEngine}, equals a forecast expanded from scratch.
+ */
+public class ForecastEngineTest {
+    private static final long TODAY = LocalDate.of(2024, 1, 10).toEpochDay();
+    // a past window, one crossing today and one spanning two leap days
+    private static final long[][] HORIZONS = {{TODAY - 40, 30}, {TODAY - 5, 120}, {TODAY, 3 * 366}};
+
+    private final Map<Long, long[]> tasks = new LinkedHashMap<>();
+    private final ForecastEngine.TaskSource source = new ForecastEngine.TaskSource() {
+        @Override
+        public List<long[]> active() {
+            List<long[]> rows = new ArrayList<>();
+            for (long[] row : tasks.values()) rows.add(row.clone());
+            return rows;
+        }
+
+        @Override
+        public List<long[]> activeByDevice(long deviceId) {
+            List<long[]> rows = new ArrayList<>();
+            for (long[] row : tasks.values()) if (row[1] == deviceId) rows.add(row.clone());
+            return rows;
+        }
+    };
+    private DataChangeBus bus;
+    private ForecastEngine engine;
+
+    @Before
+    public void setUp() {
+        bus = new DataChangeBus();
+        engine = new ForecastEngine(source, bus, () -> TODAY);
+        put(1, 1, TODAY - 3, 7, "DAYS", "HIGH", 1500);
+        put(2, 1, TODAY + 2, 2, "WEEKS", "MEDIUM", 0);
+        put(3, 2, LocalDate.of(2024, 1, 31).toEpochDay(), 1, "MONTHS", "LOW", 999);
+        put(4, 2, LocalDate.of(2024, 2, 29).toEpochDay(), 1, "YEARS", "HIGH", 25000);
+        put(5, 3, TODAY + 10, 3, "MONTHS", "MEDIUM", 100);
+        for (long[] horizon : HORIZONS) engine.compute(horizon[0], (int) horizon[1]);
+    }
+
+    @Test
+    public void editsMatchFullRecompute() {
+        tasks.get(1L)[2] = TODAY + 1;
+        tasks.get(1L)[6] = 1234;
+        tasks.get(2L)[3] = 1;
+        tasks.get(2L)[5] = ForecastEngine.priorityCode("LOW");
+        bus.publish(1, DbHelper.TABLE_TASKS);
+        assertMatchesFullRecompute();
+
+        tasks.get(3L)[4] = ForecastEngine.unitCode("DAYS");
+        bus.publish(2, DbHelper.TABLE_TASKS);
+        assertMatchesFullRecompute();
+    }
+
+    @Test
+    public void moveBetweenDevicesMatchesFullRecompute() {
+        // the task DAO publishes only the device the task now belongs to
+        tasks.get(1L)[1] = 3;
+        bus.publish(3, DbHelper.TABLE_TASKS);
+        assertMatchesFullRecompute();
+
+        // the last task of a device moves to a device the snapshot has never seen
+        tasks.get(5L)[1] = 7;
+        tasks.get(1L)[1] = 7;
+        bus.publish(7, DbHelper.TABLE_TASKS);
+        assertMatchesFullRecompute();
+    }
+
+    @Test
+    public void deactivationAndDeleteMatchFullRecompute() {
+        tasks.remove(3L);
+        bus.publish(2, DbHelper.TABLE_TASKS);
+        assertMatchesFullRecompute();
+
+        tasks.remove(4L);
+        bus.publish(2, DbHelper.TABLE_TASKS);
+        assertMatchesFullRecompute();
+
+        tasks.remove(1L);
+        bus.publish(DataChangeBus.ALL_DEVICES, DbHelper.TABLE_TASKS, DbHelper.TABLE_HISTORY);
+        assertMatchesFullRecompute();
+    }
+
+    @Test
+    public void monthsAndYearsClampFromThePreviousOccurrence() {
+        Forecast days = engine.compute(TODAY, 3 * 366);
+        // Jan 31 -> Feb 29 -> Mar 29: each month steps from the clamped day, as completing on time would
+        assertEquals(1, days.low[(int) (LocalDate.of(2024, 2, 29).toEpochDay() - TODAY)]);
+        assertEquals(1, days.low[(int) (LocalDate.of(2024, 3, 29).toEpochDay() - TODAY)]);
+        assertEquals(0, days.low[(int) (LocalDate.of(2024, 3, 31).toEpochDay() - TODAY)]);
+        // Feb 29 -> Feb 28 every following year
+        assertEquals(1, days.high[(int) (LocalDate.of(2025, 2, 28).toEpochDay() - TODAY)]);
+        assertEquals(1, days.high[(int) (LocalDate.of(2026, 2, 28).toEpochDay() - TODAY)]);
+    }
+
+    @Test
+    public void overdueTaskCountsTodayOnly() {
+        Forecast past = engine.compute(TODAY - 40, 30);
+        for (int day = 0; day < past.buckets(); day++) assertEquals(0, past.high[day]);
+        Forecast days = engine.compute(TODAY - 5, 120);
+        assertEquals(0, days.high[2]);
+        assertEquals(1, days.high[5]);
+        assertEquals(1, days.high[12]);
+    }
+
+    @Test
+    public void weeklyMarksClippedWeeks() {
+        // 2024-01-10 is a Wednesday; ten days end on Friday 2024-01-19
+        Forecast days = engine.compute(TODAY, 10);
+        Forecast weeks = days.weekly();
+        assertEquals(2, weeks.buckets());
+        assertEquals(TODAY - 2, weeks.startEpochDay);
+        assertEquals(5, weeks.daysCovered(0));
+        assertEquals(5, weeks.daysCovered(1));
+        assertTrue(weeks.isPartial(0));
+        assertTrue(weeks.isPartial(1));
+        assertEquals(weeks.count[0] + weeks.count[1], sum(days.count));
+
+        Forecast full = engine.compute(LocalDate.of(2024, 1, 8).toEpochDay(), 14).weekly();
+        assertEquals(7, full.daysCovered(1));
+        assertFalse(full.isPartial(0));
+        assertFalse(full.isPartial(1));
+        assertTrue(weeks.copy().isPartial(1));
+    }
+
+    private void assertMatchesFullRecompute() {
+        ForecastEngine fresh = new ForecastEngine(source, new DataChangeBus(), () -> TODAY);
+        for (long[] horizon : HORIZONS) {
+            Forecast expected = fresh.compute(horizon[0], (int) horizon[1]);
+            Forecast actual = engine.compute(horizon[0], (int) horizon[1]);
+            String label = "horizon from " + LocalDate.ofEpochDay(horizon[0]);
+            assertArrayEquals(label, expected.count, actual.count);
+            assertArrayEquals(label, expected.costCents, actual.costCents);
+            assertArrayEquals(label, expected.high, actual.high);
+            assertArrayEquals(label, expected.medium, actual.medium);
+            assertArrayEquals(label, expected.low, actual.low);
+        }
+    }
+
+    private void put(long taskId, long deviceId, long dueDay, long interval, String unit, String priority, long costCents) {
+        tasks.put(taskId, new long[]{taskId, deviceId, dueDay, interval, ForecastEngine.unitCode(unit),
+                ForecastEngine.priorityCode(priority), costCents});
+    }
+
+    private static int sum(int[] values) {
+        int total = 0;
+        for (int value : values) total += value;
+        return total;
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.maintenancereminder.db;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeFalse;
+
+/**
+ * Runs EXPLAIN QUERY PLAN for every DAO statement against a generated fleet database built from
+ * {@link DbSchema} and fails on full table scans, automatic indexes and temp B-tree sorts.
+ */
+@RunWith(Parameterized.class)
+public class QueryPlanAuditTest {
+    private static final int DEVICES = 300;
+    private static final int TASKS_PER_DEVICE = 20;
+    private static final int COMPLETIONS_PER_TASK = 10;
+    private static final long DAY_MS = 24L * 60 * 60 * 1000;
+    private static final long BASE_DATE = 1_600_000_000_000L;
+
+    private static final Pattern TABLE_SCAN = Pattern.compile("^SCAN (TABLE )?\\w+( AS \\w+)?$");
+
+    // Known offenders with the reason they are not fixed by an index alone.
+    // Ranked by a sum over the range, so no index can deliver the order; both sort one row per group, not per month.
+    private static final Map<String, String> KNOWN_ISSUES = Map.of(
+            "ReportDao.categoryTotals", "groups the month range by category and sorts the groups by total cost",
+            "ReportDao.deviceTotals", "groups the month range by device and sorts the groups by total cost");
+
+    private static Connection connection;
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> queries() {
+        return Arrays.asList(new Object[][]{
+                {"DueDateRezoner.chunkDues", DueDateRezoner.SQL_CHUNK_DUES, new Object[]{0, 2000}},
+                {"DueDateRezoner.begin", DueDateRezoner.SQL_BEGIN, new Object[]{"UTC"}},
+                {"EquipmentDao.allWithNearestDue", EquipmentDao.SQL_ALL_WITH_NEAREST_DUE, new Object[]{}},
+                {"EquipmentDao.byId", EquipmentDao.SQL_BY_ID, new Object[]{1}},
+                {"EquipmentDao.idByName", EquipmentDao.SQL_ID_BY_NAME, new Object[]{"Device 1"}},
+                {"EquipmentDao.moveOverdueCutoff", EquipmentDao.SQL_MOVE_OVERDUE_CUTOFF, new Object[]{BASE_DATE, BASE_DATE}},
+                {"MaintenanceTaskDao.byDevice", MaintenanceTaskDao.SQL_BY_DEVICE, new Object[]{1}},
+                {"MaintenanceTaskDao.allActive", MaintenanceTaskDao.SQL_ALL_ACTIVE, new Object[]{}},
+                {"MaintenanceTaskDao.byId", MaintenanceTaskDao.SQL_BY_ID, new Object[]{1}},
+                {"MaintenanceTaskDao.reminderState", MaintenanceTaskDao.SQL_REMINDER_STATE, new Object[]{1}},
+                {"MaintenanceTaskDao.firstDueAfter", MaintenanceTaskDao.SQL_FIRST_DUE_AFTER, new Object[]{BASE_DATE}},
+                {"MaintenanceTaskDao.activeDueBetween", MaintenanceTaskDao.SQL_ACTIVE_DUE_BETWEEN,
+                        new Object[]{BASE_DATE, BASE_DATE + 7 * DAY_MS}},
+                {"MaintenanceTaskDao.update", MaintenanceTaskDao.SQL_UPDATE,
+                        new Object[]{1, "t", 1, "DAYS", BASE_DATE, "LOW", null, null, null, 1, 1}},
+                {"MaintenanceTaskDao.updateNextDue", MaintenanceTaskDao.SQL_UPDATE_NEXT_DUE, new Object[]{BASE_DATE, 1}},
+                {"ForecastEngine.active", ForecastEngine.SQL_ACTIVE, new Object[]{}},
+                {"ForecastEngine.activeByDevice", ForecastEngine.SQL_ACTIVE_BY_DEVICE, new Object[]{1}},
+                {"HistoryDao.lastByTask", HistoryDao.SQL_LAST_BY_TASK, new Object[]{1}},
+                {"HistoryDao.journal", HistoryDao.SQL_JOURNAL, new Object[]{}},
+                {"HistoryDao.journalByDevice", HistoryDao.SQL_JOURNAL_BY_DEVICE, new Object[]{1}},
+                {"HistoryDao.pageFirst", HistoryDao.SQL_PAGE_FIRST, new Object[]{50}},
+                {"HistoryDao.pageAfter", HistoryDao.SQL_PAGE_AFTER, new Object[]{BASE_DATE, BASE_DATE, 100, 50}},
+                {"HistoryDao.devicePageFirst", HistoryDao.SQL_DEVICE_PAGE_FIRST, new Object[]{1, 50}},
+                {"HistoryDao.devicePageAfter", HistoryDao.SQL_DEVICE_PAGE_AFTER, new Object[]{1, BASE_DATE, BASE_DATE, 100, 50}},
+                {"HistoryDao.archiveLastByTask", HistoryDao.SQL_ARCHIVE_LAST_BY_TASK, new Object[]{1}},
+                {"HistoryDao.allPageFirst", HistoryDao.SQL_ALL_PAGE_FIRST, new Object[]{50}},
+                {"HistoryDao.allPageAfter", HistoryDao.SQL_ALL_PAGE_AFTER, new Object[]{BASE_DATE, BASE_DATE, 100, BASE_DATE, BASE_DATE, 100, 50}},
+                {"HistoryDao.allDevicePageFirst", HistoryDao.SQL_ALL_DEVICE_PAGE_FIRST, new Object[]{1, 1, 50}},
+                {"HistoryDao.allDevicePageAfter", HistoryDao.SQL_ALL_DEVICE_PAGE_AFTER,
+                        new Object[]{1, BASE_DATE, BASE_DATE, 100, 1, BASE_DATE, BASE_DATE, 100, 50}},
+                {"HistoryDao.count", HistoryDao.SQL_COUNT, new Object[]{}},
+                {"HistoryDao.countByDevice", HistoryDao.SQL_COUNT_BY_DEVICE, new Object[]{1}},
+                {"HistoryDao.archiveCount", HistoryDao.SQL_ARCHIVE_COUNT, new Object[]{}},
+                {"HistoryDao.archiveCountByDevice", HistoryDao.SQL_ARCHIVE_COUNT_BY_DEVICE, new Object[]{1}},
+                {"HistoryArchiver.copyChunk", HistoryArchiver.SQL_COPY_CHUNK, new Object[]{BASE_DATE, 500}},
+                {"HistoryArchiver.deleteChunk", HistoryArchiver.SQL_DELETE_CHUNK, new Object[]{BASE_DATE, 500}},
+                {"ReportDao.deviceMonths", ReportDao.SQL_DEVICE_MONTHS, new Object[]{1, 202401, 202412}},
+                {"ReportDao.categoryMonths", ReportDao.SQL_CATEGORY_MONTHS, new Object[]{"Category 1", 202401, 202412}},
+                {"ReportDao.monthTotals", ReportDao.SQL_MONTH_TOTALS, new Object[]{202401, 202412}},
+                {"ReportDao.categoryTotals", ReportDao.SQL_CATEGORY_TOTALS, new Object[]{202401, 202412}},
+                {"ReportDao.deviceTotals", ReportDao.SQL_DEVICE_TOTALS, new Object[]{202401, 202412}},
+                {"ScheduledAlarmDao.activeWithAlarms", ScheduledAlarmDao.SQL_ACTIVE_WITH_ALARMS, new Object[]{}},
+                {"ScheduledAlarmDao.inactiveWithAlarms", ScheduledAlarmDao.SQL_INACTIVE_WITH_ALARMS, new Object[]{}},
+                {"SettingsDao.get", SettingsDao.SQL_GET, new Object[]{}},
+                {"SyncEngine.changesSince", SyncEngine.SQL_CHANGES_SINCE, new Object[]{100}},
+                {"SyncEngine.latestChange", SyncEngine.SQL_LATEST_CHANGE, new Object[]{"task", "a1"}},
+                {"SyncEngine.equipmentRow", SyncEngine.SQL_EQUIPMENT_ROW, new Object[]{"a1"}},
+                {"SyncEngine.taskRow", SyncEngine.SQL_TASK_ROW, new Object[]{"a1"}},
+                {"SyncEngine.historyRow", SyncEngine.SQL_HISTORY_ROW, new Object[]{"a1"}},
+                {"SyncEngine.archiveRow", SyncEngine.SQL_ARCHIVE_ROW, new Object[]{"a1"}},
+                {"SyncEngine.cursor", SyncEngine.SQL_CURSOR, new Object[]{"peer"}},
+                {"SyncEngine.taskIdsOfDevice", SyncEngine.SQL_TASK_IDS_OF_DEVICE, new Object[]{"a1"}},
+                {"SettingsDao.update", SettingsDao.SQL_UPDATE, new Object[]{"MORNING", 9}},
+                {"trigger.recomputeNearestDue", DbSchema.recomputeNearestDue("?"), new Object[]{1, 1, 1}},
+                // Lookups SQLite performs for ON DELETE CASCADE; they do not show up in the parent DELETE plan.
+                {"cascade.tasksOfDevice", "SELECT 1 FROM " + DbHelper.TABLE_TASKS + " WHERE device_id=?", new Object[]{1}},
+                {"cascade.historyOfDevice", "SELECT 1 FROM " + DbHelper.TABLE_HISTORY + " WHERE device_id=?", new Object[]{1}},
+                {"cascade.historyOfTask", "SELECT 1 FROM " + DbHelper.TABLE_HISTORY + " WHERE task_id=?", new Object[]{1}},
+        });
+    }
+
+    private final String name;
+    private final String sql;
+    private final Object[] args;
+
+    public QueryPlanAuditTest(String name, String sql, Object[] args) {
+        this.name = name;
+        this.sql = sql;
+        this.args = args;
+    }
+
+    @BeforeClass
+    public static void createDatabase() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        try (Statement st = connection.createStatement()) {
+            st.execute("PRAGMA foreign_keys=ON");
+            for (String ddl : DbSchema.createStatements()) st.execute(ddl);
+        }
+        connection.setAutoCommit(false);
+        Random random = new Random(42);
+        try (PreparedStatement device = connection.prepareStatement(
+                "INSERT INTO " + DbHelper.TABLE_EQUIPMENT + " (name, category) VALUES (?, ?)");
+             PreparedStatement task = connection.prepareStatement(MaintenanceTaskDao.SQL_INSERT);
+             PreparedStatement history = connection.prepareStatement(HistoryDao.SQL_INSERT)) {
+            long taskId = 0;
+            for (int d = 1; d <= DEVICES; d++) {
+                device.setString(1, "Device " + d);
+                device.setString(2, "Category " + (d % 12));
+                device.executeUpdate();
+                for (int t = 0; t < TASKS_PER_DEVICE; t++) {
+                    long interval = 7 + random.nextInt(180);
+                    task.setLong(1, d);
+                    task.setString(2, "Task " + t);
+                    task.setLong(3, interval);
+                    task.setString(4, "DAYS");
+                    task.setLong(5, BASE_DATE + random.nextInt(365) * DAY_MS);
+                    task.setString(6, t % 3 == 0 ? "HIGH" : "MEDIUM");
+                    task.setString(7, null);
+                    task.setDouble(8, random.nextInt(500));
+                    task.setString(9, null);
+                    task.setInt(10, random.nextInt(10) == 0 ? 0 : 1);
+                    task.executeUpdate();
+                    taskId++;
+                    for (int h = 0; h < COMPLETIONS_PER_TASK; h++) {
+                        long completion = BASE_DATE - (h + 1) * interval * DAY_MS;
+                        history.setLong(1, taskId);
+                        history.setLong(2, d);
+                        history.setLong(3, completion);
+                        history.setString(4, null);
+                        history.setString(5, null);
+                        history.setDouble(6, random.nextInt(500));
+                        history.setLong(7, completion);
+                        history.addBatch();
+                    }
+                    history.executeBatch();
+                }
+            }
+        }
+        connection.commit();
+    }
+
+    @AfterClass
+    public static void closeDatabase() throws SQLException {
+        if (connection != null) connection.close();
+    }
+
+    @Test
+    public void planUsesIndexesWithoutTempSort() throws SQLException {
+        assumeFalse(KNOWN_ISSUES.get(name), KNOWN_ISSUES.containsKey(name));
+        List<String> plan = explain();
+        List<String> violations = new ArrayList<>();
+        for (String detail : plan) {
+            if (TABLE_SCAN.matcher(detail).matches()) violations.add("full table scan: " + detail);
+            if (detail.contains("TEMP B-TREE")) violations.add("temp b-tree: " + detail);
+            if (detail.contains("AUTOMATIC")) violations.add("automatic index: " + detail);
+        }
+        if (!violations.isEmpty()) {
+            fail(name + " " + violations + "\nplan: " + plan + "\nsql: " + sql);
+        }
+    }
+
+    private List<String> explain() throws SQLException {
+        List<String> details = new ArrayList<>();
+        try (PreparedStatement st = connection.prepareStatement("EXPLAIN QUERY PLAN " + sql)) {
+            for (int i = 0; i < args.length; i++) st.setObject(i + 1, args[i]);
+            try (ResultSet rs = st.executeQuery()) {
+                while (rs.next()) details.add(rs.getString("detail"));
+            }
+        }
+        return details;
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.maintenancereminder.db;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the arithmetic of the rollup triggers created by {@link DbSchema#createStatements()}: every
+ * insert, update and delete of a completion must leave both rollups equal to a regroup of the history.
+ */
+public class RollupTriggerTest {
+    private static final long DAY_MS = 24L * 60 * 60 * 1000;
+    // 2024-01-31T23:30Z: still January in UTC, already February east of it
+    private static final long END_OF_JANUARY = Instant.parse("2024-01-31T23:30:00Z").toEpochMilli();
+    private static final long MID_MARCH = Instant.parse("2024-03-15T10:00:00Z").toEpochMilli();
+
+    private Connection connection;
+
+    @Before
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        try (Statement st = connection.createStatement()) {
+            st.execute("PRAGMA foreign_keys = ON");
+            for (String ddl : DbSchema.createStatements()) st.execute(ddl);
+            st.execute("INSERT INTO " + DbHelper.TABLE_EQUIPMENT + " (name, category) VALUES ('Pump', 'Water'), ('Boiler', 'Heat')");
+            st.execute("INSERT INTO " + DbHelper.TABLE_TASKS +
+                    " (device_id, title, interval_value, interval_unit, next_due_date, priority, is_active)" +
+                    " VALUES (1, 'Filter', 30, 'DAYS', 0, 'MEDIUM', 1), (2, 'Burner', 1, 'YEARS', 0, 'MEDIUM', 1)");
+        }
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Test
+    public void insertAddsToTheUtcMonth() throws SQLException {
+        // on time: completed the day it was due
+        insert(1, 1, END_OF_JANUARY, 10.0, END_OF_JANUARY - DAY_MS / 2);
+        // late: due a week earlier
+        insert(1, 1, END_OF_JANUARY + DAY_MS, 5.5, END_OF_JANUARY - 7 * DAY_MS);
+        insert(2, 2, MID_MARCH, null, MID_MARCH);
+
+        assertEquals(List.of("1|202401|10.0|1|1", "1|202402|5.5|1|0", "2|202403|0.0|1|1"), deviceRollup());
+        assertEquals(List.of("Heat|202403|0.0|1|1", "Water|202401|10.0|1|1", "Water|202402|5.5|1|0"), categoryRollup());
+        assertRollupsMatchHistory();
+    }
+
+    @Test
+    public void updateMovesBetweenMonthsAndDevices() throws SQLException {
+        insert(1, 1, END_OF_JANUARY, 10.0, END_OF_JANUARY);
+        insert(1, 1, END_OF_JANUARY - DAY_MS, 4.0, END_OF_JANUARY);
+        execute("UPDATE " + DbHelper.TABLE_HISTORY + " SET completion_date = " + MID_MARCH + ", cost = 12.0 WHERE id = 1");
+        assertEquals(List.of("1|202401|4.0|1|1", "1|202403|12.0|1|0"), deviceRollup());
+
+        execute("UPDATE " + DbHelper.TABLE_HISTORY + " SET device_id = 2 WHERE id = 2");
+        assertEquals(List.of("1|202403|12.0|1|0", "2|202401|4.0|1|1"), deviceRollup());
+        assertEquals(List.of("Heat|202401|4.0|1|1", "Water|202403|12.0|1|0"), categoryRollup());
+        assertRollupsMatchHistory();
+    }
+
+    @Test
+    public void deleteRemovesEmptyBuckets() throws SQLException {
+        insert(1, 1, END_OF_JANUARY, 10.0, END_OF_JANUARY);
+        insert(1, 1, END_OF_JANUARY - DAY_MS, 4.0, END_OF_JANUARY);
+        insert(2, 2, MID_MARCH, 7.0, MID_MARCH);
+        execute("DELETE FROM " + DbHelper.TABLE_HISTORY + " WHERE id = 1");
+        assertEquals(List.of("1|202401|4.0|1|1", "2|202403|7.0|1|1"), deviceRollup());
+
+        execute("DELETE FROM " + DbHelper.TABLE_HISTORY + " WHERE id = 2");
+        assertEquals(List.of("2|202403|7.0|1|1"), deviceRollup());
+        assertEquals(List.of("Heat|202403|7.0|1|1"), categoryRollup());
+        assertRollupsMatchHistory();
+    }
+
+    @Test
+    public void archivedCompletionsCountUntilTheArchiveRowGoes() throws SQLException {
+        insert(1, 1, END_OF_JANUARY, 10.0, END_OF_JANUARY);
+        execute("INSERT INTO " + DbSchema.TABLE_HISTORY_ARCHIVE + " SELECT * FROM " + DbHelper.TABLE_HISTORY + " WHERE id = 1");
+        execute("DELETE FROM " + DbHelper.TABLE_HISTORY + " WHERE id = 1");
+        assertEquals(List.of("1|202401|10.0|1|1"), deviceRollup());
+
+        execute("DELETE FROM " + DbSchema.TABLE_HISTORY_ARCHIVE + " WHERE id = 1");
+        assertEquals(List.of(), deviceRollup());
+        assertEquals(List.of(), categoryRollup());
+    }
+
+    private void insert(long taskId, long deviceId, long completion, Double cost, long previousDue) throws SQLException {
+        execute("INSERT INTO " + DbHelper.TABLE_HISTORY + " (task_id, device_id, completion_date, cost, previous_due_date)" +
+                " VALUES (" + taskId + ", " + deviceId + ", " + completion + ", " + cost + ", " + previousDue + ")");
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Statement st = connection.createStatement()) {
+            st.execute(sql);
+        }
+    }
+
+    private List<String> deviceRollup() throws SQLException {
+        return rows("SELECT device_id, month, total_cost, completion_count, on_time_count FROM " +
+                DbSchema.TABLE_ROLLUP_DEVICE + " ORDER BY device_id, month");
+    }
+
+    private List<String> categoryRollup() throws SQLException {
+        return rows("SELECT category, month, total_cost, completion_count, on_time_count FROM " +
+                DbSchema.TABLE_ROLLUP_CATEGORY + " ORDER BY category, month");
+    }
+
+    private void assertRollupsMatchHistory() throws SQLException {
+        List<String> regrouped = rows("SELECT device_id, CAST(strftime('%Y%m', completion_date / 1000, 'unixepoch') AS INTEGER) AS m, " +
+                "SUM(COALESCE(cost, 0.0)), COUNT(*), SUM(completion_date < previous_due_date + " + DAY_MS + ") FROM " +
+                DbHelper.TABLE_HISTORY + " GROUP BY device_id, m ORDER BY device_id, m");
+        assertEquals(regrouped, deviceRollup());
+    }
+
+    private List<String> rows(String sql) throws SQLException {
+        List<String> rows = new ArrayList<>();
+        try (Statement st = connection.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+            int columns = rs.getMetaData().getColumnCount();
+            while (rs.next()) {
+                StringBuilder row = new StringBuilder();
+                for (int i = 1; i <= columns; i++) {
+                    if (i > 1) row.append('|');
+                    row.append(rs.getString(i));
+                }
+                rows.add(row.toString());
+            }
+        }
+        return rows;
+    }
+}
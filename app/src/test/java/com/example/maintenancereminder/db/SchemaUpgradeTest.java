@@ -0,0 +1,144 @@
+package com.example.maintenancereminder.db;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Upgrades a v4 database (the schema shipped before {@link DbSchema} existed) through every
+ * {@link DbSchema#upgradeStatements} step and compares it with a freshly created one. Writes that fire
+ * the history triggers are run after every step, since a device can stay on any intermediate version.
+ */
+public class SchemaUpgradeTest {
+    private static final int FIRST_STEP = 5;
+
+    private Connection upgraded;
+    private Connection fresh;
+
+    @Before
+    public void setUp() throws SQLException {
+        upgraded = open();
+        fresh = open();
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        upgraded.close();
+        fresh.close();
+    }
+
+    @Test
+    public void everyStepKeepsHistoryWritable() throws SQLException {
+        createV4(upgraded);
+        for (int version = FIRST_STEP; version <= DbHelper.DB_VERSION; version++) {
+            upgrade(upgraded, version);
+            try (Statement st = upgraded.createStatement()) {
+                st.execute("INSERT INTO service_history (task_id, device_id, completion_date, previous_due_date) " +
+                        "VALUES (1, 1, 1600000000000, 1600000000000)");
+                st.execute("DELETE FROM service_history WHERE id = (SELECT MIN(id) FROM service_history)");
+                st.execute("UPDATE maintenance_tasks SET next_due_date = next_due_date + 1 WHERE id = 1");
+            } catch (SQLException e) {
+                throw new AssertionError("history write fails at v" + version + ": " + e.getMessage(), e);
+            }
+        }
+        try (Statement st = upgraded.createStatement()) {
+            st.execute("DELETE FROM equipment WHERE id = 2");
+        }
+    }
+
+    @Test
+    public void upgradedSchemaMatchesFreshSchema() throws SQLException {
+        createV4(upgraded);
+        for (int version = FIRST_STEP; version <= DbHelper.DB_VERSION; version++) {
+            upgrade(upgraded, version);
+        }
+        try (Statement st = fresh.createStatement()) {
+            for (String sql : DbSchema.createStatements()) st.execute(sql);
+        }
+        assertEquals(columns(fresh), columns(upgraded));
+        assertEquals(definitions(fresh, "index"), definitions(upgraded, "index"));
+        assertEquals(definitions(fresh, "trigger"), definitions(upgraded, "trigger"));
+    }
+
+    private static Connection open() throws SQLException {
+        Connection c = DriverManager.getConnection("jdbc:sqlite::memory:");
+        try (Statement st = c.createStatement()) {
+            st.execute("PRAGMA foreign_keys = ON");
+        }
+        return c;
+    }
+
+    private static void upgrade(Connection c, int version) throws SQLException {
+        try (Statement st = c.createStatement()) {
+            for (String sql : DbSchema.upgradeStatements(version)) st.execute(sql);
+        } catch (SQLException e) {
+            throw new AssertionError("upgrade to v" + version + " fails: " + e.getMessage(), e);
+        }
+    }
+
+    // DbHelper.onCreate as shipped at version 4, with a little data.
+    private static void createV4(Connection c) throws SQLException {
+        try (Statement st = c.createStatement()) {
+            st.execute("CREATE TABLE equipment (id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT NOT NULL, " +
+                    "category TEXT, notes TEXT, photo_uri TEXT, barcode TEXT, last_service_date INTEGER, " +
+                    "service_interval_days INTEGER, next_service_date INTEGER)");
+            st.execute("CREATE TABLE maintenance_tasks (id INTEGER PRIMARY KEY AUTOINCREMENT, device_id INTEGER NOT NULL, " +
+                    "title TEXT NOT NULL, interval_value INTEGER NOT NULL, interval_unit TEXT NOT NULL, " +
+                    "next_due_date INTEGER NOT NULL, priority TEXT NOT NULL, comment TEXT, cost REAL, consumables TEXT, " +
+                    "is_active INTEGER NOT NULL DEFAULT 1, " +
+                    "FOREIGN KEY(device_id) REFERENCES equipment(id) ON DELETE CASCADE)");
+            st.execute("CREATE TABLE service_history (id INTEGER PRIMARY KEY AUTOINCREMENT, task_id INTEGER NOT NULL, " +
+                    "device_id INTEGER NOT NULL, completion_date INTEGER NOT NULL, completion_comment TEXT, " +
+                    "consumables TEXT, cost REAL, previous_due_date INTEGER NOT NULL, " +
+                    "FOREIGN KEY(task_id) REFERENCES maintenance_tasks(id) ON DELETE CASCADE, " +
+                    "FOREIGN KEY(device_id) REFERENCES equipment(id) ON DELETE CASCADE)");
+            st.execute("CREATE TABLE app_settings (id INTEGER PRIMARY KEY CHECK (id = 1), " +
+                    "notification_preset TEXT NOT NULL, notification_hour INTEGER NOT NULL)");
+            st.execute("CREATE INDEX IF NOT EXISTS idx_equipment_name ON equipment(name)");
+            st.execute("CREATE INDEX IF NOT EXISTS idx_tasks_device_due ON maintenance_tasks(device_id, next_due_date)");
+            st.execute("CREATE INDEX IF NOT EXISTS idx_history_device_date ON service_history(device_id, completion_date DESC)");
+            st.execute("INSERT INTO app_settings(id, notification_preset, notification_hour) VALUES(1, 'MORNING', 9)");
+
+            st.execute("INSERT INTO equipment (id, name, category) VALUES (1, 'Boiler', 'Heating'), (2, 'Pump', NULL)");
+            st.execute("INSERT INTO maintenance_tasks (id, device_id, title, interval_value, interval_unit, next_due_date, priority) " +
+                    "VALUES (1, 1, 'Flush', 6, 'MONTHS', 1600000000000, 'HIGH'), (2, 2, 'Seal', 1, 'YEARS', 1600000000000, 'LOW')");
+            st.execute("INSERT INTO service_history (task_id, device_id, completion_date, completion_comment, cost, previous_due_date) " +
+                    "VALUES (1, 1, 1590000000000, 'ok', 10.5, 1590000000000), (2, 2, 1590000000000, NULL, NULL, 1590000000000)");
+        }
+    }
+
+    private static Map<String, Set<String>> columns(Connection c) throws SQLException {
+        Map<String, Set<String>> columns = new TreeMap<>();
+        for (String table : definitions(c, "table").keySet()) {
+            Set<String> names = new TreeSet<>();
+            try (Statement st = c.createStatement();
+                 ResultSet rs = st.executeQuery("PRAGMA table_info(" + table + ")")) {
+                while (rs.next()) names.add(rs.getString("name"));
+            }
+            columns.put(table, names);
+        }
+        return columns;
+    }
+
+    // name -> sql of every schema object of the type; FTS shadow tables and autoindexes included
+    private static Map<String, String> definitions(Connection c, String type) throws SQLException {
+        Map<String, String> definitions = new TreeMap<>();
+        try (Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery("SELECT name, sql FROM sqlite_master WHERE type = '" + type + "'")) {
+            while (rs.next()) definitions.put(rs.getString(1), String.valueOf(rs.getString(2)));
+        }
+        return definitions;
+    }
+}
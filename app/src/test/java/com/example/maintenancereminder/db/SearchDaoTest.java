@@ -0,0 +1,123 @@
+package com.example.maintenancereminder.db;
+
+import com.example.maintenancereminder.model.SearchHit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs {@link SearchDao#SQL_SEARCH} and the search triggers against a schema built by
+ * {@link DbSchema#createStatements()}.
+ */
+public class SearchDaoTest {
+    private static final long BASE_DATE = 1_600_000_000_000L;
+
+    private Connection connection;
+
+    @Before
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        try (Statement st = connection.createStatement()) {
+            st.execute("PRAGMA foreign_keys = ON");
+            for (String ddl : DbSchema.createStatements()) st.execute(ddl);
+            st.execute("INSERT INTO " + DbHelper.TABLE_EQUIPMENT + " (name, notes) VALUES ('Filter pump', 'filter inside')");
+            st.execute("INSERT INTO " + DbHelper.TABLE_TASKS +
+                    " (device_id, title, interval_value, interval_unit, next_due_date, priority, is_active)" +
+                    " VALUES (1, 'Oil change', 30, 'DAYS', " + BASE_DATE + ", 'MEDIUM', 1)");
+        }
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Test
+    public void matchExpressionPrefixesWordsAndQuotesCompounds() {
+        assertEquals("", SearchDao.toMatchExpression(null));
+        assertEquals("", SearchDao.toMatchExpression("   "));
+        assertEquals("", SearchDao.toMatchExpression("-- \"*"));
+        assertEquals("oil*", SearchDao.toMatchExpression("Oil"));
+        assertEquals("oil* filter*", SearchDao.toMatchExpression("  oil \t FILTER "));
+        assertEquals("\"px 4711*\"", SearchDao.toMatchExpression("PX-4711"));
+        assertEquals("масло* \"px 4711*\"", SearchDao.toMatchExpression("Масло px-4711"));
+        assertEquals("oil*", SearchDao.toMatchExpression("\"oil\""));
+    }
+
+    @Test
+    public void taskRenameRelabelsHotAndArchivedHistory() throws SQLException {
+        addHistory(2, "oil drained");
+        try (Statement st = connection.createStatement()) {
+            st.execute("INSERT INTO " + DbSchema.TABLE_HISTORY_ARCHIVE + " SELECT * FROM " + DbHelper.TABLE_HISTORY + " WHERE id = 1");
+            st.execute("DELETE FROM " + DbHelper.TABLE_HISTORY + " WHERE id = 1");
+            st.execute("UPDATE " + DbHelper.TABLE_TASKS + " SET title = 'Oil and filter change' WHERE id = 1");
+        }
+        List<String> labels = new ArrayList<>();
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT label FROM " + DbSchema.TABLE_SEARCH +
+                     " WHERE docid % 4 = " + SearchHit.KIND_HISTORY + " ORDER BY docid")) {
+            while (rs.next()) labels.add(rs.getString(1));
+        }
+        assertEquals(List.of("Oil and filter change", "Oil and filter change"), labels);
+    }
+
+    @Test
+    public void bestMatchIsFoundBehindManyNewerMatches() throws SQLException {
+        addHistory(1500, "filter replaced");
+        List<Long> docids = search("filter*", 5, 0);
+        assertEquals(5, docids.size());
+        assertEquals(Long.valueOf(1 * 4 + SearchHit.KIND_EQUIPMENT), docids.get(0));
+        assertEquals(1500, search("filter*", 2000, 0).size() - 1);
+    }
+
+    @Test
+    public void pagesDoNotOverlap() throws SQLException {
+        addHistory(30, "filter replaced");
+        List<Long> first = search("filter*", 10, 0);
+        List<Long> second = search("filter*", 10, 10);
+        assertEquals(10, second.size());
+        for (Long docid : second) assertTrue(docid + " repeated", !first.contains(docid));
+        assertTrue(first.get(first.size() - 1) > second.get(0));
+    }
+
+    private void addHistory(int count, String comment) throws SQLException {
+        try (PreparedStatement history = connection.prepareStatement(HistoryDao.SQL_INSERT)) {
+            for (int i = 0; i < count; i++) {
+                history.setLong(1, 1);
+                history.setLong(2, 1);
+                history.setLong(3, BASE_DATE + i);
+                history.setString(4, comment);
+                history.setString(5, null);
+                history.setDouble(6, 0);
+                history.setLong(7, BASE_DATE + i);
+                history.executeUpdate();
+            }
+        }
+    }
+
+    private List<Long> search(String match, int limit, int offset) throws SQLException {
+        List<Long> docids = new ArrayList<>();
+        try (PreparedStatement st = connection.prepareStatement(SearchDao.SQL_SEARCH)) {
+            st.setString(1, match);
+            st.setInt(2, limit);
+            st.setInt(3, offset);
+            try (ResultSet rs = st.executeQuery()) {
+                while (rs.next()) docids.add(rs.getLong("ref_id") * 4 + rs.getInt("kind"));
+            }
+        }
+        return docids;
+    }
+}